@@ -80,6 +80,41 @@ public class BrowserMain {
             return new URL("http:extres/" + name).openStream();
         }
 
+        @Override
+        public byte[] readExternalResource(String name, long offset, int length) throws IOException {
+            Object[] response = readRange("extres/" + name, "bytes=" + offset + "-" + (offset + length - 1));
+            int status = ((Number) response[0]).intValue();
+            String text = (String) response[1];
+            int start;
+            if(status == 206) // Partial Content, the range alone
+                start = 0;
+            else if(status == 200) // a server ignoring the range sends the whole resource
+                start = (int) offset;
+            else
+                throw new IOException("Cannot read " + name + ": HTTP status " + status);
+            if(text == null || text.length() < start + length)
+                throw new IOException("Cannot read " + name + ": short response");
+            byte[] result = new byte[length];
+            for(int i = 0; i < length; i++)
+                result[i] = (byte) text.charAt(start + i);
+            return result;
+        }
+
+        /**
+         * Reads a range of a resource with a synchronous request, allowed in workers.
+         * Returns the HTTP status and the response text.
+         * Each byte of the response becomes a character in the range U+F700 to U+F7FF,
+         * so the low byte of the character is the original byte.
+         */
+        @JavaScriptBody(args = {"url", "range"}, body =
+                "var xhr = new XMLHttpRequest();\n" +
+                "xhr.open('GET', url, false);\n" +
+                "xhr.setRequestHeader('Range', range);\n" +
+                "xhr.overrideMimeType('text/plain; charset=x-user-defined');\n" +
+                "xhr.send();\n" +
+                "return [xhr.status, xhr.responseText];")
+        private static native Object[] readRange(String url, String range);
+
         @JavaScriptBody(args = {"f"}, body = "self.onmessage = function(event) { self.postMessage(f.@java.util.function.Function::apply(Ljava/lang/Object;)(event.data)); };", javacall = true)
         static native boolean workerMain(Function<String, String> f);
 
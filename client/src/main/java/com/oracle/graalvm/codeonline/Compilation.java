@@ -18,15 +18,15 @@ package com.oracle.graalvm.codeonline;
 
 import com.oracle.graalvm.codeonline.files.JavaFileManagerImpl;
 import com.oracle.graalvm.codeonline.nbjava.CompilationInfo;
+import com.oracle.graalvm.codeonline.nbjava.CompletionSettings;
 import com.oracle.graalvm.codeonline.nbjava.JavaCompletionItem;
 import com.oracle.graalvm.codeonline.nbjava.JavaCompletionQuery;
-import com.sun.tools.javac.api.JavacTool;
+import com.oracle.graalvm.codeonline.nbjava.TokenIndex;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import javax.tools.Diagnostic;
-import javax.tools.JavaCompiler;
 import javax.tools.JavaFileObject;
 import javax.tools.StandardLocation;
 
@@ -35,31 +35,73 @@ import javax.tools.StandardLocation;
  * It stores all information for the compiler and the result of the compilation.
  */
 public final class Compilation {
-    private final JavacTool compiler = JavacTool.create();
+    /** The state of the worker, which handles one request at a time. */
+    private static final State WORKER_STATE = new State();
+
+    private final State state;
     private final ArrayList<Diagnostic> diagnostics = new ArrayList<>();
     private final List<Diagnostic> diagnosticsView = Collections.unmodifiableList(diagnostics);
     private List<? extends JavaCompletionItem> completions;
+    private boolean moreCompletions;
+    private boolean reused;
+    private Throwable failure;
 
     private JavaFileManagerImpl files;
+    private CompletionSettings completionSettings = CompletionSettings.getDefault();
+
+    /**
+     * Creates a compilation of the worker, which reuses the results of the previous ones.
+     */
+    public Compilation() {
+        this(WORKER_STATE);
+    }
+
+    /**
+     * Creates a compilation that reuses the results of the previous ones with the same state.
+     * Compilations with different states can run in parallel.
+     */
+    public Compilation(State state) {
+        this.state = state;
+    }
 
     public void setFiles(JavaFileManagerImpl files) {
         this.files = files;
     }
 
+    public void setCompletionSettings(CompletionSettings completionSettings) {
+        this.completionSettings = completionSettings;
+    }
+
+    /**
+     * Parses and attributes the source and reports its diagnostics. Class files are not generated;
+     * the attributed source is kept for completion requests on the same text instead.
+     */
     public boolean compile() {
         System.out.println("Compiling...");
         diagnostics.clear();
+        reused = false;
+        failure = null;
         try {
             JavaFileObject f = files.getJavaFileForInput(StandardLocation.SOURCE_PATH, "Main", JavaFileObject.Kind.SOURCE);
-            JavaCompiler.CompilationTask task = compiler.getTask(
-                    null, // Writer, null ~ System.err
-                    files,
-                    diagnostics::add,
-                    Arrays.asList("-source", "1.8", "-target", "1.8"),
-                    null, // Iterable<String> classes to be processed by annotation processing, null ~ no classes
-                    Arrays.asList(f)
-            );
-            boolean success = task.call();
+            CompilationInfo info = new CompilationInfo(f, files, state.lastTokens);
+            TokenIndex tokens = info.getTokenIndex();
+            state.lastTokens = tokens;
+            CompileResult last = state.lastCompileResult;
+            if(last != null && last.isReusableFor(tokens)) {
+                System.out.println("Only whitespace or comments changed, reusing the last result");
+                state.lastCompileResult = last.shiftTo(tokens);
+                state.lastInfo = null;
+                diagnostics.addAll(state.lastCompileResult.getDiagnostics());
+                reused = true;
+                return state.lastCompileResult.isSuccess();
+            }
+            state.lastInfo = null;
+            boolean success = info.toPhase(CompilationInfo.Phase.RESOLVED) == CompilationInfo.Phase.RESOLVED;
+            for(Diagnostic diag : info.getDiagnostics()) {
+                diagnostics.add(diag);
+                if(diag.getKind() == Diagnostic.Kind.ERROR)
+                    success = false;
+            }
             System.out.println("Result: " + success);
 
             System.out.println("Diagnostics:");
@@ -68,22 +110,132 @@ public final class Compilation {
 
             System.out.println("Files:");
             files.debugDump();
+            state.lastCompileResult = CompileResult.of(tokens, success, diagnostics);
+            state.lastInfo = info;
             return success;
         } catch(Throwable t) {
             t.printStackTrace();
+            failure = t;
             return false;
         }
     }
 
+    /**
+     * Records that the result of the source was served without compiling it, e.g. from a cache.
+     * The tokens of the source are kept for the next requests. The results of the previous source
+     * are dropped, they do not describe this one; the idle preparation attributes the source again.
+     */
+    public void skipCompilation() {
+        try {
+            JavaFileObject f = files.getJavaFileForInput(StandardLocation.SOURCE_PATH, "Main", JavaFileObject.Kind.SOURCE);
+            state.lastTokens = new CompilationInfo(f, files, state.lastTokens).getTokenIndex();
+        } catch(Throwable t) {
+            t.printStackTrace();
+            state.lastTokens = null;
+        }
+        state.lastCompileResult = null;
+        state.lastInfo = null;
+    }
+
+    /**
+     * Whether the last {@link #compile()} failed without a result, e.g. because
+     * an archive of the class path could not be read.
+     */
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * The reason why the last {@link #compile()} failed, or {@code null} if it did not.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Whether the last {@link #compile()} reused the result of the previous one
+     * because only whitespace and comments changed.
+     */
+    public boolean isReused() {
+        return reused;
+    }
+
     public List<Diagnostic> getDiagnostics() {
         return diagnosticsView;
     }
 
-    public boolean completion(int offset) {
+    /**
+     * Computes one page of completions for the identifier starting at the given offset,
+     * matching the typed prefix of the identifier.
+     * The first page ranks all matching items and keeps them, the next pages
+     * at the same offset are sliced from them while only the identifier changes.
+     * The item after the page tells whether more completions are available.
+     */
+    public boolean completion(int offset, String prefix, int start, int limit) {
         completions = Collections.emptyList();
+        moreCompletions = false;
         try {
             JavaFileObject f = files.getJavaFileForInput(StandardLocation.SOURCE_PATH, "Main", JavaFileObject.Kind.SOURCE);
-            completions = JavaCompletionQuery.query(new CompilationInfo(f, files), JavaCompletionQuery.COMPLETION_QUERY_TYPE, offset);
+            String text = f.getCharContent(false).toString();
+            List<? extends JavaCompletionItem> top;
+            RankedCompletion last = state.lastCompletion;
+            if(last != null && last.isValidFor(text, offset, prefix)) {
+                System.out.println("Serving the kept completions");
+                top = JavaCompletionQuery.filter(last.items, prefix, completionSettings);
+            } else {
+                CompilationInfo info = state.lastInfo;
+                if(info == null || !text.equals(info.getText()))
+                    info = new CompilationInfo(f, files, state.lastTokens);
+                top = JavaCompletionQuery.query(info, JavaCompletionQuery.COMPLETION_QUERY_TYPE, offset, prefix, completionSettings, Integer.MAX_VALUE);
+                state.lastTokens = info.getTokenIndex();
+                state.lastCompletion = new RankedCompletion(text, offset, prefix, top);
+            }
+            moreCompletions = top.size() > start + limit;
+            completions = top.subList(Math.min(start, top.size()), Math.min(start + limit, top.size()));
+            return true;
+        } catch(Throwable t) {
+            t.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Prepares a later {@link #completion} at the given offset while the worker is idle.
+     * The source is attributed unless the last compilation did so already, and the
+     * completion environment at the offset is computed, so the completion request
+     * only collects and ranks the items. Sources other than the latest requested
+     * version are ignored, they are outdated by the time the worker gets to them.
+     */
+    public boolean prepareCompletion(int offset) {
+        try {
+            CompilationInfo info = attributedInfo();
+            if(info == null)
+                return false;
+            JavaCompletionQuery.prepare(info, offset);
+            return true;
+        } catch(Throwable t) {
+            t.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Completes the members after a dot that has just been typed, while the worker is idle.
+     * The items are kept for the completion request, which is very likely to follow.
+     * Elsewhere only the completion environment is {@link #prepareCompletion prepared}.
+     */
+    public boolean speculateCompletion(int offset) {
+        try {
+            CompilationInfo info = attributedInfo();
+            if(info == null)
+                return false;
+            String text = info.getText();
+            if(isAfterDot(text, offset)) {
+                List<? extends JavaCompletionItem> items = JavaCompletionQuery.query(info, JavaCompletionQuery.COMPLETION_QUERY_TYPE, offset, completionSettings, Integer.MAX_VALUE);
+                state.lastCompletion = new RankedCompletion(text, offset, null, items);
+            } else {
+                JavaCompletionQuery.prepare(info, offset);
+            }
             return true;
         } catch(Throwable t) {
             t.printStackTrace();
@@ -91,7 +243,108 @@ public final class Compilation {
         }
     }
 
+    /**
+     * Returns the attributed source, reusing the one of the last compilation.
+     * @return the source, or {@code null} if it is not the latest requested version
+     */
+    private CompilationInfo attributedInfo() throws IOException {
+        JavaFileObject f = files.getJavaFileForInput(StandardLocation.SOURCE_PATH, "Main", JavaFileObject.Kind.SOURCE);
+        String text = f.getCharContent(false).toString();
+        CompilationInfo info = state.lastInfo;
+        if(info == null || !text.equals(info.getText())) {
+            if(state.lastTokens == null || !text.equals(state.lastTokens.getText()))
+                return null;
+            info = new CompilationInfo(f, files, state.lastTokens);
+            info.toPhase(CompilationInfo.Phase.RESOLVED);
+            state.lastInfo = info;
+        }
+        return info;
+    }
+
+    /**
+     * Checks whether the offset follows a member select, i.e. an identifier or a closing bracket and a dot.
+     */
+    static boolean isAfterDot(String text, int offset) {
+        int i = offset;
+        while(i > 0 && Character.isWhitespace(text.charAt(i - 1)))
+            i--;
+        if(i == 0 || text.charAt(i - 1) != '.')
+            return false;
+        i--;
+        while(i > 0 && Character.isWhitespace(text.charAt(i - 1)))
+            i--;
+        if(i == 0)
+            return false;
+        char c = text.charAt(i - 1);
+        return c == ')' || c == ']' || Character.isJavaIdentifierPart(c) && !Character.isDigit(c);
+    }
+
     public List<? extends JavaCompletionItem> getCompletions() {
         return completions;
     }
+
+    public boolean hasMoreCompletions() {
+        return moreCompletions;
+    }
+
+    /**
+     * All completions at an offset matching a prefix, ranked. They remain valid while the source
+     * changes only in the identifier at the offset and its prefix extends the one they were
+     * queried with; the items are then filtered by the longer prefix.
+     */
+    static final class RankedCompletion {
+        private final String text;
+        private final int offset;
+        private final String prefix;
+        private final List<? extends JavaCompletionItem> items;
+
+        RankedCompletion(String text, int offset, String prefix, List<? extends JavaCompletionItem> items) {
+            this.text = text;
+            this.offset = offset;
+            this.prefix = prefix == null ? "" : prefix;
+            this.items = items;
+        }
+
+        boolean isValidFor(String newText, int newOffset, String newPrefix) {
+            if(newOffset != offset || !newText.regionMatches(0, text, 0, offset))
+                return false;
+            if(!(newPrefix == null ? "" : newPrefix).startsWith(prefix))
+                return false;
+            return newText.substring(identifierEnd(newText, offset)).equals(text.substring(identifierEnd(text, offset)));
+        }
+
+        private static int identifierEnd(String s, int from) {
+            int i = from;
+            while(i < s.length() && Character.isJavaIdentifierPart(s.charAt(i)))
+                i++;
+            return i;
+        }
+    }
+
+    /**
+     * What a compilation keeps for the next ones. Consecutive requests usually come
+     * from the same editor and differ by a few characters.
+     */
+    public static final class State {
+        /**
+         * Tokens of the source of the last request, updated incrementally by the next one.
+         */
+        private TokenIndex lastTokens;
+
+        /**
+         * Result of the last compilation, reused if the next source differs only in whitespace and comments.
+         */
+        private CompileResult lastCompileResult;
+
+        /**
+         * The attributed source of the last compilation, reused by completion requests for the same text.
+         */
+        private CompilationInfo lastInfo;
+
+        /**
+         * Completions of the last request, or computed speculatively after a dot,
+         * served to the next pages and to the completion request that usually follows.
+         */
+        RankedCompletion lastCompletion;
+    }
 }
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.oracle.graalvm.codeonline;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A bounded cache of serialized compilation results, keyed by everything the result depends on:
+ * the source, the options of the compiler and the class path.
+ * <p>
+ * The least recently used results are evicted when the cache is full. Concurrent requests for
+ * the same key are served by a single compilation. An optional {@link Store} keeps the results
+ * beyond the capacity and lifetime of the cache, e.g. on disk.
+ */
+public final class CompilationCache {
+    private final int capacity;
+    private final Store store;
+    private final LinkedHashMap<String, String> results = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashMap<String, Flight> inFlight = new HashMap<>();
+
+    private long hits;
+    private long storeHits;
+    private long misses;
+    private long joined;
+    private long evictions;
+
+    /**
+     * @param capacity the maximum number of results kept in memory
+     * @param store where results are kept beyond the memory, or {@code null}
+     */
+    public CompilationCache(int capacity, Store store) {
+        if(capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        this.store = store;
+    }
+
+    /**
+     * Builds the key of a compilation.
+     * @param classPathProfile identifies the class path, see
+     * {@link com.oracle.graalvm.codeonline.files.JavaFileManagerImpl#getClassPathProfile}
+     */
+    public static String key(String source, List<String> options, String classPathProfile) {
+        StringBuilder key = new StringBuilder(source.length() + 64);
+        for(String option : options)
+            key.append(option).append(' ');
+        return key.append('\0').append(classPathProfile).append('\0').append(source).toString();
+    }
+
+    /**
+     * Returns the cached result for the key, or the result of the compilation, which is then cached.
+     * If the same key is being compiled by another thread, waits for that result instead.
+     * @param compile computes the serialized result, which must depend only on the key;
+     * {@code null} if there is no result to cache, which is returned as is
+     */
+    public String get(String key, Supplier<String> compile) {
+        Flight flight;
+        boolean leader = false;
+        synchronized(this) {
+            String result = results.get(key);
+            if(result != null) {
+                hits++;
+                return result;
+            }
+            flight = inFlight.get(key);
+            if(flight != null) {
+                joined++;
+            } else {
+                flight = new Flight();
+                inFlight.put(key, flight);
+                leader = true;
+            }
+        }
+        if(!leader) {
+            String result = flight.await();
+            // there was no result to cache, try again
+            return result != null ? result : compile.get();
+        }
+        String result = null;
+        try {
+            result = load(key);
+            if(result == null) {
+                result = compile.get();
+                if(result != null)
+                    save(key, result);
+            }
+            return result;
+        } finally {
+            synchronized(this) {
+                inFlight.remove(key);
+                if(result != null)
+                    put(key, result);
+            }
+            flight.complete(result);
+        }
+    }
+
+    private String load(String key) {
+        if(store != null) {
+            try {
+                String result = store.load(key);
+                if(result != null) {
+                    synchronized(this) {
+                        storeHits++;
+                    }
+                    return result;
+                }
+            } catch(IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        synchronized(this) {
+            misses++;
+        }
+        return null;
+    }
+
+    private void save(String key, String result) {
+        if(store == null)
+            return;
+        try {
+            store.save(key, result);
+        } catch(IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private void put(String key, String result) {
+        results.put(key, result);
+        for(Iterator<Map.Entry<String, String>> it = results.entrySet().iterator(); results.size() > capacity;) {
+            it.next();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized int size() {
+        return results.size();
+    }
+
+    /** The number of results served from memory. */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /** The number of results served from the store. */
+    public synchronized long getStoreHits() {
+        return storeHits;
+    }
+
+    /** The number of compilations. */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /** The number of requests served by the compilation of a concurrent request. */
+    public synchronized long getJoined() {
+        return joined;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CompilationCache[size=" + results.size() + ", hits=" + hits + ", storeHits=" + storeHits
+                + ", misses=" + misses + ", joined=" + joined + ", evictions=" + evictions + "]";
+    }
+
+    /**
+     * Keeps results beyond the memory of the cache. Failures are reported and treated as misses.
+     */
+    public interface Store {
+        /**
+         * @return the result stored for the key, or {@code null}
+         */
+        String load(String key) throws IOException;
+
+        void save(String key, String result) throws IOException;
+    }
+
+    /**
+     * A compilation in progress, which other requests for the same key wait for.
+     */
+    private static final class Flight {
+        private boolean done;
+        private String result;
+
+        synchronized void complete(String result) {
+            this.result = result;
+            done = true;
+            notifyAll();
+        }
+
+        /**
+         * @return the result, or {@code null} if the compilation failed
+         */
+        synchronized String await() {
+            boolean interrupted = false;
+            while(!done) {
+                try {
+                    wait();
+                } catch(InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if(interrupted)
+                Thread.currentThread().interrupt();
+            return result;
+        }
+    }
+}
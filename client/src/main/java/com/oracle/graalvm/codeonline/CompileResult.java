@@ -0,0 +1,235 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline;
+
+import com.oracle.graalvm.codeonline.nbjava.TokenIndex;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * The outcome of compiling one version of a source, detached from the compiler.
+ * <p>
+ * The diagnostics are copied, so that the result does not keep the compiler alive
+ * and can be reused for a later version that differs only in whitespace and comments.
+ */
+final class CompileResult {
+    private static final int TAB_INC = 8;
+
+    private final TokenIndex tokens;
+    private final boolean success;
+    private final List<Diagnostic> diagnostics;
+
+    private CompileResult(TokenIndex tokens, boolean success, List<Diagnostic> diagnostics) {
+        this.tokens = tokens;
+        this.success = success;
+        this.diagnostics = Collections.unmodifiableList(diagnostics);
+    }
+
+    static CompileResult of(TokenIndex tokens, boolean success, List<? extends Diagnostic> diagnostics) {
+        List<Diagnostic> copy = new ArrayList<>(diagnostics.size());
+        for(Diagnostic diag : diagnostics)
+            copy.add(new DetachedDiagnostic(diag));
+        return new CompileResult(tokens, success, copy);
+    }
+
+    TokenIndex getTokens() {
+        return tokens;
+    }
+
+    boolean isSuccess() {
+        return success;
+    }
+
+    List<Diagnostic> getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * Checks whether compiling the new version would give the same result up to positions,
+     * i.e. the versions have the same tokens. Javadoc comments may deprecate elements,
+     * so sources mentioning {@code @deprecated} are always compiled.
+     */
+    boolean isReusableFor(TokenIndex newTokens) {
+        if(tokens.getText().contains("@deprecated") || newTokens.getText().contains("@deprecated"))
+            return false;
+        return tokens.hasSameTokens(newTokens);
+    }
+
+    /**
+     * Returns this result with the diagnostic positions moved to the new version.
+     * @see #isReusableFor
+     */
+    CompileResult shiftTo(TokenIndex newTokens) {
+        LineMap lines = new LineMap(newTokens.getText());
+        List<Diagnostic> shifted = new ArrayList<>(diagnostics.size());
+        for(Diagnostic diag : diagnostics) {
+            DetachedDiagnostic d = (DetachedDiagnostic) diag;
+            shifted.add(new DetachedDiagnostic(d, map(newTokens, d.position), map(newTokens, d.startPosition), mapEnd(newTokens, d.endPosition), lines));
+        }
+        return new CompileResult(newTokens, success, shifted);
+    }
+
+    private long map(TokenIndex newTokens, long pos) {
+        return pos == Diagnostic.NOPOS ? pos : tokens.mapOffset(newTokens, (int) pos);
+    }
+
+    private long mapEnd(TokenIndex newTokens, long pos) {
+        return pos == Diagnostic.NOPOS ? pos : tokens.mapEndOffset(newTokens, (int) pos);
+    }
+
+    /**
+     * Line and column numbers computed the way javac does, i.e. with tabs expanded.
+     */
+    private static final class LineMap {
+        private final String text;
+        private final int[] lineStarts;
+        private final int lineCount;
+
+        LineMap(String text) {
+            this.text = text;
+            int[] starts = new int[16];
+            int count = 1;
+            for(int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if(c == '\n' || c == '\r' && (i + 1 == text.length() || text.charAt(i + 1) != '\n')) {
+                    if(count == starts.length)
+                        starts = Arrays.copyOf(starts, count * 2);
+                    starts[count++] = i + 1;
+                }
+            }
+            this.lineStarts = starts;
+            this.lineCount = count;
+        }
+
+        private int lineIndex(long pos) {
+            int lo = 0, hi = lineCount - 1;
+            while(lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if(lineStarts[mid] <= pos)
+                    lo = mid;
+                else
+                    hi = mid - 1;
+            }
+            return lo;
+        }
+
+        long getLineNumber(long pos) {
+            return pos == Diagnostic.NOPOS ? Diagnostic.NOPOS : lineIndex(pos) + 1;
+        }
+
+        long getColumnNumber(long pos) {
+            if(pos == Diagnostic.NOPOS)
+                return Diagnostic.NOPOS;
+            int column = 0;
+            for(int i = lineStarts[lineIndex(pos)]; i < pos && i < text.length(); i++) {
+                if(text.charAt(i) == '\t')
+                    column = column / TAB_INC * TAB_INC + TAB_INC;
+                else
+                    column++;
+            }
+            return column + 1;
+        }
+    }
+
+    private static final class DetachedDiagnostic implements Diagnostic<JavaFileObject> {
+        private final Kind kind;
+        private final long position;
+        private final long startPosition;
+        private final long endPosition;
+        private final long lineNumber;
+        private final long columnNumber;
+        private final String code;
+        private final String message;
+
+        DetachedDiagnostic(Diagnostic<?> diag) {
+            this.kind = diag.getKind();
+            this.position = diag.getPosition();
+            this.startPosition = diag.getStartPosition();
+            this.endPosition = diag.getEndPosition();
+            this.lineNumber = diag.getLineNumber();
+            this.columnNumber = diag.getColumnNumber();
+            this.code = diag.getCode();
+            this.message = diag.getMessage(Locale.getDefault());
+        }
+
+        DetachedDiagnostic(DetachedDiagnostic diag, long position, long startPosition, long endPosition, LineMap lines) {
+            this.kind = diag.kind;
+            this.position = position;
+            this.startPosition = startPosition;
+            this.endPosition = endPosition;
+            this.lineNumber = diag.lineNumber == NOPOS ? NOPOS : lines.getLineNumber(position);
+            this.columnNumber = diag.columnNumber == NOPOS ? NOPOS : lines.getColumnNumber(position);
+            this.code = diag.code;
+            this.message = diag.message;
+        }
+
+        @Override
+        public Kind getKind() {
+            return kind;
+        }
+
+        @Override
+        public JavaFileObject getSource() {
+            return null;
+        }
+
+        @Override
+        public long getPosition() {
+            return position;
+        }
+
+        @Override
+        public long getStartPosition() {
+            return startPosition;
+        }
+
+        @Override
+        public long getEndPosition() {
+            return endPosition;
+        }
+
+        @Override
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        @Override
+        public long getColumnNumber() {
+            return columnNumber;
+        }
+
+        @Override
+        public String getCode() {
+            return code;
+        }
+
+        @Override
+        public String getMessage(Locale locale) {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return lineNumber == NOPOS ? kind + ": " + message : lineNumber + ": " + kind + ": " + message;
+        }
+    }
+}
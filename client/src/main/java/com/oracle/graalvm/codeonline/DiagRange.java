@@ -0,0 +1,55 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline;
+
+import com.oracle.graalvm.codeonline.json.Diag;
+import javax.tools.Diagnostic;
+
+/**
+ * The characters of the source a diagnostic is highlighted at. The editor places
+ * the markers by these offsets; javac's columns expand tabs, so they are not
+ * CodeMirror positions.
+ */
+final class DiagRange {
+    final int start;
+    final int end;
+
+    private DiagRange(int start, int end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Returns the range of the diagnostic in the text. An empty range is widened
+     * to the next character, or to the previous one at the end of a line,
+     * so that the marker is visible.
+     * @return the range, or {@code null} if the diagnostic has no position
+     */
+    static DiagRange of(Diag diag, String text) {
+        if(diag.getPosition() == Diagnostic.NOPOS)
+            return null;
+        int start = (int) Math.min(diag.getStartPosition(), text.length());
+        int end = (int) Math.min(Math.max(diag.getEndPosition(), start), text.length());
+        if(start == end) {
+            if(end < text.length() && text.charAt(end) != '\n')
+                end++;
+            else if(start > 0 && text.charAt(start - 1) != '\n')
+                start--;
+        }
+        return new DiagRange(start, end);
+    }
+}
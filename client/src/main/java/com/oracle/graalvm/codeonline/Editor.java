@@ -24,11 +24,13 @@ import com.oracle.graalvm.codeonline.json.CompletionItem;
 import com.oracle.graalvm.codeonline.json.CompletionList;
 import com.oracle.graalvm.codeonline.json.CompletionListModel;
 import com.oracle.graalvm.codeonline.json.Diag;
+import com.oracle.graalvm.codeonline.nbjava.CompletionSettings;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.function.IntConsumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
-import java.util.stream.Stream;
 import javax.tools.Diagnostic;
 import net.java.html.js.JavaScriptBody;
 import net.java.html.lib.Function;
@@ -37,6 +39,7 @@ import net.java.html.lib.codemirror.CodeMirror.Doc;
 import net.java.html.lib.codemirror.CodeMirror.EditorConfiguration;
 import net.java.html.lib.codemirror.CodeMirror.EditorFromTextArea;
 import net.java.html.lib.codemirror.CodeMirror.Position;
+import net.java.html.lib.codemirror.CodeMirror.Range;
 import net.java.html.lib.codemirror.CodeMirror.TextMarker;
 import net.java.html.lib.codemirror.CodeMirror.TextMarkerOptions;
 import net.java.html.lib.codemirror.showhint.CodeMirror.Hint;
@@ -70,7 +73,10 @@ public class Editor {
     }
 
     private final PlatformServices platformServices;
-    private final ArrayList<TextMarker> markers = new ArrayList<>();
+    /** Highlights of the current diagnostics, in the order of the diagnostics. */
+    private final ArrayList<Highlight> highlights = new ArrayList<>();
+    /** Numbers of errors, warnings and notes among the current diagnostics. */
+    private final int[] diagCounts = new int[3];
     private String origSource;
     private EditorFromTextArea codeMirror;
     private Doc doc;
@@ -87,7 +93,7 @@ public class Editor {
     }
 
     private void initialize(Element oldElement) {
-        origSource = unIndent(oldElement.textContent());
+        origSource = Snippets.unIndent(oldElement.textContent());
         HTMLElement newElement = document.createElement("div");
         newElement.appendChild(createButton("Save", this::save));
         newElement.appendChild(document.createTextNode(" "));
@@ -106,8 +112,14 @@ public class Editor {
         codeMirror.$set(EDITOR_PROPERTY, this);
         on("changes", this::compile);
         on("cursorActivity", this::updateOrCloseHints);
+        String precomputed = oldElement.getAttribute("data-diagnostics");
+        if(precomputed != null && !precomputed.isEmpty())
+            showDiagnostics(CompilationResultModel.parseCompilationResult(precomputed).getDiagnostics());
     }
 
+    @JavaScriptBody(args = {"codeMirror", "fn"}, body = "codeMirror.operation(() => fn.@java.lang.Runnable::run()());", javacall = true)
+    private static native void operation(Object codeMirror, Runnable fn);
+
     @JavaScriptBody(args = {"codeMirror", "eventName", "handler"}, body = "codeMirror.on(eventName, () => handler.@java.lang.Runnable::run()());", javacall = true)
     private static native void on(Object codeMirror, String eventName, Runnable handler);
 
@@ -115,32 +127,6 @@ public class Editor {
         on(Objs.$js(codeMirror), eventName, handler);
     }
 
-    private static String unIndent(String code) {
-        String[] lines = code.split("\n");
-        String head = lines[0];
-        String indent = "";
-        for(int i = 0; i < head.length(); i++) {
-            if(!Character.isWhitespace(head.charAt(i))) {
-                indent = head.substring(0, i);
-                break;
-            }
-        }
-        if(indent.isEmpty())
-            return code;
-        StringBuilder result = new StringBuilder();
-        int length = 0;
-        for(String line : lines) {
-            if(line.startsWith(indent))
-                result.append(line, indent.length(), line.length());
-            else
-                result.append(line);
-            result.append('\n');
-            if(!line.matches("\\s*")) // .isBlank()
-                length = result.length();
-        }
-        return result.substring(0, length);
-    }
-
     public static Editor from(Element element, PlatformServices platformServices) {
         Editor instance = new Editor(platformServices);
         instance.initialize(element);
@@ -148,42 +134,101 @@ public class Editor {
     }
 
     private void compile() {
-        String request = getJavaSource();
+        String request = WorkerRequest.compile(getJavaSource());
         if(currentCompileTask != null && !currentCompileTask.isSent()) {
             currentCompileTask.update(request);
             return;
         }
         currentCompileTask = platformServices.getWorkerQueue().enqueue(request, response -> {
             CompilationResult cr = CompilationResultModel.parseCompilationResult(response);
-            for(TextMarker marker : markers) {
-                marker.clear();
-            }
-            int numErrors = 0, numWarnings = 0, numNotes = 0;
-            boolean noDiags = true;
-            for(Diag diag : diags = cr.getDiagnostics()) {
-                switch(diag.getKind()) {
-                    case ERROR:
-                        numErrors++;
-                        break;
-                    case WARNING:
-                    case MANDATORY_WARNING:
-                        numWarnings++;
-                        break;
-                    case NOTE:
-                    case OTHER:
-                        numNotes++;
-                        break;
-                }
-                noDiags = false;
-                highlightError(diag);
+            preparedOffset = -1;
+            prepareHints();
+            if(cr.isReused() && sameDiags(diags, cr.getDiagnostics())) {
+                // Only whitespace or comments changed. CodeMirror has already moved
+                // the markers along with the text, only the reported positions are updated.
+                diags = cr.getDiagnostics();
+                return;
             }
-            reportCount(errorIndicator, numErrors);
-            reportCount(warningIndicator, numWarnings);
-            reportCount(noteIndicator, numNotes);
-            reportNoDiags(noDiags);
+            showDiagnostics(cr.getDiagnostics());
         });
     }
 
+    /**
+     * Highlights the diagnostics of the current source and reports their numbers,
+     * either received from the worker or compiled with the page ahead of time.
+     */
+    private void showDiagnostics(List<Diag> newDiags) {
+        diags = newDiags;
+        operation(Objs.$js(codeMirror), () -> updateHighlights(diags));
+        reportCount(errorIndicator, diagCounts[ERRORS]);
+        reportCount(warningIndicator, diagCounts[WARNINGS]);
+        reportCount(noteIndicator, diagCounts[NOTES]);
+        reportNoDiags(diags.isEmpty());
+    }
+
+    private static boolean sameDiags(List<Diag> a, List<Diag> b) {
+        if(a == null || a.size() != b.size())
+            return false;
+        for(int i = 0; i < a.size(); i++) {
+            Diag x = a.get(i), y = b.get(i);
+            if(x.getKind() != y.getKind() || !x.getMessage().equals(y.getMessage()) || (x.getPosition() == Diagnostic.NOPOS) != (y.getPosition() == Diagnostic.NOPOS))
+                return false;
+        }
+        return true;
+    }
+
+    private static final int ERRORS = 0, WARNINGS = 1, NOTES = 2;
+
+    private static int category(Diagnostic.Kind kind) {
+        switch(kind) {
+            case ERROR:
+                return ERRORS;
+            case WARNING:
+            case MANDATORY_WARNING:
+                return WARNINGS;
+            default:
+                return NOTES;
+        }
+    }
+
+    /**
+     * Brings the highlights in line with the diagnostics, touching only those that changed.
+     * A highlight is kept if its marker is still at the range of a diagnostic of the same kind
+     * and message; CodeMirror moves markers along with edits. The counters are updated
+     * for the added and removed highlights. Must be called inside a CodeMirror operation.
+     */
+    private void updateHighlights(List<Diag> newDiags) {
+        HashMap<String, ArrayList<Highlight>> old = new HashMap<>();
+        for(Highlight h : highlights)
+            old.computeIfAbsent(h.currentKey(), k -> new ArrayList<>()).add(h);
+        highlights.clear();
+        String text = getJavaSource();
+        for(Diag diag : newDiags) {
+            DiagRange range = DiagRange.of(diag, text);
+            Position from = range == null ? null : position(range.start);
+            Position to = range == null ? null : position(range.end);
+            ArrayList<Highlight> same = old.get(Highlight.key(diag.getKind(), from, to, diag.getMessage()));
+            Highlight h;
+            if(same != null && !same.isEmpty()) {
+                h = same.remove(same.size() - 1);
+            } else {
+                h = new Highlight(diag, range == null ? null : highlightError(diag, from, to));
+                diagCounts[category(diag.getKind())]++;
+            }
+            highlights.add(h);
+        }
+        for(ArrayList<Highlight> removed : old.values()) {
+            for(Highlight h : removed) {
+                h.clear();
+                diagCounts[category(h.kind)]--;
+            }
+        }
+    }
+
+    private Position position(int offset) {
+        return doc.posFromIndex((double) offset);
+    }
+
     private void reportCount(HTMLElement counter, int count) {
         if(count != 0) {
             counter.style().display.set("inline-block");
@@ -201,21 +246,7 @@ public class Editor {
         }
     }
 
-    private void highlightError(Diag diag) {
-        long pos = diag.getPosition();
-        if(pos == Diagnostic.NOPOS)
-            return;
-        long before = pos - diag.getStartPosition();
-        long after = diag.getEndPosition() - pos;
-        assert before >= 0 && after >= 0;
-        long line = diag.getLineNumber() - 1;
-        long column = diag.getColumnNumber() - 1;
-        long startColumn = column - before;
-        long endColumn = column + after;
-        if(endColumn - startColumn == 0)
-            endColumn++;
-        Position start = makePosition(line, startColumn);
-        Position end = makePosition(line, endColumn);
+    private TextMarker highlightError(Diag diag, Position start, Position end) {
         TextMarkerOptions options = new Objs().$cast(TextMarkerOptions.class);
         switch(diag.getKind()) {
             case ERROR:
@@ -231,8 +262,7 @@ public class Editor {
                 break;
         }
         options.title.set(diag.getMessage());
-        TextMarker marker = codeMirror.getDoc().markText(start, end, options);
-        markers.add(marker);
+        return codeMirror.getDoc().markText(start, end, options);
     }
 
     private String getDiags(Predicate<Diagnostic.Kind> filter) {
@@ -324,10 +354,22 @@ public class Editor {
         element.childNodes().$get(0).$cast(Text.class).data.set(text);
     }
 
+    /** Request the completions of the typed prefix again when fewer than this many items match it. */
+    private static final int MIN_VISIBLE_HINTS = 20;
+
     private String hintPrefix;
     private int currentHintLine, currentHintTokenStart;
-    private List<CompletionItem> hintItems;
+    private long currentHintOffset;
+    private final HintFilter<CompletionItem> hintItems = new HintFilter<>(CompletionItem::getText, Editor::makeHint, CompletionSettings.getDefault());
+    /** The prefix the worker matched {@link #hintItems} with, null if there are no items. */
+    private String hintItemsPrefix;
+    private boolean hintMoreAvailable;
+    /** The last completion request, until its response arrives. */
+    private String pendingHintRequest;
+    private Function hintCallback;
     private TaskQueue.Task<String, String> currentCompletionTask;
+    /** Offset of the last completion environment requested by {@link #prepareHints()}, -1 if none. */
+    private long preparedOffset = -1;
 
     private boolean hintActive() {
         return hintPrefix != null;
@@ -356,56 +398,135 @@ public class Editor {
     }
 
     private int setHintToken(int line, int col) {
+        int i = identifierStart(line, col);
+        currentHintLine = line;
+        currentHintTokenStart = i;
+        return col - i;
+    }
+
+    private int identifierStart(int line, int col) {
         String s = doc.getLine(line);
         int i = col;
         while(i > 0 && Character.isJavaIdentifierPart(s.charAt(i - 1)))
             i--;
-        currentHintLine = line;
-        currentHintTokenStart = i;
-        return col - i;
+        return i;
     }
 
     public void hint(Function cb, ShowHintOptions opts) {
         opts.completeSingle.set(false);
+        hintCallback = cb;
         Position cur0 = doc.getCursor();
         if(hintActive() && hintRelevant(cur0)) {
-            cb.apply(null, makeHints());
+            if(hintItemsPrefix != null && hintPrefix.startsWith(hintItemsPrefix))
+                showHints();
+            else
+                requestHints(0, hintPrefix); // the prefix was shortened, the items are too narrow
             return;
         }
-        long offset = (long) doc.indexFromPos(cur0) - setHintToken(cur0.line().intValue(), cur0.ch().intValue());
-        String request = "/" + offset + "/" + doc.getValue();
+        int line = cur0.line().intValue(), col = cur0.ch().intValue();
+        currentHintOffset = (long) doc.indexFromPos(cur0) - setHintToken(line, col);
+        hintItemsPrefix = null;
+        requestHints(0, hintPrefix(line, col));
+    }
+
+    /**
+     * Requests a page of completions matching the prefix. Further pages are requested
+     * with the prefix of the first page, when the user scrolls to the end of the hints.
+     */
+    private void requestHints(int start, String prefix) {
+        String request = WorkerRequest.complete(currentHintOffset, start, prefix, doc.getValue());
+        if(request.equals(pendingHintRequest))
+            return;
+        pendingHintRequest = request;
         if(currentCompletionTask != null && !currentCompletionTask.isSent()) {
             currentCompletionTask.update(request);
             return;
         }
         currentCompletionTask = platformServices.getWorkerQueue().enqueue(request, response -> {
+            pendingHintRequest = null;
             Position cur1 = doc.getCursor();
             if(hintRelevant(cur1)) {
                 CompletionList cl = CompletionListModel.parseCompletionList(response);
-                hintItems = cl.getItems();
-                cb.apply(null, makeHints());
+                if(!hintPrefix.startsWith(cl.getPrefix())) {
+                    return; // the prefix has been shortened since
+                } else if(cl.getStart() == 0) {
+                    hintItems.reset(cl.getItems(), cl.getPrefix());
+                    hintItemsPrefix = cl.getPrefix();
+                } else if(hintItemsPrefix != null && cl.getStart() == hintItems.size() && cl.getPrefix().equals(hintItemsPrefix)) {
+                    hintItems.addAll(cl.getItems());
+                } else {
+                    return; // stale page
+                }
+                hintMoreAvailable = cl.isMoreAvailable();
+                showHints();
             }
         });
     }
 
+    private void showHints() {
+        Object[] list = hintItems.narrow(hintPrefix);
+        if(hintMoreAvailable && list.length < MIN_VISIBLE_HINTS && !hintPrefix.equals(hintItemsPrefix))
+            requestHints(0, hintPrefix); // the worker ranks the items of the longer prefix from the start
+        Hints hints = makeHints(list, makePosition(currentHintLine, currentHintTokenStart), doc.getCursor());
+        onSelect(Objs.$js(hints), index -> {
+            if(index == list.length - 1)
+                requestMoreHints();
+        });
+        hintCallback.apply(null, hints);
+    }
+
+    /**
+     * Requests more completions, once the user has scrolled to the last hint: the next page if the items
+     * match the typed prefix, the first page of the typed prefix if the client has narrowed them.
+     */
+    private void requestMoreHints() {
+        if(!hintActive() || !hintMoreAvailable)
+            return;
+        if(!hintPrefix.equals(hintItemsPrefix))
+            requestHints(0, hintPrefix);
+        else if(currentCompletionTask == null || currentCompletionTask.isSent())
+            requestHints(hintItems.size(), hintItemsPrefix);
+    }
+
+    @JavaScriptBody(args = {"hints", "handler"}, body = "CodeMirror.on(hints, 'select', (hint) => handler.@java.util.function.IntConsumer::accept(I)(hints.list.indexOf(hint)));", javacall = true)
+    private static native void onSelect(Object hints, IntConsumer handler);
+
     private void updateOrCloseHints() {
         if(hintActive() && hintRelevant(doc.getCursor()))
             net.java.html.lib.codemirror.showhint.CodeMirror.Exports.showHint(net.java.html.lib.codemirror.showhint.CodeMirror.Doc.$as(codeMirror));
+        else
+            prepareHints();
+    }
+
+    /**
+     * Lets the worker compute the completion environment at the cursor once it is idle,
+     * so that a completion request there only collects and ranks the items.
+     * Right after a dot, the worker is asked to complete the members speculatively,
+     * as the user is likely to request them. The worker ignores the request if the
+     * source has changed in the meantime.
+     */
+    private void prepareHints() {
+        Position cur = doc.getCursor();
+        int line = cur.line().intValue();
+        int col = cur.ch().intValue();
+        int start = identifierStart(line, col);
+        long offset = (long) doc.indexFromPos(cur) - (col - start);
+        if(offset == preparedOffset)
+            return;
+        preparedOffset = offset;
+        boolean afterDot = start > 0 && doc.getLine(line).charAt(start - 1) == '.';
+        String request = afterDot ? WorkerRequest.speculate(offset, doc.getValue()) : WorkerRequest.prepare(offset, doc.getValue());
+        platformServices.getWorkerQueue().enqueueWhenIdle(request, response -> {});
     }
 
-    private static Hints makeHints(Stream<Hint> list, Position from, Position to) {
+    private static Hints makeHints(Object[] list, Position from, Position to) {
         Hints hints = new Objs().$cast(Hints.class);
-        ((Objs.Property) hints.list).set(list.toArray());
+        ((Objs.Property) hints.list).set(list);
         ((Objs.Property) hints.from).set(from);
         ((Objs.Property) hints.to).set(to);
         return hints;
     }
 
-    private Hints makeHints() {
-        Stream<Hint> list = hintItems.stream().filter(it -> it.getText().startsWith(hintPrefix)).map(Editor::makeHint);
-        return makeHints(list, makePosition(currentHintLine, currentHintTokenStart), doc.getCursor());
-    }
-
     private static Hint makeHint(CompletionItem ci) {
         Hint hint = new Objs().$cast(Hint.class);
         hint.text.set(ci.getText());
@@ -413,4 +534,45 @@ public class Editor {
         hint.className.set(ci.getClassName());
         return hint;
     }
+
+    /**
+     * A diagnostic and its marker, if it has a position.
+     */
+    private static final class Highlight {
+        private final Diagnostic.Kind kind;
+        private final String message;
+        private final TextMarker marker;
+
+        Highlight(Diag diag, TextMarker marker) {
+            this.kind = diag.getKind();
+            this.message = diag.getMessage();
+            this.marker = marker;
+        }
+
+        /**
+         * The key of a diagnostic, with the range it is highlighted at, or {@code null} positions if it has none.
+         */
+        static String key(Diagnostic.Kind kind, Position from, Position to, String message) {
+            if(from == null)
+                return kind + "@null " + message;
+            return kind + "@" + from.line().intValue() + ":" + from.ch().intValue() + "-" + to.line().intValue() + ":" + to.ch().intValue() + " " + message;
+        }
+
+        /**
+         * The key with the range the marker is at now, after the edits since it was created.
+         */
+        String currentKey() {
+            if(marker == null)
+                return key(kind, null, null, message);
+            Range range = marker.find();
+            if(range == null)
+                return null; // the marked text was removed
+            return key(kind, range.from(), range.to(), message);
+        }
+
+        void clear() {
+            if(marker != null)
+                marker.clear();
+        }
+    }
 }
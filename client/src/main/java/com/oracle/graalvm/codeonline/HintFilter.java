@@ -0,0 +1,143 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline;
+
+import com.oracle.graalvm.codeonline.nbjava.CompletionSettings;
+import com.oracle.graalvm.codeonline.nbjava.NameMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Narrows completion items received from the worker as the user types.
+ * <p>
+ * The items arrive ranked and matched with a prefix. Each longer prefix filters the
+ * items shown for the previous one, using the same {@link NameMatcher} as the worker,
+ * so camel case and subword matches survive narrowing. The filtered results are kept
+ * per prefix, so going back to a shorter prefix costs nothing, and the ranking is
+ * never changed. The presentation of an item, e.g. a CodeMirror hint, is created
+ * only once, when the item is first shown.
+ *
+ * @param <T> the type of the items
+ */
+final class HintFilter<T> {
+    private final Function<? super T, String> textOf;
+    private final Function<? super T, ?> hintOf;
+    private final CompletionSettings settings;
+
+    private final ArrayList<T> items = new ArrayList<>();
+    private Object[] hints = new Object[0];
+    /** Filtered item indexes, one level per prefix, each a subset of the previous one. */
+    private final ArrayList<Level> levels = new ArrayList<>();
+
+    /**
+     * @param textOf returns the text an item is matched by
+     * @param hintOf creates the presentation of an item
+     */
+    HintFilter(Function<? super T, String> textOf, Function<? super T, ?> hintOf, CompletionSettings settings) {
+        this.textOf = textOf;
+        this.hintOf = hintOf;
+        this.settings = settings;
+    }
+
+    /**
+     * Replaces the items.
+     * @param prefix the prefix the items already match
+     */
+    void reset(List<? extends T> newItems, String prefix) {
+        items.clear();
+        items.addAll(newItems);
+        hints = new Object[items.size()];
+        levels.clear();
+        int[] all = new int[items.size()];
+        for(int i = 0; i < all.length; i++)
+            all[i] = i;
+        levels.add(new Level(prefix, all, all.length));
+    }
+
+    /**
+     * Appends items that match the prefix given to {@link #reset}, e.g. the next page.
+     * The narrowed levels are recomputed on the next {@link #narrow}.
+     */
+    void addAll(List<? extends T> moreItems) {
+        int from = items.size();
+        items.addAll(moreItems);
+        hints = Arrays.copyOf(hints, items.size());
+        if(!levels.isEmpty()) {
+            Level base = levels.get(0);
+            int[] all = Arrays.copyOf(base.indexes, items.size());
+            for(int i = from; i < all.length; i++)
+                all[i] = i;
+            levels.clear();
+            levels.add(new Level(base.prefix, all, all.length));
+        }
+    }
+
+    int size() {
+        return items.size();
+    }
+
+    /**
+     * Returns the presentations of the items matching the prefix, in ranking order.
+     * The prefix must start with the prefix given to {@link #reset}.
+     */
+    Object[] narrow(String prefix) {
+        Level level = levelFor(prefix);
+        Object[] result = new Object[level.size];
+        for(int i = 0; i < level.size; i++) {
+            int index = level.indexes[i];
+            Object hint = hints[index];
+            if(hint == null)
+                hints[index] = hint = hintOf.apply(items.get(index));
+            result[i] = hint;
+        }
+        return result;
+    }
+
+    private Level levelFor(String prefix) {
+        int last = levels.size() - 1;
+        while(last > 0 && !prefix.startsWith(levels.get(last).prefix))
+            levels.remove(last--);
+        Level level = levels.get(last);
+        if(level.prefix.equals(prefix))
+            return level;
+        NameMatcher matcher = settings.createMatcher(prefix);
+        int[] indexes = new int[level.size];
+        int size = 0;
+        for(int i = 0; i < level.size; i++) {
+            int index = level.indexes[i];
+            if(matcher.matches(textOf.apply(items.get(index))))
+                indexes[size++] = index;
+        }
+        Level narrowed = new Level(prefix, indexes, size);
+        levels.add(narrowed);
+        return narrowed;
+    }
+
+    private static final class Level {
+        private final String prefix;
+        private final int[] indexes;
+        private final int size;
+
+        Level(String prefix, int[] indexes, int size) {
+            this.prefix = prefix;
+            this.indexes = indexes;
+            this.size = size;
+        }
+    }
+}
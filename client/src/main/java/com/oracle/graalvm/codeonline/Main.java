@@ -21,9 +21,11 @@ import com.oracle.graalvm.codeonline.js.PlatformServices;
 import com.oracle.graalvm.codeonline.js.TaskQueue;
 import com.oracle.graalvm.codeonline.json.CompilationResultModel;
 import com.oracle.graalvm.codeonline.json.CompletionListModel;
+import com.oracle.graalvm.codeonline.nbjava.CompilationInfo;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.nio.file.Paths;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
@@ -36,6 +38,11 @@ import net.java.html.lib.dom.NodeListOf;
  * Desktop client entry point and common client code.
  */
 public final class Main {
+    /** Maximum number of completion items sent in one response. */
+    private static final int COMPLETION_PAGE_SIZE = 100;
+    /** Results of recent compilations, e.g. of the initial sources of the editors, which are reset to them. */
+    private static final CompilationCache COMPILATION_CACHE = new CompilationCache(64, null);
+
     private Main() {
         throw new UnsupportedOperationException();
     }
@@ -62,6 +69,14 @@ public final class Main {
             elemsCopy[i] = Element.$as(elems.$get(i));
         }
 
+        // Let the worker read the class path archives the snippets need before the first compilation.
+        StringBuilder sources = new StringBuilder();
+        for(Element element : elemsCopy) {
+            sources.append(element.textContent()).append('\n');
+        }
+        if(numElems > 0)
+            services.getWorkerQueue().enqueue(WorkerRequest.prefetch(sources.toString()), response -> {});
+
         // Replace each element with an interactive editor.
         for(Element element : elemsCopy) {
             Editor.from(element, services);
@@ -72,28 +87,91 @@ public final class Main {
         onPageLoad(new DesktopServices());
     }
 
+    /**
+     * Executes a {@link WorkerRequest}. Always returns a response, as the client waits for it.
+     */
     public static String executeTask(String request, PlatformServices platformServices) {
         // TODO use JSON, detect class name
-        if(request.startsWith("/")) {
-            String[] split = request.split("/", 3);
-            int pos = Integer.parseInt(split[1]);
-            String source = split[2];
-            Compilation c = new Compilation();
-            JavaFileManagerImpl files = new JavaFileManagerImpl.Builder(platformServices)
-                    .addSource("Main", source)
-                    .build();
-            c.setFiles(files);
-            boolean success = c.completion(pos);
-            return CompletionListModel.createCompletionList(success, c.getCompletions()).toString();
+        try {
+            switch(WorkerRequest.kindOf(request)) {
+                case WorkerRequest.COMPILE:
+                    return compile(request.substring(1), platformServices);
+                case WorkerRequest.COMPLETE: {
+                    String[] fields = WorkerRequest.fieldsOf(request, 4);
+                    int pos = Integer.parseInt(fields[0]);
+                    int start = Integer.parseInt(fields[1]);
+                    String prefix = fields[2];
+                    Compilation c = new Compilation();
+                    c.setFiles(files(fields[3], platformServices));
+                    boolean success = c.completion(pos, prefix, start, COMPLETION_PAGE_SIZE);
+                    return CompletionListModel.createCompletionList(success, start, prefix, c.hasMoreCompletions(), c.getCompletions()).toString();
+                }
+                case WorkerRequest.PREPARE: {
+                    String[] fields = WorkerRequest.fieldsOf(request, 2);
+                    int pos = Integer.parseInt(fields[0]);
+                    Compilation c = new Compilation();
+                    c.setFiles(files(fields[1], platformServices));
+                    c.prepareCompletion(pos);
+                    return "";
+                }
+                case WorkerRequest.SPECULATE: {
+                    String[] fields = WorkerRequest.fieldsOf(request, 2);
+                    int pos = Integer.parseInt(fields[0]);
+                    Compilation c = new Compilation();
+                    c.setFiles(files(fields[1], platformServices));
+                    c.speculateCompletion(pos);
+                    return "";
+                }
+                case WorkerRequest.PREFETCH:
+                    try {
+                        JavaFileManagerImpl.prefetch(platformServices, request.substring(1));
+                    } catch(IOException ex) {
+                        ex.printStackTrace();
+                    }
+                    return "";
+                default:
+                    throw new IllegalArgumentException("Unknown request: " + request.substring(0, Math.min(request.length(), 40)));
+            }
+        } catch(Throwable t) {
+            t.printStackTrace();
+            return WorkerRequest.failure(request, t);
         }
-        String source = request;
-        Compilation c = new Compilation();
-        JavaFileManagerImpl files = new JavaFileManagerImpl.Builder(platformServices)
+    }
+
+    private static JavaFileManagerImpl files(String source, PlatformServices platformServices) {
+        return new JavaFileManagerImpl.Builder(platformServices)
                 .addSource("Main", source)
                 .build();
-        c.setFiles(files);
-        boolean success = c.compile();
-        return CompilationResultModel.createCompilationResult(success, c.getDiagnostics()).toString();
+    }
+
+    private static String compile(String source, PlatformServices platformServices) {
+        Compilation c = new Compilation();
+        c.setFiles(files(source, platformServices));
+        String key;
+        try {
+            key = CompilationCache.key(source, CompilationInfo.OPTIONS, JavaFileManagerImpl.getClassPathProfile(platformServices));
+        } catch(IOException ex) {
+            ex.printStackTrace();
+            boolean success = c.compile();
+            return CompilationResultModel.createCompilationResult(success, c.isReused(), c.getDiagnostics()).toString();
+        }
+        boolean[] compiled = {false};
+        boolean[] success = {false};
+        String response = COMPILATION_CACHE.get(key, () -> {
+            compiled[0] = true;
+            success[0] = c.compile();
+            if(c.isFailed())
+                return null;
+            return CompilationResultModel.createCompilationResult(success[0], c.getDiagnostics()).toString();
+        });
+        // the next requests for the source, e.g. the idle preparation of completion, need its tokens
+        if(!compiled[0])
+            c.skipCompilation();
+        // The cached result is not marked as reused, it may be served after another source.
+        // A result that was just reused from the previous source is marked, the editor keeps its markers.
+        if(response == null || c.isReused())
+            return CompilationResultModel.createCompilationResult(success[0], c.isReused(), c.getDiagnostics()).toString();
+        return response;
     }
 
     private static final class DesktopServices extends PlatformServices {
@@ -102,6 +180,16 @@ public final class Main {
             return new FileInputStream(Paths.get("target", "extres", name).toFile());
         }
 
+        @Override
+        public byte[] readExternalResource(String name, long offset, int length) throws IOException {
+            try(RandomAccessFile file = new RandomAccessFile(Paths.get("target", "extres", name).toFile(), "r")) {
+                byte[] result = new byte[length];
+                file.seek(offset);
+                file.readFully(result);
+                return result;
+            }
+        }
+
         @Override
         public TaskQueue<String, String> getWorkerQueue() {
             return workerQueue;
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Finds the code snippets in pages the way the browser and {@link Editor} see them.
+ */
+public final class Snippets {
+    private static final String CLASS_NAME = "codeonline";
+
+    private Snippets() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Removes the indentation of the first line from all lines, and trailing blank lines.
+     */
+    public static String unIndent(String code) {
+        String[] lines = code.split("\n");
+        String head = lines[0];
+        String indent = "";
+        for(int i = 0; i < head.length(); i++) {
+            if(!Character.isWhitespace(head.charAt(i))) {
+                indent = head.substring(0, i);
+                break;
+            }
+        }
+        if(indent.isEmpty())
+            return code;
+        StringBuilder result = new StringBuilder();
+        int length = 0;
+        for(String line : lines) {
+            if(line.startsWith(indent))
+                result.append(line, indent.length(), line.length());
+            else
+                result.append(line);
+            result.append('\n');
+            if(!line.matches("\\s*")) // .isBlank()
+                length = result.length();
+        }
+        return result.substring(0, length);
+    }
+
+    /**
+     * Finds the {@code textarea} and {@code pre} elements with the class {@value #CLASS_NAME}
+     * in an HTML page, without nesting of the same element. Their source is the text content
+     * as parsed by a browser, unindented.
+     */
+    public static List<Snippet> inHtml(String html) {
+        ArrayList<Snippet> snippets = new ArrayList<>();
+        int i = 0;
+        while((i = html.indexOf('<', i)) >= 0) {
+            int tagEnd = html.indexOf('>', i);
+            if(tagEnd < 0)
+                break;
+            String tag = tagName(html, i + 1);
+            if((tag.equals("textarea") || tag.equals("pre")) && hasClass(html.substring(i, tagEnd))) {
+                int end = indexOfIgnoreCase(html, "</" + tag, tagEnd);
+                if(end < 0)
+                    break;
+                String content = html.substring(tagEnd + 1, end);
+                if(!tag.equals("textarea"))
+                    content = content.replaceAll("<[^>]*>", "");
+                content = decodeEntities(content).replace("\r\n", "\n").replace('\r', '\n');
+                // the parser drops a newline right after the start tag
+                if(content.startsWith("\n"))
+                    content = content.substring(1);
+                snippets.add(new Snippet(unIndent(content), tagEnd, end));
+                i = end;
+            } else {
+                i = tagEnd;
+            }
+        }
+        return snippets;
+    }
+
+    private static String tagName(String html, int from) {
+        int end = from;
+        while(end < html.length() && Character.isLetterOrDigit(html.charAt(end)))
+            end++;
+        return html.substring(from, end).toLowerCase(Locale.ROOT);
+    }
+
+    private static int indexOfIgnoreCase(String s, String part, int from) {
+        for(int i = from; i + part.length() <= s.length(); i++) {
+            if(s.regionMatches(true, i, part, 0, part.length()))
+                return i;
+        }
+        return -1;
+    }
+
+    private static boolean hasClass(String startTag) {
+        int i = indexOfIgnoreCase(startTag, "class=", 0);
+        if(i < 0)
+            return false;
+        i += "class=".length();
+        String value;
+        if(i < startTag.length() && (startTag.charAt(i) == '"' || startTag.charAt(i) == '\'')) {
+            int end = startTag.indexOf(startTag.charAt(i), i + 1);
+            value = startTag.substring(i + 1, end < 0 ? startTag.length() : end);
+        } else {
+            int end = i;
+            while(end < startTag.length() && !Character.isWhitespace(startTag.charAt(end)))
+                end++;
+            value = startTag.substring(i, end);
+        }
+        for(String name : value.trim().split("\\s+")) {
+            if(name.equals(CLASS_NAME))
+                return true;
+        }
+        return false;
+    }
+
+    private static String decodeEntities(String text) {
+        if(text.indexOf('&') < 0)
+            return text;
+        StringBuilder result = new StringBuilder(text.length());
+        int i = 0;
+        while(i < text.length()) {
+            char c = text.charAt(i);
+            int semicolon = c == '&' ? text.indexOf(';', i) : -1;
+            String decoded = semicolon > 0 ? decodeEntity(text.substring(i + 1, semicolon)) : null;
+            if(decoded == null) {
+                result.append(c);
+                i++;
+            } else {
+                result.append(decoded);
+                i = semicolon + 1;
+            }
+        }
+        return result.toString();
+    }
+
+    private static String decodeEntity(String name) {
+        switch(name) {
+            case "lt":
+                return "<";
+            case "gt":
+                return ">";
+            case "amp":
+                return "&";
+            case "quot":
+                return "\"";
+            case "apos":
+                return "'";
+            case "nbsp":
+                return "\u00a0";
+            default:
+                try {
+                    if(name.startsWith("#x") || name.startsWith("#X"))
+                        return new String(Character.toChars(Integer.parseInt(name.substring(2), 16)));
+                    if(name.startsWith("#"))
+                        return new String(Character.toChars(Integer.parseInt(name.substring(1))));
+                } catch(IllegalArgumentException ex) {
+                    // not a valid character reference, kept as text
+                }
+                return null;
+        }
+    }
+
+    /**
+     * A snippet in a page.
+     */
+    public static final class Snippet {
+        /** The source of the snippet, as the editor shows it. */
+        public final String source;
+        /** The index of the end of the start tag, i.e. of its {@code >}. */
+        public final int startTagEnd;
+        /** The index of the end tag. */
+        public final int endTagStart;
+
+        private Snippet(String source, int startTagEnd, int endTagStart) {
+            this.source = source;
+            this.startTagEnd = startTagEnd;
+            this.endTagStart = endTagStart;
+        }
+    }
+}
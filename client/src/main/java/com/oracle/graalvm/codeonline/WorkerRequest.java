@@ -0,0 +1,97 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline;
+
+import com.oracle.graalvm.codeonline.json.CompilationResultModel;
+import com.oracle.graalvm.codeonline.json.CompletionListModel;
+import java.util.Collections;
+
+/**
+ * The requests the client sends to the worker, executed by {@link Main#executeTask}.
+ * <p>
+ * The first character of a request tells its kind, so that no source can be taken
+ * for a request of another kind. The fields follow, separated by slashes; the source
+ * is the last field.
+ */
+final class WorkerRequest {
+    /** The source; answered by a {@code CompilationResult}. */
+    static final char COMPILE = '=';
+    /** Offset, index of the first requested item, prefix and source; answered by a {@code CompletionList}. */
+    static final char COMPLETE = '/';
+    /** Offset and source, sent while idle to prepare the completion there; the response is empty. */
+    static final char PREPARE = '?';
+    /** Offset and source, sent while idle after a dot to complete the members there; the response is empty. */
+    static final char SPECULATE = '.';
+    /** The sources of all snippets on the page, sent on page load to read their class path; the response is empty. */
+    static final char PREFETCH = '!';
+
+    private WorkerRequest() {
+        throw new UnsupportedOperationException();
+    }
+
+    static String compile(String source) {
+        return COMPILE + source;
+    }
+
+    static String complete(long offset, int start, String prefix, String source) {
+        return COMPLETE + Long.toString(offset) + '/' + start + '/' + prefix + '/' + source;
+    }
+
+    static String prepare(long offset, String source) {
+        return PREPARE + Long.toString(offset) + '/' + source;
+    }
+
+    static String speculate(long offset, String source) {
+        return SPECULATE + Long.toString(offset) + '/' + source;
+    }
+
+    static String prefetch(String sources) {
+        return PREFETCH + sources;
+    }
+
+    /**
+     * @return the kind of the request, or {@code 0} if it is empty
+     */
+    static char kindOf(String request) {
+        return request.isEmpty() ? 0 : request.charAt(0);
+    }
+
+    /**
+     * Returns the fields of the request after its kind.
+     * @throws IllegalArgumentException if the request does not have that many fields
+     */
+    static String[] fieldsOf(String request, int count) {
+        String[] fields = request.substring(1).split("/", count);
+        if(fields.length != count)
+            throw new IllegalArgumentException("Malformed request: " + request.substring(0, Math.min(request.length(), 40)));
+        return fields;
+    }
+
+    /**
+     * Returns the response to a request that could not be executed, which the client still understands.
+     */
+    static String failure(String request, Throwable failure) {
+        switch(kindOf(request)) {
+            case COMPILE:
+                return CompilationResultModel.createCompilationFailure(failure).toString();
+            case COMPLETE:
+                return CompletionListModel.createCompletionList(false, 0, "", false, Collections.emptyList()).toString();
+            default:
+                return "";
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.oracle.graalvm.codeonline.build;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A content-addressed store of the intermediate results of {@link PrepareClassPath}, kept between builds.
+ * <ul>
+ * <li>{@code classes/}: the API stubs of class files, in a directory for each version of the tools,
+ * named by the digest of the original class file,
+ * <li>{@code archives/}: the package archives, named by their {@link #packageDigest digests},
+ * <li>{@code jars/}: for each input file, named by the digest of its path, its size, modification time
+ * and the options, followed by its packages: their digests and the simple names of their classes.
+ * </ul>
+ * The digests and the directories of the stubs also cover the classes of the tools that produce
+ * the results, so results of an older version of the build are not reused. The files are written atomically.
+ */
+final class ClassPathStore {
+    /** The classes whose code determines the stubs and archives. */
+    private static final String[] TOOLS = {
+        "com/oracle/graalvm/codeonline/build/MethodBodyEraser.class",
+        "com/oracle/graalvm/codeonline/ntar/NtarWriter.class",
+        "com/oracle/graalvm/codeonline/ntar/BlockCodec.class",
+        "com/oracle/graalvm/codeonline/ntar/ConstantPoolDictionary.class",
+    };
+    private static final String TOOLS_DIGEST = digestTools();
+    /** The version of the format of the files in {@code jars/}. */
+    private static final int JAR_FORMAT = 2;
+
+    private final String toolsDigest;
+    private final Path classes;
+    private final Path archives;
+    private final Path jars;
+
+    ClassPathStore(File directory) throws IOException {
+        this(directory, TOOLS_DIGEST);
+    }
+
+    /**
+     * @param toolsDigest identifies the version of the tools
+     */
+    ClassPathStore(File directory, String toolsDigest) throws IOException {
+        Path root = directory.toPath();
+        this.toolsDigest = toolsDigest;
+        this.classes = Files.createDirectories(root.resolve("classes").resolve(toolsDigest));
+        this.archives = Files.createDirectories(root.resolve("archives"));
+        this.jars = Files.createDirectories(root.resolve("jars"));
+    }
+
+    /**
+     * Returns the API stub of a class file, erasing the class only if it has not been erased before.
+     */
+    byte[] getApiStub(String classDigest, byte[] classFile) throws IOException {
+        Path file = classes.resolve(classDigest.substring(0, 2)).resolve(classDigest);
+        if(Files.exists(file))
+            return Files.readAllBytes(file);
+        byte[] stub = MethodBodyEraser.createApiStub(classFile);
+        Files.createDirectories(file.getParent());
+        writeAtomically(file, stub);
+        return stub;
+    }
+
+    /**
+     * @return the archive with the digest, or {@code null} if it is not stored
+     */
+    byte[] loadArchive(String packageDigest) throws IOException {
+        Path file = archives.resolve(packageDigest);
+        return Files.exists(file) ? Files.readAllBytes(file) : null;
+    }
+
+    void saveArchive(String packageDigest, byte[] archive) throws IOException {
+        writeAtomically(archives.resolve(packageDigest), archive);
+    }
+
+    /**
+     * Returns the packages of an input file, if the file has not changed since it was {@link #saveJar saved}
+     * with the same options and all its archives are stored.
+     * @return the packages, or {@code null}
+     */
+    List<StoredPackage> loadJar(File jar, boolean compress) throws IOException {
+        Path file = jars.resolve(digest(jar.getCanonicalPath().getBytes(StandardCharsets.UTF_8)));
+        if(!Files.exists(file))
+            return null;
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if(lines.isEmpty() || !lines.get(0).equals(jarFingerprint(jar, compress)))
+            return null;
+        ArrayList<StoredPackage> packages = new ArrayList<>();
+        for(String line : lines.subList(1, lines.size())) {
+            // the digest, the name of the package, which is empty for the default package, and the classes
+            String[] fields = line.split(" ");
+            if(!Files.exists(archives.resolve(fields[0])))
+                return null;
+            packages.add(new StoredPackage(fields[1], fields[0], Arrays.asList(fields).subList(2, fields.length)));
+        }
+        return packages;
+    }
+
+    void saveJar(File jar, boolean compress, List<StoredPackage> packages) throws IOException {
+        StringBuilder content = new StringBuilder(jarFingerprint(jar, compress)).append('\n');
+        for(StoredPackage storedPackage : packages) {
+            content.append(storedPackage.digest).append(' ').append(storedPackage.name);
+            for(String className : storedPackage.classes)
+                content.append(' ').append(className);
+            content.append('\n');
+        }
+        Path file = jars.resolve(digest(jar.getCanonicalPath().getBytes(StandardCharsets.UTF_8)));
+        writeAtomically(file, content.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String jarFingerprint(File jar, boolean compress) {
+        return JAR_FORMAT + " " + jar.length() + " " + jar.lastModified() + " " + compress + " " + toolsDigest;
+    }
+
+    /**
+     * Identifies the contents of a package archive.
+     * @param classes the simple names of the classes and the digests of their class files, sorted by name
+     */
+    static String packageDigest(boolean compress, Map<String, String> classes) {
+        MessageDigest md = newDigest();
+        md.update(TOOLS_DIGEST.getBytes(StandardCharsets.UTF_8));
+        md.update((byte) (compress ? 1 : 0));
+        for(Map.Entry<String, String> entry : classes.entrySet()) {
+            md.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(entry.getValue().getBytes(StandardCharsets.UTF_8));
+        }
+        return hex(md.digest());
+    }
+
+    static String digest(byte[] content) {
+        return hex(newDigest().digest(content));
+    }
+
+    private static String digestTools() {
+        MessageDigest md = newDigest();
+        for(String tool : TOOLS) {
+            try(InputStream in = ClassPathStore.class.getClassLoader().getResourceAsStream(tool)) {
+                if(in != null)
+                    md.update(InputStreams.readAllBytes(in));
+            } catch(IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+        return hex(md.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    private static String hex(byte[] hash) {
+        StringBuilder result = new StringBuilder(hash.length * 2);
+        for(byte b : hash)
+            result.append(Character.forDigit(b >> 4 & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        return result.toString();
+    }
+
+    static final class StoredPackage {
+        /** The name of the package with dots. */
+        final String name;
+        final String digest;
+        /** The simple names of the classes. */
+        final Collection<String> classes;
+
+        StoredPackage(String name, String digest, Collection<String> classes) {
+            this.name = name;
+            this.digest = digest;
+            this.classes = classes;
+        }
+    }
+
+    /**
+     * Replaces a file by moving a temporary file over it, so readers see either the old or the new contents.
+     */
+    static void writeAtomically(Path file, byte[] contents) throws IOException {
+        Path temp = createTempFile(file.getParent(), file.getFileName().toString());
+        try {
+            Files.write(temp, contents);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Creates a uniquely named temporary file, readable by everyone where POSIX permissions are supported,
+     * since the files are served by a web server. {@link Files#createTempFile} makes them private.
+     */
+    static Path createTempFile(Path directory, String prefix) throws IOException {
+        Path temp = Files.createTempFile(directory, prefix, ".tmp");
+        if(Files.getFileStore(temp).supportsFileAttributeView(PosixFileAttributeView.class))
+            Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-r--r--"));
+        return temp;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.build;
+
+import com.oracle.graalvm.codeonline.js.PlatformServices;
+import com.oracle.graalvm.codeonline.js.TaskQueue;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Reads the external resources, i.e. the output of {@link PrepareClassPath}, from a directory.
+ * Used by the tools that compile snippets outside of the browser.
+ */
+public final class DirectoryServices extends PlatformServices {
+    private final File directory;
+
+    public DirectoryServices(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public InputStream openExternalResource(String name) throws IOException {
+        return new FileInputStream(new File(directory, name));
+    }
+
+    @Override
+    public byte[] readExternalResource(String name, long offset, int length) throws IOException {
+        try(RandomAccessFile file = new RandomAccessFile(new File(directory, name), "r")) {
+            byte[] result = new byte[length];
+            file.seek(offset);
+            file.readFully(result);
+            return result;
+        }
+    }
+
+    @Override
+    public TaskQueue<String, String> getWorkerQueue() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.oracle.graalvm.codeonline.build;
+
+import com.oracle.graalvm.codeonline.CompilationCache;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Keeps the results of a {@link CompilationCache} in a directory, one file per result,
+ * named by the SHA-256 hash of the key. The files are replaced atomically, so the directory
+ * can be shared by processes.
+ */
+public final class DirectoryStore implements CompilationCache.Store {
+    private final Path directory;
+
+    public DirectoryStore(File directory) throws IOException {
+        this.directory = directory.toPath();
+        Files.createDirectories(this.directory);
+    }
+
+    @Override
+    public String load(String key) throws IOException {
+        try {
+            return new String(Files.readAllBytes(directory.resolve(fileName(key))), StandardCharsets.UTF_8);
+        } catch(NoSuchFileException ex) {
+            return null;
+        }
+    }
+
+    @Override
+    public void save(String key, String result) throws IOException {
+        Path temp = Files.createTempFile(directory, "result", ".tmp");
+        try {
+            Files.write(temp, result.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, directory.resolve(fileName(key)), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static String fileName(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(hash.length * 2 + 5);
+            for(byte b : hash)
+                name.append(Character.forDigit(b >> 4 & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            return name.append(".json").toString();
+        } catch(NoSuchAlgorithmException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+}
@@ -21,17 +21,61 @@ import org.objectweb.asm.Attribute;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.TypePath;
 
+/**
+ * Strips class files down to what javac needs to compile against them.
+ * <p>
+ * {@link #eraseMethodBodies} keeps a loadable class, with every method body
+ * replaced by {@code throw null}. {@link #createApiStub} removes the code altogether,
+ * like the stubs in {@code ct.sym}: javac reads neither the {@code Code} attribute
+ * nor the debug attributes unless it is asked to save parameter names.
+ */
 public final class MethodBodyEraser extends ClassVisitor {
-    private MethodBodyEraser() {
-        super(Opcodes.ASM6, new ClassWriter(ClassWriter.COMPUTE_FRAMES));
+    private final boolean apiOnly;
+
+    private MethodBodyEraser(boolean apiOnly) {
+        // "throw null" has no branches, so no stack map frames are needed
+        super(Opcodes.ASM6, new ClassWriter(apiOnly ? 0 : ClassWriter.COMPUTE_MAXS));
+        this.apiOnly = apiOnly;
+    }
+
+    /**
+     * Whether a member is left out of an API stub. Private members are kept,
+     * so that javac reports them as inaccessible rather than missing.
+     */
+    private static boolean isOmitted(int access) {
+        return (access & Opcodes.ACC_SYNTHETIC) != 0;
+    }
+
+    @Override
+    public void visitAttribute(Attribute attr) {
+        if(!apiOnly)
+            super.visitAttribute(attr);
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+        if(apiOnly && isOmitted(access))
+            return null;
+        FieldVisitor fv = super.visitField(access, name, desc, signature, value);
+        if(!apiOnly)
+            return fv;
+        return new FieldVisitor(Opcodes.ASM6, fv) {
+            @Override
+            public void visitAttribute(Attribute attr) {
+                // non-standard attributes are of no use to javac
+            }
+        };
     }
 
     @Override
     public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        if(apiOnly && isOmitted(access))
+            return null;
         MethodVisitor mw = super.visitMethod(access, name, desc, signature, exceptions);
         return new MethodVisitor(Opcodes.ASM6) {
             @Override
@@ -49,7 +93,8 @@ public final class MethodBodyEraser extends ClassVisitor {
 
             @Override
             public void visitAttribute(Attribute attr) {
-                mw.visitAttribute(attr);
+                if(!apiOnly)
+                    mw.visitAttribute(attr);
             }
 
             @Override
@@ -91,8 +136,21 @@ public final class MethodBodyEraser extends ClassVisitor {
 
     public static byte[] eraseMethodBodies(byte[] bytecode) {
         ClassReader classReader = new ClassReader(bytecode);
-        MethodBodyEraser visitor = new MethodBodyEraser();
-        classReader.accept(visitor, 0);
+        MethodBodyEraser visitor = new MethodBodyEraser(false);
+        classReader.accept(visitor, ClassReader.SKIP_FRAMES);
+        return visitor.toByteArray();
+    }
+
+    /**
+     * Creates a stub for compilation only: methods have no code, synthetic members
+     * as well as debug and non-standard attributes are removed. Signatures,
+     * annotations, constant values, thrown exceptions and inner class entries are kept.
+     * The stub cannot be loaded by a JVM.
+     */
+    public static byte[] createApiStub(byte[] bytecode) {
+        ClassReader classReader = new ClassReader(bytecode);
+        MethodBodyEraser visitor = new MethodBodyEraser(true);
+        classReader.accept(visitor, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
         return visitor.toByteArray();
     }
 }
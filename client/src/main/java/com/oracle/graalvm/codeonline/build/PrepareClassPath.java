@@ -16,17 +16,26 @@
 
 package com.oracle.graalvm.codeonline.build;
 
+import com.oracle.graalvm.codeonline.files.ClassFilter;
 import com.oracle.graalvm.codeonline.ntar.NtarWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.function.Consumer;
+import java.util.TreeMap;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import javax.tools.JavaFileManager.Location;
@@ -34,23 +43,85 @@ import javax.tools.StandardLocation;
 
 /**
  * Executed during build to put all requested classes to ZIP archives grouped by Java package.
+ * <p>
+ * Arguments: [{@code --compress}] [{@code --bundle}] [{@code --incremental} store directory]
+ * output directory, class path elements.
+ * With {@code --compress}, compressed {@link com.oracle.graalvm.codeonline.ntar ntar} archives are written,
+ * in which the classes of a package share their common constant pool strings.
+ * With {@code --bundle}, the archives are concatenated in a single file, {@value #BUNDLE},
+ * and {@code available.txt} lists their ranges in it, so the client can read them with range requests.
+ * Packages are sorted by name in the bundle, related packages are likely to be read together.
+ * <p>
+ * A {@link ClassFilter} of all the classes is written to {@value #CLASS_FILTER}.
+ * Each line of {@code available.txt} ends with the digest of the contents of the archive. Archive files
+ * whose digest has not changed are not rewritten, and {@code available.txt} is replaced atomically.
+ * With {@code --incremental}, the API stubs of the classes, the archives and the digests of the packages
+ * of each input file are kept in a {@link ClassPathStore}: an unchanged input file is not read at all,
+ * and only the changed classes of a changed one are erased again.
  */
 public final class PrepareClassPath {
+    private static final String BUNDLE = "classpath.bundle";
+    private static final String AVAILABLE = "available.txt";
+    private static final String CLASS_FILTER = "classes.filter";
+
     private PrepareClassPath() {
         throw new UnsupportedOperationException();
     }
 
     public static void main(String[] args) throws IOException {
+        long start = System.nanoTime();
+        boolean compress = false;
+        boolean bundle = false;
+        ClassPathStore store = null;
+        int firstArg = 0;
+        for(; firstArg < args.length && args[firstArg].startsWith("--"); firstArg++) {
+            if(args[firstArg].equals("--compress"))
+                compress = true;
+            else if(args[firstArg].equals("--bundle"))
+                bundle = true;
+            else if(args[firstArg].equals("--incremental"))
+                store = new ClassPathStore(new File(args[++firstArg]));
+            else
+                throw new IllegalArgumentException("Unknown option " + args[firstArg]);
+        }
+        args = Arrays.copyOfRange(args, firstArg, args.length);
         File outputDir = new File(args[0]);
         File platformClassPath = getLibRtJar();
         File[] classPath = Arrays.stream(args).skip(1).map(File::new).toArray(File[]::new);
         outputDir.mkdirs();
-        try(PrintStream printStream = new PrintStream(new File(outputDir, "available.txt"))) {
-            processPackages(outputDir, StandardLocation.PLATFORM_CLASS_PATH, platformClassPath, printStream::println);
+        Map<String, String> previous = readDigests(new File(outputDir, AVAILABLE));
+        ByteArrayOutputStream list = new ByteArrayOutputStream();
+        ClassFilter.Builder filter = new ClassFilter.Builder();
+        try(PrintStream printStream = new PrintStream(list, false, "UTF-8");
+                ArchiveOutput output = bundle ? new BundleOutput(outputDir, printStream) : new FileOutput(outputDir, printStream, previous)) {
+            processPackages(StandardLocation.PLATFORM_CLASS_PATH, platformClassPath, output, filter, compress, store);
             for(File classPathElem : classPath) {
-                processPackages(outputDir, StandardLocation.CLASS_PATH, classPathElem, printStream::println);
+                processPackages(StandardLocation.CLASS_PATH, classPathElem, output, filter, compress, store);
             }
+            output.finish();
+        }
+        ByteArrayOutputStream filterBytes = new ByteArrayOutputStream();
+        filter.build().write(filterBytes);
+        ClassPathStore.writeAtomically(new File(outputDir, CLASS_FILTER).toPath(), filterBytes.toByteArray());
+        ClassPathStore.writeAtomically(new File(outputDir, AVAILABLE).toPath(), list.toByteArray());
+        System.out.println("Class path prepared in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * Reads the digests of the archive files written by a previous build, keyed by their names.
+     * Archives in the bundle are left out: the file of the same name, if any, is left over
+     * from an older build and does not have their digest.
+     */
+    static Map<String, String> readDigests(File available) throws IOException {
+        HashMap<String, String> digests = new HashMap<>();
+        if(!available.exists())
+            return digests;
+        for(String line : Files.readAllLines(available.toPath(), StandardCharsets.UTF_8)) {
+            String[] fields = line.split(" ");
+            if(fields.length == 2)
+                digests.put(fields[0], fields[1]);
         }
+        return digests;
     }
 
     private static File getLibRtJar() {
@@ -65,8 +136,16 @@ public final class PrepareClassPath {
             return Paths.get(javaHome, "lib", "rt.jar").toFile();
     }
 
-    private static void processPackages(File outDir, Location location, File inFile, Consumer<String> outputFileList) throws IOException {
-        HashMap<String, HashMap<String, byte[]>> packages = new HashMap<>();
+    private static void processPackages(Location location, File inFile, ArchiveOutput output, ClassFilter.Builder filter, boolean compress, ClassPathStore store) throws IOException {
+        List<ClassPathStore.StoredPackage> stored = store == null ? null : store.loadJar(inFile, compress);
+        if(stored != null) {
+            for(ClassPathStore.StoredPackage storedPackage : stored) {
+                addClasses(filter, location, storedPackage.name, storedPackage.classes);
+                output.write(getArchiveName(location, storedPackage.name), storedPackage.digest, () -> store.loadArchive(storedPackage.digest));
+            }
+            return;
+        }
+        HashMap<String, TreeMap<String, ClassFile>> packages = new HashMap<>();
         try(ZipInputStream in = new ZipInputStream(new FileInputStream(inFile))) {
             for(;;) {
                 ZipEntry entry = in.getNextEntry();
@@ -89,24 +168,167 @@ public final class PrepareClassPath {
                     packageName = entName.substring(0, lastSlash);
                     simpleName = entName.substring(lastSlash + 1, suffixIndex);
                 }
-                byte[] contents = MethodBodyEraser.eraseMethodBodies(InputStreams.readAllBytes(in));
-                HashMap<String, byte[]> classes = packages.computeIfAbsent(packageName, ignoredPackageName -> new HashMap<>());
-                classes.putIfAbsent(simpleName, contents);
+                TreeMap<String, ClassFile> classes = packages.computeIfAbsent(packageName, ignoredPackageName -> new TreeMap<>());
+                if(classes.containsKey(simpleName))
+                    continue;
+                byte[] original = InputStreams.readAllBytes(in);
+                String digest = ClassPathStore.digest(original);
+                byte[] contents = store == null ? MethodBodyEraser.createApiStub(original) : store.getApiStub(digest, original);
+                classes.put(simpleName, new ClassFile(digest, contents));
             }
         }
-        for(Map.Entry<String, HashMap<String, byte[]>> packageClasses : packages.entrySet()) {
+        ArrayList<ClassPathStore.StoredPackage> storedPackages = new ArrayList<>();
+        for(Map.Entry<String, TreeMap<String, ClassFile>> packageClasses : new TreeMap<>(packages).entrySet()) {
             String packageName = packageClasses.getKey().replace('/', '.');
-            HashMap<String, byte[]> classes = packageClasses.getValue();
-            String outFileName = location + "-" + packageName + ".zip";
-            outputFileList.accept(outFileName);
-            File outFile = new File(outDir, outFileName);
-            try(NtarWriter out = new NtarWriter(new FileOutputStream(outFile))) {
-                for(Map.Entry<String, byte[]> entry : classes.entrySet()) {
-                    String simpleName = entry.getKey();
-                    byte[] contents = entry.getValue();
-                    out.put(simpleName, contents);
+            TreeMap<String, ClassFile> classes = packageClasses.getValue();
+            TreeMap<String, String> classDigests = new TreeMap<>();
+            for(Map.Entry<String, ClassFile> entry : classes.entrySet())
+                classDigests.put(entry.getKey(), entry.getValue().digest);
+            String packageDigest = ClassPathStore.packageDigest(compress, classDigests);
+            storedPackages.add(new ClassPathStore.StoredPackage(packageName, packageDigest, classes.keySet()));
+            addClasses(filter, location, packageName, classes.keySet());
+            output.write(getArchiveName(location, packageName), packageDigest, () -> {
+                byte[] archive = store == null ? null : store.loadArchive(packageDigest);
+                if(archive == null) {
+                    archive = createArchive(classes, compress);
+                    if(store != null)
+                        store.saveArchive(packageDigest, archive);
                 }
+                return archive;
+            });
+        }
+        if(store != null)
+            store.saveJar(inFile, compress, storedPackages);
+    }
+
+    private static void addClasses(ClassFilter.Builder filter, Location location, String packageName, Collection<String> simpleNames) {
+        String qualification = packageName.isEmpty() ? "" : packageName + '.';
+        for(String simpleName : simpleNames)
+            filter.add(location, qualification + simpleName);
+    }
+
+    private static String getArchiveName(Location location, String packageName) {
+        return location + "-" + packageName + ".zip";
+    }
+
+    private static byte[] createArchive(Map<String, ClassFile> classes, boolean compress) throws IOException {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try(NtarWriter out = new NtarWriter(archive, compress, compress)) {
+            for(Map.Entry<String, ClassFile> entry : classes.entrySet()) {
+                String simpleName = entry.getKey();
+                byte[] contents = entry.getValue().contents;
+                out.put(simpleName, contents);
             }
         }
+        return archive.toByteArray();
+    }
+
+    private static final class ClassFile {
+        /** The digest of the original class file. */
+        private final String digest;
+        /** The API stub. */
+        private final byte[] contents;
+
+        ClassFile(String digest, byte[] contents) {
+            this.digest = digest;
+            this.contents = contents;
+        }
+    }
+
+    /**
+     * Creates the contents of an archive, only if they are needed.
+     */
+    private interface ArchiveContents {
+        byte[] get() throws IOException;
+    }
+
+    /**
+     * Stores the package archives and lists them in {@code available.txt}.
+     */
+    private interface ArchiveOutput extends AutoCloseable {
+        void write(String name, String digest, ArchiveContents archive) throws IOException;
+
+        /**
+         * Called when all archives have been written, before {@code available.txt} is replaced.
+         */
+        void finish() throws IOException;
+
+        /**
+         * Discards the unfinished output.
+         */
+        @Override
+        void close() throws IOException;
+    }
+
+    /**
+     * Writes each archive to a separate file, unless the file of the previous build has the same digest.
+     */
+    private static final class FileOutput implements ArchiveOutput {
+        private final File outDir;
+        private final PrintStream list;
+        private final Map<String, String> previous;
+
+        FileOutput(File outDir, PrintStream list, Map<String, String> previous) {
+            this.outDir = outDir;
+            this.list = list;
+            this.previous = previous;
+        }
+
+        @Override
+        public void write(String name, String digest, ArchiveContents archive) throws IOException {
+            list.println(name + " " + digest);
+            File file = new File(outDir, name);
+            if(digest.equals(previous.get(name)) && file.exists())
+                return;
+            ClassPathStore.writeAtomically(file.toPath(), archive.get());
+        }
+
+        @Override
+        public void finish() {
+            // nothing to do
+        }
+
+        @Override
+        public void close() {
+            // nothing to do
+        }
+    }
+
+    /**
+     * Appends the archives to the bundle, which replaces the previous one when it is complete.
+     */
+    private static final class BundleOutput implements ArchiveOutput {
+        private final File target;
+        private final File temp;
+        private final OutputStream bundle;
+        private final PrintStream list;
+        private long offset;
+
+        BundleOutput(File outDir, PrintStream list) throws IOException {
+            this.target = new File(outDir, BUNDLE);
+            this.temp = ClassPathStore.createTempFile(outDir.toPath(), BUNDLE).toFile();
+            this.bundle = new FileOutputStream(temp);
+            this.list = list;
+        }
+
+        @Override
+        public void write(String name, String digest, ArchiveContents archive) throws IOException {
+            byte[] contents = archive.get();
+            list.println(name + " " + BUNDLE + " " + offset + " " + contents.length + " " + digest);
+            bundle.write(contents);
+            offset += contents.length;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            bundle.close();
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        @Override
+        public void close() throws IOException {
+            bundle.close();
+            Files.deleteIfExists(temp.toPath());
+        }
     }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.build;
+
+import com.oracle.graalvm.codeonline.Compilation;
+import com.oracle.graalvm.codeonline.Snippets;
+import com.oracle.graalvm.codeonline.files.JavaFileManagerImpl;
+import com.oracle.graalvm.codeonline.js.PlatformServices;
+import com.oracle.graalvm.codeonline.json.CompilationResultModel;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Executed during build to compile the snippets of the web pages ahead of time,
+ * so that the editors show their diagnostics right away and the worker compiles
+ * a snippet only after it has been edited.
+ * <p>
+ * Arguments: directory with the output of {@link PrepareClassPath}, input directory of the pages,
+ * output directory. The pages are copied to the output directory; the result of the compilation
+ * of each snippet is added to its element as the {@code data-diagnostics} attribute, in the
+ * JSON form of {@code CompilationResult}. The snippets are compiled in parallel.
+ */
+public final class PrerenderDiagnostics {
+    static final String ATTRIBUTE = "data-diagnostics";
+
+    private PrerenderDiagnostics() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        PlatformServices services = new DirectoryServices(new File(args[0]));
+        Path inputDir = new File(args[1]).toPath();
+        Path outputDir = new File(args[2]).toPath();
+        List<Path> files;
+        try(Stream<Path> walk = Files.walk(inputDir)) {
+            files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<Page> pages = new ArrayList<>();
+            for(Path file : files) {
+                Path target = outputDir.resolve(inputDir.relativize(file));
+                Files.createDirectories(target.getParent());
+                if(!file.getFileName().toString().endsWith(".html")) {
+                    Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+                    continue;
+                }
+                String html = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                Page page = new Page(target, html, Snippets.inHtml(html));
+                for(Snippets.Snippet snippet : page.snippets)
+                    page.results.add(executor.submit(() -> compile(services, snippet.source)));
+                pages.add(page);
+            }
+            for(Page page : pages)
+                Files.write(page.target, page.render().getBytes(StandardCharsets.UTF_8));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Compiles a snippet the way the worker does.
+     * @return the {@code CompilationResult} in JSON
+     */
+    static String compile(PlatformServices services, String source) {
+        Compilation c = new Compilation(new Compilation.State());
+        JavaFileManagerImpl files = new JavaFileManagerImpl.Builder(services)
+                .addSource("Main", source)
+                .build();
+        c.setFiles(files);
+        boolean success = c.compile();
+        return CompilationResultModel.createCompilationResult(success, c.getDiagnostics()).toString();
+    }
+
+    private static String escapeAttribute(String value) {
+        return value.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static final class Page {
+        private final Path target;
+        private final String html;
+        private final List<Snippets.Snippet> snippets;
+        private final List<Future<String>> results = new ArrayList<>();
+
+        Page(Path target, String html, List<Snippets.Snippet> snippets) {
+            this.target = target;
+            this.html = html;
+            this.snippets = snippets;
+        }
+
+        String render() throws InterruptedException, ExecutionException {
+            StringBuilder result = new StringBuilder(html.length());
+            int copied = 0;
+            for(int i = 0; i < snippets.size(); i++) {
+                int end = snippets.get(i).startTagEnd;
+                result.append(html, copied, end);
+                result.append(' ').append(ATTRIBUTE).append("=\"").append(escapeAttribute(results.get(i).get())).append('"');
+                copied = end;
+            }
+            return result.append(html, copied, html.length()).toString();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.oracle.graalvm.codeonline.build;
+
+import com.oracle.graalvm.codeonline.Compilation;
+import com.oracle.graalvm.codeonline.CompilationCache;
+import com.oracle.graalvm.codeonline.Snippets;
+import com.oracle.graalvm.codeonline.files.JavaFileManagerImpl;
+import com.oracle.graalvm.codeonline.js.PlatformServices;
+import com.oracle.graalvm.codeonline.json.CompilationResultModel;
+import com.oracle.graalvm.codeonline.nbjava.CompilationInfo;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles the snippets of web pages and Java sources in batch, e.g. to check the pages before they are published.
+ * <p>
+ * Arguments: [{@code --threads} count] [{@code --cache} directory] [{@code --verbose}] directory with the output of {@link PrepareClassPath},
+ * directories of the pages. The snippets of {@code .html} files are found by {@link Snippets#inHtml},
+ * each {@code .java} file is one snippet. The snippets are compiled in parallel by a {@link ForkJoinPool};
+ * each of its threads keeps its own {@link Compilation.State}, the archives of the class path are read
+ * once and shared by all of them. Identical snippets are compiled once. With {@code --cache},
+ * the results are also kept in the directory by a {@link DirectoryStore} for the next runs.
+ * <p>
+ * The results are printed to the standard output as a JSON object: the {@code CompilationResult}
+ * of each snippet with its file, index and line, and the throughput in snippets per second per core
+ * used by the threads.
+ * The log of the compiler is discarded unless {@code --verbose} is given. The exit status is 1
+ * if a snippet does not compile.
+ */
+public final class ValidateSnippets {
+    private ValidateSnippets() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean verbose = false;
+        CompilationCache.Store store = null;
+        int firstArg = 0;
+        for(; firstArg < args.length && args[firstArg].startsWith("--"); firstArg++) {
+            if(args[firstArg].equals("--threads"))
+                threads = Integer.parseInt(args[++firstArg]);
+            else if(args[firstArg].equals("--cache"))
+                store = new DirectoryStore(new File(args[++firstArg]));
+            else if(args[firstArg].equals("--verbose"))
+                verbose = true;
+            else
+                throw new IllegalArgumentException("Unknown option " + args[firstArg]);
+        }
+        PlatformServices services = new DirectoryServices(new File(args[firstArg]));
+        List<Source> sources = new ArrayList<>();
+        for(int i = firstArg + 1; i < args.length; i++)
+            findSources(new File(args[i]).toPath(), sources);
+
+        PrintStream out = System.out;
+        if(!verbose)
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            }));
+        String classPathProfile = JavaFileManagerImpl.getClassPathProfile(services);
+        CompilationCache cache = new CompilationCache(Math.max(sources.size(), 1), store);
+        ThreadLocal<Compilation.State> states = ThreadLocal.withInitial(Compilation.State::new);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        List<String> results;
+        try {
+            results = pool.submit(() -> sources.parallelStream()
+                    .map(source -> compile(cache, classPathProfile, services, states.get(), source.source))
+                    .collect(Collectors.toList())).get();
+        } finally {
+            pool.shutdown();
+            System.setOut(out);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int failed = countFailed(results);
+        int cores = Math.min(threads, Runtime.getRuntime().availableProcessors());
+        double throughput = sources.size() / seconds / cores;
+        out.println(toJson(sources, results, failed, threads, seconds, throughput));
+        System.err.printf("%d snippets, %d failed, %.2f s, %.1f snippets/s per core on %d threads%n", sources.size(), failed, seconds, throughput, threads);
+        System.err.println(cache);
+        if(failed > 0)
+            System.exit(1);
+    }
+
+    /**
+     * Adds the snippets of the {@code .html} and {@code .java} files in the directory and its subdirectories,
+     * ordered by their paths.
+     */
+    static void findSources(Path dir, List<Source> sources) throws IOException {
+        List<Path> files;
+        try(Stream<Path> walk = Files.walk(dir)) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for(Path file : files) {
+            String name = file.getFileName().toString();
+            if(!name.endsWith(".html") && !name.endsWith(".java"))
+                continue;
+            String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            if(name.endsWith(".java")) {
+                sources.add(new Source(file, 0, 1, text.replace("\r\n", "\n").replace('\r', '\n')));
+                continue;
+            }
+            List<Snippets.Snippet> snippets = Snippets.inHtml(text);
+            for(int i = 0; i < snippets.size(); i++) {
+                Snippets.Snippet snippet = snippets.get(i);
+                sources.add(new Source(file, i, lineOf(text, snippet.startTagEnd), snippet.source));
+            }
+        }
+    }
+
+    private static int lineOf(String text, int offset) {
+        int line = 1;
+        for(int i = 0; i < offset; i++) {
+            if(text.charAt(i) == '\n')
+                line++;
+        }
+        return line;
+    }
+
+    /**
+     * @return the {@code CompilationResult} in JSON; if the compiler failed, the result reports why and is not cached
+     */
+    private static String compile(CompilationCache cache, String classPathProfile, PlatformServices services, Compilation.State state, String source) {
+        String[] failure = {null};
+        String result = cache.get(CompilationCache.key(source, CompilationInfo.OPTIONS, classPathProfile), () -> {
+            Compilation c = new Compilation(state);
+            JavaFileManagerImpl files = new JavaFileManagerImpl.Builder(services)
+                    .addSource("Main", source)
+                    .build();
+            c.setFiles(files);
+            boolean success = c.compile();
+            if(c.isFailed()) {
+                failure[0] = CompilationResultModel.createCompilationFailure(c.getFailure()).toString();
+                return null;
+            }
+            return CompilationResultModel.createCompilationResult(success, c.getDiagnostics()).toString();
+        });
+        return result != null ? result : failure[0];
+    }
+
+    static int countFailed(List<String> results) {
+        int failed = 0;
+        for(String result : results) {
+            if(!CompilationResultModel.parseCompilationResult(result).isSuccess())
+                failed++;
+        }
+        return failed;
+    }
+
+    /**
+     * @param results the {@code CompilationResult} of each source in JSON
+     * @param throughput the snippets compiled per second by each core used
+     */
+    static String toJson(List<Source> sources, List<String> results, int failed, int threads, double seconds, double throughput) {
+        StringBuilder json = new StringBuilder("{\"snippets\":[");
+        for(int i = 0; i < sources.size(); i++) {
+            Source source = sources.get(i);
+            if(i > 0)
+                json.append(',');
+            json.append("{\"file\":").append(quote(source.file.toString()))
+                    .append(",\"index\":").append(source.index)
+                    .append(",\"line\":").append(source.line)
+                    .append(",\"result\":").append(results.get(i))
+                    .append('}');
+        }
+        json.append("],\"count\":").append(sources.size())
+                .append(",\"failed\":").append(failed)
+                .append(",\"threads\":").append(threads)
+                .append(",\"seconds\":").append(seconds)
+                .append(",\"snippetsPerSecondPerCore\":").append(throughput)
+                .append('}');
+        return json.toString();
+    }
+
+    private static String quote(String s) {
+        StringBuilder result = new StringBuilder(s.length() + 2).append('"');
+        for(int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if(c == '"' || c == '\\')
+                result.append('\\').append(c);
+            else if(c < ' ')
+                result.append(String.format("\\u%04x", (int) c));
+            else
+                result.append(c);
+        }
+        return result.append('"').toString();
+    }
+
+    static final class Source {
+        final Path file;
+        /** The index of the snippet in the file. */
+        final int index;
+        /** The line of the start tag of the snippet. */
+        final int line;
+        final String source;
+
+        Source(Path file, int index, int line, String source) {
+            this.file = file;
+            this.index = index;
+            this.line = line;
+            this.source = source;
+        }
+    }
+}
@@ -23,19 +23,32 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.util.function.Supplier;
 
 /**
  * Used by {@link JavaFileManagerImpl} to represent a read-write binary file.
  */
 final class BinaryFileContents extends FileContents {
     private byte[] contents;
+    private Supplier<byte[]> source;
 
     BinaryFileContents(byte[] contents) {
         this.contents = contents;
     }
 
+    /**
+     * @param source provides the contents when they are first read, e.g. by decoding an archive entry
+     */
+    BinaryFileContents(Supplier<byte[]> source) {
+        this.source = source;
+    }
+
     @Override
     public InputStream openInputStream() {
+        if(source != null) {
+            contents = source.get();
+            source = null;
+        }
         return new ByteArrayInputStream(contents);
     }
 
@@ -45,6 +58,7 @@ final class BinaryFileContents extends FileContents {
             @Override
             public void flush() throws IOException {
                 contents = toByteArray();
+                source = null;
                 touch();
             }
 
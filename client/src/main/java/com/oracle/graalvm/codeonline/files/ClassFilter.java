@@ -0,0 +1,130 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.oracle.graalvm.codeonline.files;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import javax.tools.JavaFileManager.Location;
+
+/**
+ * A Bloom filter of the classes in the package archives, written by the build next to {@code available.txt}.
+ * <p>
+ * It tells that a class is not on the class path without reading the archive of its package.
+ * Classes are identified by their location and binary name, e.g. {@code PLATFORM_CLASS_PATH}
+ * and {@code java.util.Map$Entry}; they are hashed without building a key. The filter is
+ * immutable and can be probed by any thread.
+ * <p>
+ * Format: the base 2 logarithm of the number of bits and the number of hash functions as 4-byte
+ * integers, then the bits as 8-byte big-endian words.
+ */
+public final class ClassFilter {
+    private static final int BITS_PER_CLASS = 10;
+
+    private final long[] bits;
+    private final int hashCount;
+
+    private ClassFilter(long[] bits, int hashCount) {
+        this.bits = bits;
+        this.hashCount = hashCount;
+    }
+
+    public static ClassFilter read(InputStream in) throws IOException {
+        try(DataInputStream data = new DataInputStream(in)) {
+            int log = data.readInt();
+            int hashCount = data.readInt();
+            if(log < 6 || log > 30 || hashCount < 1)
+                throw new IOException("Corrupt class filter");
+            long[] bits = new long[1 << (log - 6)];
+            for(int i = 0; i < bits.length; i++)
+                bits[i] = data.readLong();
+            return new ClassFilter(bits, hashCount);
+        }
+    }
+
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(Integer.numberOfTrailingZeros(bits.length) + 6);
+        data.writeInt(hashCount);
+        for(long word : bits)
+            data.writeLong(word);
+        data.flush();
+    }
+
+    /**
+     * Whether the class may be in the archives; {@code false} means that it is not.
+     */
+    public boolean mightContain(Location location, String className) {
+        long h = hash(location.getName(), className);
+        int h1 = (int) h, h2 = (int) (h >>> 32) | 1;
+        int mask = bits.length * 64 - 1;
+        for(int i = 0; i < hashCount; i++) {
+            int bit = (h1 + i * h2) & mask;
+            if((bits[bit >>> 6] & 1L << bit) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * FNV-1a over the characters of the location, a separator and the class name, finished by the mixer of SplitMix64.
+     */
+    private static long hash(String location, String className) {
+        long h = 0xcbf29ce484222325L;
+        for(int i = 0; i < location.length(); i++)
+            h = (h ^ location.charAt(i)) * 0x100000001b3L;
+        h = (h ^ '/') * 0x100000001b3L;
+        for(int i = 0; i < className.length(); i++)
+            h = (h ^ className.charAt(i)) * 0x100000001b3L;
+        h = (h ^ h >>> 30) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ h >>> 27) * 0x94d049bb133111ebL;
+        return h ^ h >>> 31;
+    }
+
+    public static final class Builder {
+        private final ArrayList<Long> hashes = new ArrayList<>();
+
+        public Builder add(Location location, String className) {
+            hashes.add(hash(location.getName(), className));
+            return this;
+        }
+
+        /**
+         * Creates a filter with about 1% false positives.
+         */
+        public ClassFilter build() {
+            int log = 6;
+            while(log < 30 && 1L << log < (long) hashes.size() * BITS_PER_CLASS)
+                log++;
+            int size = 1 << log;
+            int hashCount = Math.max(1, (int) Math.round((double) size / Math.max(hashes.size(), 1) * Math.log(2)));
+            ClassFilter filter = new ClassFilter(new long[size >>> 6], Math.min(hashCount, 16));
+            for(long h : hashes) {
+                int h1 = (int) h, h2 = (int) (h >>> 32) | 1;
+                for(int i = 0; i < filter.hashCount; i++) {
+                    int bit = (h1 + i * h2) & (size - 1);
+                    filter.bits[bit >>> 6] |= 1L << bit;
+                }
+            }
+            return filter;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.files;
+
+import com.oracle.graalvm.codeonline.js.PlatformServices;
+import com.oracle.graalvm.codeonline.ntar.NtarReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * The package archives listed in {@code available.txt}, one per line.
+ * <p>
+ * An archive is either a separate external resource, named by the first field of the line, or a part
+ * of a bundle. A bundled archive is followed on its line by the name of the bundle, its offset in the bundle
+ * and its length, separated by spaces. The last field is the digest of the archive, if any; it only
+ * contributes to the {@link #getFingerprint fingerprint}. Bundled archives are read with range requests; archives
+ * read together are read at once if they lie close to each other in the bundle.
+ * <p>
+ * The entries of the archives that have been read are kept for the lifetime of the worker,
+ * so each archive is downloaded and each class decoded at most once, although every request
+ * uses a new file manager. Partial responses are rarely cached by browsers anyway.
+ */
+final class ClassPathIndex {
+    /** Bundled archives at most this many bytes apart are read with one request. */
+    private static final int MAX_GAP = 16 * 1024;
+
+    private final HashMap<String, Archive> archives = new HashMap<>();
+    private final HashMap<String, List<NtarReader.Entry>> loaded = new HashMap<>();
+    /** FNV-1a hash of the lines of the index. */
+    private long fingerprint = 0xcbf29ce484222325L;
+    /**
+     * The names of the archives in an open addressing table, so that they can be looked up
+     * without building the names; the length is a power of two, more than twice the number of names.
+     */
+    private String[] table;
+
+    private ClassPathIndex() {
+    }
+
+    static ClassPathIndex read(InputStream in) {
+        ClassPathIndex index = new ClassPathIndex();
+        try(Scanner s = new Scanner(in)) {
+            while(s.hasNextLine()) {
+                String line = s.nextLine();
+                for(int i = 0; i < line.length(); i++)
+                    index.fingerprint = (index.fingerprint ^ line.charAt(i)) * 0x100000001b3L;
+                index.fingerprint = (index.fingerprint ^ '\n') * 0x100000001b3L;
+                String[] fields = line.split(" ");
+                if(fields[0].isEmpty())
+                    continue;
+                Archive archive = fields.length < 4 ? new Archive(fields[0], null, 0, 0)
+                        : new Archive(fields[0], fields[1], Long.parseLong(fields[2]), Integer.parseInt(fields[3]));
+                index.archives.put(archive.name, archive);
+            }
+        }
+        int capacity = Integer.highestOneBit(Math.max(index.archives.size(), 1) * 4);
+        index.table = new String[capacity];
+        for(String name : index.archives.keySet()) {
+            int slot = mix(name.hashCode()) & (capacity - 1);
+            while(index.table[slot] != null)
+                slot = (slot + 1) & (capacity - 1);
+            index.table[slot] = name;
+        }
+        return index;
+    }
+
+    boolean contains(String name) {
+        return archives.containsKey(name);
+    }
+
+    /**
+     * Whether the index contains the archive named by the prefix, the first {@code infixLength} characters
+     * of the infix and the suffix, answered without allocation. The names of the archives are not modified
+     * after the index is read, so they can be probed by any thread.
+     */
+    boolean contains(String prefix, String infix, int infixLength, String suffix) {
+        int length = prefix.length() + infixLength + suffix.length();
+        // the same hash as String.hashCode of the whole name
+        int h = 0;
+        for(int i = 0; i < prefix.length(); i++)
+            h = 31 * h + prefix.charAt(i);
+        for(int i = 0; i < infixLength; i++)
+            h = 31 * h + infix.charAt(i);
+        for(int i = 0; i < suffix.length(); i++)
+            h = 31 * h + suffix.charAt(i);
+        int mask = table.length - 1;
+        for(int slot = mix(h) & mask; table[slot] != null; slot = (slot + 1) & mask) {
+            String name = table[slot];
+            if(name.length() == length && name.hashCode() == h && name.startsWith(prefix)
+                    && name.regionMatches(prefix.length(), infix, 0, infixLength) && name.endsWith(suffix))
+                return true;
+        }
+        return false;
+    }
+
+    private static int mix(int h) {
+        return h ^ h >>> 16;
+    }
+
+    /**
+     * Identifies the class path, i.e. the archives and their locations.
+     * A class path with the same fingerprint compiles sources to the same results.
+     */
+    String getFingerprint() {
+        return Long.toHexString(fingerprint);
+    }
+
+    /**
+     * Returns the entries of an archive listed in the index, reading the archive unless it has been read already.
+     */
+    List<NtarReader.Entry> read(PlatformServices platformServices, String name) throws IOException {
+        synchronized(this) {
+            List<NtarReader.Entry> entries = loaded.get(name);
+            if(entries != null)
+                return entries;
+        }
+        fetch(platformServices, Collections.singleton(name));
+        synchronized(this) {
+            return loaded.get(name);
+        }
+    }
+
+    /**
+     * Reads the archives that have not been read yet, coalescing close ranges of bundled ones.
+     * Archives that are not listed are ignored.
+     */
+    void fetch(PlatformServices platformServices, Collection<String> names) throws IOException {
+        ArrayList<Archive> missing = new ArrayList<>();
+        synchronized(this) {
+            for(String name : names) {
+                Archive archive = archives.get(name);
+                if(archive != null && !loaded.containsKey(name))
+                    missing.add(archive);
+            }
+        }
+        for(Archive archive : missing) {
+            if(archive.bundle == null)
+                store(archive.name, platformServices.openExternalResource(archive.name));
+        }
+        missing.removeIf(archive -> archive.bundle == null);
+        missing.sort(Comparator.comparing((Archive a) -> a.bundle).thenComparingLong(a -> a.offset));
+        for(int first = 0; first < missing.size();) {
+            Archive start = missing.get(first);
+            long end = start.offset + start.length;
+            int last = first + 1;
+            while(last < missing.size()) {
+                Archive next = missing.get(last);
+                if(!next.bundle.equals(start.bundle) || next.offset - end > MAX_GAP)
+                    break;
+                end = Math.max(end, next.offset + next.length);
+                last++;
+            }
+            byte[] data = platformServices.readExternalResource(start.bundle, start.offset, (int) (end - start.offset));
+            for(int i = first; i < last; i++) {
+                Archive archive = missing.get(i);
+                store(archive.name, new ByteArrayInputStream(data, (int) (archive.offset - start.offset), archive.length));
+            }
+            first = last;
+        }
+    }
+
+    private void store(String name, InputStream in) {
+        ArrayList<NtarReader.Entry> entries = new ArrayList<>();
+        try(NtarReader zip = new NtarReader(in)) {
+            for(NtarReader.Entry entry : zip)
+                entries.add(entry);
+        }
+        synchronized(this) {
+            loaded.putIfAbsent(name, Collections.unmodifiableList(entries));
+        }
+    }
+
+    private static final class Archive {
+        private final String name;
+        /** The bundle containing the archive, {@code null} if the archive is a separate resource. */
+        private final String bundle;
+        private final long offset;
+        private final int length;
+
+        Archive(String name, String bundle, long offset, int length) {
+            this.name = name;
+            this.bundle = bundle;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
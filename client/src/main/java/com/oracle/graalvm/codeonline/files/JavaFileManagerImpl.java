@@ -24,11 +24,13 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.Set;
 import java.util.stream.Collectors;
 import javax.lang.model.element.Modifier;
@@ -43,12 +45,26 @@ import javax.tools.StandardLocation;
  * Class files are loaded as external ZIP files containing individual packages.
  * Text and binary files are not interchangeable.
  * The URIs used to identify the files do <em>not</em> resemble those used by the default file manager.
+ * <p>
+ * The compiler looks for many packages and classes that do not exist, e.g. a package for each
+ * star import and each simple name it resolves. Such lookups are answered without allocation
+ * by the {@link ClassPathIndex} of the packages, the {@link ClassFilter} of the classes
+ * and the names of the sources.
  */
 public final class JavaFileManagerImpl implements JavaFileManager {
-    private static final HashSet<String> availablePackageZips = new HashSet<>();
+    private static final String PLATFORM_CLASS_PATH_PREFIX = StandardLocation.PLATFORM_CLASS_PATH.getName() + "-";
+    private static final String CLASS_PATH_PREFIX = StandardLocation.CLASS_PATH.getName() + "-";
+    private static final String ARCHIVE_SUFFIX = ".zip";
+
+    private static volatile ClassPathIndex availablePackageZips;
+    private static volatile ClassFilter classFilter;
+    private static volatile boolean classFilterRead;
 
     private final HashMap<String, FileObjectImpl> filesMap;
-    private final HashSet<String> loadedPackageZips = new HashSet<>();
+    private final HashSet<String> loadedPlatformPackages = new HashSet<>();
+    private final HashSet<String> loadedPackages = new HashSet<>();
+    private final HashSet<String> sourceNames = new HashSet<>();
+    private final HashSet<String> sourcePackages = new HashSet<>();
     private final PlatformServices platformServices;
 
     private JavaFileManagerImpl(HashMap<String, FileObjectImpl> filesMap, PlatformServices platformServices) {
@@ -63,6 +79,8 @@ public final class JavaFileManagerImpl implements JavaFileManager {
 
     @Override
     public Iterable<JavaFileObject> list(Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse) throws IOException {
+        if(!recurse && !mayContainPackage(location, packageName))
+            return Collections.emptyList();
         loadPackage(location, packageName);
         String packageNameDot = packageName.isEmpty() ? "" : packageName + ".";
         String[] prefixes = kinds.stream().map(kind -> getJavaFileObjectName(location, packageNameDot, kind)).toArray(String[]::new);
@@ -104,9 +122,20 @@ public final class JavaFileManagerImpl implements JavaFileManager {
 
     @Override
     public JavaFileObject getJavaFileForInput(Location location, String className, JavaFileObject.Kind kind) throws IOException {
-        int lastDot = className.lastIndexOf('.');
-        String pkg = lastDot == -1 ? "" : className.substring(0, lastDot);
-        loadPackage(location, pkg);
+        if(location == StandardLocation.CLASS_PATH || location == StandardLocation.PLATFORM_CLASS_PATH) {
+            // the archives contain only class files
+            if(kind != JavaFileObject.Kind.CLASS)
+                return null;
+            int packageLength = Math.max(className.lastIndexOf('.'), 0);
+            if(!getAvailablePackageZips(platformServices).contains(getArchivePrefix(location), className, packageLength, ARCHIVE_SUFFIX))
+                return null;
+            ClassFilter filter = getClassFilter(platformServices);
+            if(filter != null && !filter.mightContain(location, className))
+                return null;
+            loadPackage(location, className.substring(0, packageLength));
+        } else if(location == StandardLocation.SOURCE_PATH && !sourceNames.contains(className)) {
+            return null;
+        }
         String name = getJavaFileObjectName(location, className, kind);
         return (JavaFileObject) filesMap.get(name);
     }
@@ -144,24 +173,42 @@ public final class JavaFileManagerImpl implements JavaFileManager {
         return -1;
     }
 
+    /**
+     * Whether the location may contain files of the package, not counting its subpackages.
+     */
+    private boolean mayContainPackage(Location location, String packageName) throws IOException {
+        if(location == StandardLocation.CLASS_PATH || location == StandardLocation.PLATFORM_CLASS_PATH)
+            return isPackageAvailable(location, packageName);
+        if(location == StandardLocation.SOURCE_PATH)
+            return sourcePackages.contains(packageName);
+        return true;
+    }
+
     private void loadPackage(Location location, String packageName) throws IOException {
         if(location != StandardLocation.CLASS_PATH && location != StandardLocation.PLATFORM_CLASS_PATH)
             return;
-        String fileName = location + "-" + packageName + ".zip";
-        if(!isPackageAvailable(fileName))
+        if(!isPackageAvailable(location, packageName))
             return;
-        if(!loadedPackageZips.add(fileName))
+        HashSet<String> loaded = location == StandardLocation.PLATFORM_CLASS_PATH ? loadedPlatformPackages : loadedPackages;
+        if(!loaded.add(packageName))
             return;
+        String fileName = getPackageZipName(location, packageName);
         String qualification = packageName.isEmpty() ? "" : packageName + '.';
-        try(NtarReader zip = new NtarReader(platformServices.openExternalResource(fileName))) {
-            for(NtarReader.Entry entry : zip) {
-                JavaFileObject.Kind kind = JavaFileObject.Kind.CLASS;
-                String uri = getJavaFileObjectName(location, qualification + entry.name, kind);
-                filesMap.put(uri, new JavaFileObjectImpl(this, uri, new BinaryFileContents(entry.content), kind));
-            }
+        for(NtarReader.Entry entry : availablePackageZips.read(platformServices, fileName)) {
+            JavaFileObject.Kind kind = JavaFileObject.Kind.CLASS;
+            String uri = getJavaFileObjectName(location, qualification + entry.name, kind);
+            filesMap.put(uri, new JavaFileObjectImpl(this, uri, new BinaryFileContents(entry::getContent), kind));
         }
     }
 
+    private static String getPackageZipName(Location location, String packageName) {
+        return getArchivePrefix(location) + packageName + ARCHIVE_SUFFIX;
+    }
+
+    private static String getArchivePrefix(Location location) {
+        return location == StandardLocation.PLATFORM_CLASS_PATH ? PLATFORM_CLASS_PATH_PREFIX : CLASS_PATH_PREFIX;
+    }
+
     private static String getJavaFileObjectName(Location location, String className, JavaFileObject.Kind kind) {
         return "jfo:" + location + "/" + kind + "." + className;
     }
@@ -178,14 +225,77 @@ public final class JavaFileManagerImpl implements JavaFileManager {
         }
     }
 
-    private boolean isPackageAvailable(String requestedZip) throws IOException {
-        if(availablePackageZips.isEmpty()) {
-            try(Scanner s = new Scanner(platformServices.openExternalResource("available.txt"))) {
-                while(s.hasNextLine())
-                    availablePackageZips.add(s.nextLine());
+    private boolean isPackageAvailable(Location location, String packageName) throws IOException {
+        return getAvailablePackageZips(platformServices).contains(getArchivePrefix(location), packageName, packageName.length(), ARCHIVE_SUFFIX);
+    }
+
+    private static ClassPathIndex getAvailablePackageZips(PlatformServices platformServices) throws IOException {
+        ClassPathIndex index = availablePackageZips;
+        if(index == null) {
+            synchronized(JavaFileManagerImpl.class) {
+                index = availablePackageZips;
+                if(index == null)
+                    availablePackageZips = index = ClassPathIndex.read(platformServices.openExternalResource("available.txt"));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return the filter of the classes, or {@code null} if it is not available, e.g. from an older build
+     */
+    private static ClassFilter getClassFilter(PlatformServices platformServices) {
+        if(!classFilterRead) {
+            synchronized(JavaFileManagerImpl.class) {
+                if(!classFilterRead) {
+                    try {
+                        classFilter = ClassFilter.read(platformServices.openExternalResource("classes.filter"));
+                    } catch(IOException ex) {
+                        System.out.println("No class filter: " + ex);
+                    }
+                    classFilterRead = true;
+                }
+            }
+        }
+        return classFilter;
+    }
+
+    /**
+     * Identifies the class path the file managers read, see {@link ClassPathIndex#getFingerprint}.
+     */
+    public static String getClassPathProfile(PlatformServices platformServices) throws IOException {
+        return getAvailablePackageZips(platformServices).getFingerprint();
+    }
+
+    /**
+     * Reads the archives of the packages the sources probably use before they are compiled:
+     * {@code java.lang} and the packages of their imports and qualified names.
+     * Bundled archives are read with as few requests as possible. The classes of {@code java.lang},
+     * which every compilation reads, are decoded right away.
+     */
+    public static void prefetch(PlatformServices platformServices, String sources) throws IOException {
+        ClassPathIndex index = getAvailablePackageZips(platformServices);
+        Location[] locations = {StandardLocation.PLATFORM_CLASS_PATH, StandardLocation.CLASS_PATH};
+        Set<String> packages = PackagePredictor.predict(sources, packageName -> {
+            for(Location location : locations) {
+                if(index.contains(getArchivePrefix(location), packageName, packageName.length(), ARCHIVE_SUFFIX))
+                    return true;
             }
+            return false;
+        });
+        List<String> fileNames = new ArrayList<>();
+        fileNames.add(getPackageZipName(StandardLocation.PLATFORM_CLASS_PATH, "java.lang"));
+        for(String packageName : packages) {
+            for(Location location : locations)
+                fileNames.add(getPackageZipName(location, packageName));
+        }
+        System.out.println("Prefetching " + packages);
+        index.fetch(platformServices, fileNames);
+        getClassFilter(platformServices);
+        if(index.contains(fileNames.get(0))) {
+            for(NtarReader.Entry entry : index.read(platformServices, fileNames.get(0)))
+                entry.getContent();
         }
-        return availablePackageZips.contains(requestedZip);
     }
 
     public static final class Builder {
@@ -199,6 +309,9 @@ public final class JavaFileManagerImpl implements JavaFileManager {
             JavaFileObject.Kind kind = JavaFileObject.Kind.SOURCE;
             String uri = getJavaFileObjectName(StandardLocation.SOURCE_PATH, name, kind);
             result.filesMap.put(uri, new JavaFileObjectImpl(result, uri, new StringFileContents(contents), kind));
+            result.sourceNames.add(name);
+            int lastDot = name.lastIndexOf('.');
+            result.sourcePackages.add(lastDot == -1 ? "" : name.substring(0, lastDot));
             return this;
         }
 
@@ -236,7 +349,7 @@ public final class JavaFileManagerImpl implements JavaFileManager {
         @Override
         public OutputStream openOutputStream() {
             if(contents == null)
-                contents = new BinaryFileContents(null);
+                contents = new BinaryFileContents((byte[]) null);
             return contents.openOutputStream();
         }
 
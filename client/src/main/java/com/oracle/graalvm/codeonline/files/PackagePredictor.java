@@ -0,0 +1,119 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.files;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Predicts the packages a source uses before it is compiled, from its imports and qualified names.
+ * <p>
+ * Every chain of identifiers separated by dots outside comments and literals is a candidate,
+ * e.g. {@code java.util.Map.Entry} from an import or {@code java.util.stream.Collectors.toList()}
+ * in the code. The longest of the chain and its prefixes that is a known package is predicted. Simple names, which
+ * only a class index could resolve, are ignored.
+ */
+final class PackagePredictor {
+    private PackagePredictor() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @param isPackage tells whether a name is a known package
+     * @return the predicted packages in the order of their first use
+     */
+    static Set<String> predict(String source, Predicate<String> isPackage) {
+        LinkedHashSet<String> packages = new LinkedHashSet<>();
+        int length = source.length();
+        int i = 0;
+        while(i < length) {
+            char c = source.charAt(i);
+            if(c == '/' && i + 1 < length && source.charAt(i + 1) == '/') {
+                i = source.indexOf('\n', i);
+                if(i < 0)
+                    break;
+            } else if(c == '/' && i + 1 < length && source.charAt(i + 1) == '*') {
+                i = source.indexOf("*/", i + 2);
+                if(i < 0)
+                    break;
+                i += 2;
+            } else if(c == '"' || c == '\'') {
+                i = skipLiteral(source, i);
+            } else if(Character.isJavaIdentifierStart(c)) {
+                int end = identifierEnd(source, i);
+                StringBuilder name = new StringBuilder().append(source, i, end);
+                boolean qualified = false;
+                for(;;) {
+                    int dot = skipWhitespace(source, end);
+                    if(dot >= length || source.charAt(dot) != '.')
+                        break;
+                    int next = skipWhitespace(source, dot + 1);
+                    if(next >= length || !Character.isJavaIdentifierStart(source.charAt(next)))
+                        break;
+                    end = identifierEnd(source, next);
+                    name.append('.').append(source, next, end);
+                    qualified = true;
+                }
+                if(qualified)
+                    addPackage(packages, name.toString(), isPackage);
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        return packages;
+    }
+
+    private static void addPackage(Set<String> packages, String name, Predicate<String> isPackage) {
+        for(String candidate = name;;) {
+            if(isPackage.test(candidate)) {
+                packages.add(candidate);
+                return;
+            }
+            int dot = candidate.lastIndexOf('.');
+            if(dot < 0)
+                return;
+            candidate = candidate.substring(0, dot);
+        }
+    }
+
+    private static int skipLiteral(String source, int i) {
+        char quote = source.charAt(i++);
+        while(i < source.length()) {
+            char c = source.charAt(i++);
+            if(c == '\\')
+                i++;
+            else if(c == quote || c == '\n')
+                break;
+        }
+        return i;
+    }
+
+    private static int identifierEnd(String source, int i) {
+        i++;
+        while(i < source.length() && Character.isJavaIdentifierPart(source.charAt(i)))
+            i++;
+        return i;
+    }
+
+    private static int skipWhitespace(String source, int i) {
+        while(i < source.length() && Character.isWhitespace(source.charAt(i)))
+            i++;
+        return i;
+    }
+}
@@ -27,11 +27,30 @@ import net.java.html.json.Property;
 
 @Model(className = "CompilationResult", properties = {
     @Property(name = "success", type = boolean.class),
+    @Property(name = "reused", type = boolean.class),
     @Property(name = "diagnostics", type = Diag.class, array = true)
 })
 public class CompilationResultModel {
     public static CompilationResult createCompilationResult(boolean success, List<Diagnostic> diagnostics) {
-        return new CompilationResult(success, diagnostics.stream().map(DiagModel::createDiag).toArray(Diag[]::new));
+        return createCompilationResult(success, false, diagnostics);
+    }
+
+    /**
+     * @param reused whether the diagnostics of the previous compilation were reused,
+     * because the source changed only in whitespace or comments
+     */
+    public static CompilationResult createCompilationResult(boolean success, boolean reused, List<Diagnostic> diagnostics) {
+        return new CompilationResult(success, reused, diagnostics.stream().map(DiagModel::createDiag).toArray(Diag[]::new));
+    }
+
+    /**
+     * Creates the result of a compilation that failed without diagnostics, e.g. because the compiler crashed.
+     * The reason is reported as an error without a position.
+     */
+    public static CompilationResult createCompilationFailure(Throwable failure) {
+        Diag diag = new Diag(Diagnostic.Kind.ERROR, Diagnostic.NOPOS, Diagnostic.NOPOS, Diagnostic.NOPOS,
+                Diagnostic.NOPOS, Diagnostic.NOPOS, "compiler.failure", String.valueOf(failure));
+        return new CompilationResult(false, false, diag);
     }
 
     public static CompilationResult parseCompilationResult(String json) {
@@ -27,11 +27,14 @@ import net.java.html.json.Property;
 
 @Model(className = "CompletionList", properties = {
     @Property(name = "success", type = boolean.class),
+    @Property(name = "start", type = int.class),
+    @Property(name = "prefix", type = String.class),
+    @Property(name = "moreAvailable", type = boolean.class),
     @Property(name = "items", type = CompletionItem.class, array = true),
 })
 public class CompletionListModel {
-    public static CompletionList createCompletionList(boolean success, List<? extends JavaCompletionItem> completions) {
-        return new CompletionList(success, completions.stream().map(JavaCompletionItem::toCompletionItem).toArray(CompletionItem[]::new));
+    public static CompletionList createCompletionList(boolean success, int start, String prefix, boolean moreAvailable, List<? extends JavaCompletionItem> completions) {
+        return new CompletionList(success, start, prefix, moreAvailable, completions.stream().map(JavaCompletionItem::toCompletionItem).toArray(CompletionItem[]::new));
     }
 
     public static CompletionList parseCompletionList(String json) {
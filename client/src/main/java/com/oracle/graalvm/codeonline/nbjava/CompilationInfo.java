@@ -46,8 +46,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -70,9 +72,12 @@ import com.sun.tools.javac.api.JavacTaskImpl;
 import com.sun.tools.javac.api.JavacTool;
 import com.sun.tools.javac.api.JavacTrees;
 import com.sun.tools.javac.code.Source;
+import com.sun.tools.javac.main.JavaCompiler;
 import com.sun.tools.javac.parser.Scanner;
 import com.sun.tools.javac.parser.ScannerFactory;
 import com.sun.tools.javac.parser.Tokens;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Log;
 
 /**
  *
@@ -81,6 +86,10 @@ import com.sun.tools.javac.parser.Tokens;
 public final class CompilationInfo {
 
     private static final Logger LOGGER = Logger.getLogger(CompilationInfo.class.getName());
+    /**
+     * The options of the compiler; the results of compilations depend on them.
+     */
+    public static final List<String> OPTIONS = Collections.unmodifiableList(Arrays.asList("-source", "1.8", "-target", "1.8"));
     private Phase phase = Phase.MODIFIED;
     private CompilationUnitTree compilationUnit;
 
@@ -88,6 +97,9 @@ public final class CompilationInfo {
     private ElementUtilities elementUtilities;
     private TreeUtilities treeUtilities;
     private TypeUtilities typeUtilities;
+    private TreePositionIndex treePositionIndex;
+    private TokenIndex tokenIndex;
+    private final TokenIndex previousTokenIndex;
 //    private final ClasspathInfo cpInfo;
 //    private final FileObject file;
 //    private final FileObject root;
@@ -101,11 +113,20 @@ public final class CompilationInfo {
 //    private final boolean isDetached;
     Phase parserCrashed = Phase.UP_TO_DATE;      //When javac throws an error, the moveToPhase sets this to the last safe phase
 
-//    private final Map<CacheClearPolicy, Map<Object, Object>> userCache = new EnumMap<CacheClearPolicy, Map<Object, Object>>(CacheClearPolicy.class);
+    private final Map<Object, Object> userCache = new HashMap<>();
 
     public CompilationInfo(JavaFileObject jfo, JavaFileManager jfm) {
+        this(jfo, jfm, null);
+    }
+
+    /**
+     * @param previousTokenIndex tokens of a previous version of the source, updated
+     * incrementally when the tokens are first needed, or {@code null}
+     */
+    public CompilationInfo(JavaFileObject jfo, JavaFileManager jfm, TokenIndex previousTokenIndex) {
         this.jfo = jfo;
         this.jfm = jfm;
+        this.previousTokenIndex = previousTokenIndex;
     }
 //
 //    public Snapshot getSnapshot () {
@@ -151,33 +172,75 @@ public final class CompilationInfo {
         }
     }
 
+    /**
+     * Returns the tokens starting in the given range of the source.
+     * A token crossing the end of the range is lexed as if the source ended there.
+     */
     public List<? extends Pair<String, Integer>> getTokens(int start, int end) {
         if (!hasSource()) {
             throw new IllegalStateException ();
         }
         if (start < end) {
-            try {
-                ArrayList<Pair<String, Integer>> ret = new ArrayList<>();
-                ScannerFactory sf = ScannerFactory.instance(getJavacTask().getContext());
-                Scanner s = sf.newScanner(this.jfo.getCharContent(false).subSequence(start, end), false);
-                while(true) {
-                    s.nextToken();
-                    Tokens.Token t = s.token();
-                    if (t == null || t.kind == Tokens.TokenKind.EOF)
+            TokenIndex tokens = getTokenIndex();
+            if (tokens == null)
+                return null;
+            int from = tokens.firstStartingAtOrAfter(start);
+            if (from > 0 && tokens.getEnd(from - 1) > start)
+                return lex(tokens.getText(), start, end); // starts inside a token
+            int to = from;
+            while (to < tokens.size() && tokens.getStart(to) < end)
+                to++;
+            if (to == from || tokens.getEnd(to - 1) <= end)
+                return tokens.subList(from, to);
+            ArrayList<Pair<String, Integer>> ret = new ArrayList<>(tokens.subList(from, to - 1));
+            ret.addAll(lex(tokens.getText(), tokens.getStart(to - 1), end));
+            return ret;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the {@link TokenIndex} of the source, built on first use.
+     * @return TokenIndex or null if the source cannot be read
+     */
+    public synchronized TokenIndex getTokenIndex() {
+        if (tokenIndex == null) {
+            String text = getText();
+            if (text == null)
+                return null;
+            Context context = getJavacTask().getContext();
+            tokenIndex = previousTokenIndex != null ? previousTokenIndex.update(context, text) : TokenIndex.create(context, text);
+        }
+        return tokenIndex;
+    }
+
+    private List<Pair<String, Integer>> lex(String text, int start, int end) {
+        ArrayList<Pair<String, Integer>> ret = new ArrayList<>();
+        Log log = Log.instance(getJavacTask().getContext());
+        Log.DiagnosticHandler discard = new Log.DiscardDiagnosticHandler(log);
+        JavaFileObject prev = log.useSource(this.jfo);
+        try {
+            ScannerFactory sf = ScannerFactory.instance(getJavacTask().getContext());
+            Scanner s = sf.newScanner(text.subSequence(start, end), false);
+            while(true) {
+                s.nextToken();
+                Tokens.Token t = s.token();
+                if (t == null || t.kind == Tokens.TokenKind.EOF)
+                    break;
+                switch (t.kind) {
+                    case DOT: case COMMA: case SEMI: case LPAREN: case RPAREN:
+                    case LBRACKET: case RBRACKET: case LBRACE: case RBRACE:
+                        ret.add(new Pair<>(t.kind.name, start + t.pos));
                         break;
-                    switch (t.kind) {
-                        case DOT: case COMMA: case SEMI: case LPAREN: case RPAREN:
-                        case LBRACKET: case RBRACKET: case LBRACE: case RBRACE:
-                            ret.add(new Pair(t.kind.name, start + t.pos));
-                            break;
-                        default:
-                            ret.add(new Pair(t.kind.toString(), start + t.pos));
-                    }
+                    default:
+                        ret.add(new Pair<>(t.kind.toString(), start + t.pos));
                 }
-                return ret;
-            } catch (IOException ioe) {}
+            }
+        } finally {
+            log.useSource(prev);
+            log.popDiagnosticHandler(discard);
         }
-        return null;
+        return ret;
     }
 //    /**
 //     * Returns the {@link TokenHierarchy} for the file represented by the {@link JavaSource}.
@@ -310,6 +373,20 @@ public final class CompilationInfo {
         return typeUtilities;
     }
 
+    /**
+     * Returns the {@link TreePositionIndex} of the current compilation unit.
+     * The index is built on first use and dropped whenever the phase changes,
+     * as javac may add trees to the compilation unit while entering and attributing it.
+     * @return TreePositionIndex
+     * @throws java.lang.IllegalStateException  when the phase is less than {@link JavaSource.Phase#PARSED}
+     */
+    public synchronized TreePositionIndex getTreePositionIndex() {
+        if (treePositionIndex == null) {
+            treePositionIndex = new TreePositionIndex(getCompilationUnit(), getTrees().getSourcePositions());
+        }
+        return treePositionIndex;
+    }
+
     /**
      * Returns the {@link SourceVersion} used by the javac represented by this {@link CompilationInfo}.
      * @return SourceVersion
@@ -422,35 +499,35 @@ public final class CompilationInfo {
      */
     public synchronized JavacTaskImpl getJavacTask() {
         if (javacTask == null) {
-            javacTask = (JavacTaskImpl)JavacTool.create().getTask(null, this.jfm, diagnosticListener, Arrays.asList("-source", "1.7", "-target", "1.7"), null, Arrays.asList(this.jfo));
+            javacTask = (JavacTaskImpl)JavacTool.create().getTask(null, this.jfm, diagnosticListener, OPTIONS, null, Arrays.asList(this.jfo));
         }
 	return javacTask;
     }
 
-//    public Object getCachedValue(Object key) {
-//        for (Map<Object, Object> c : userCache.values()) {
-//            Object res = c.get(key);
-//
-//            if (res != null) return res;
-//        }
-//
-//        return null;
-//    }
-//
-//    public void putCachedValue(Object key, Object value, CacheClearPolicy clearPolicy) {
-//        for (Map<Object, Object> c : userCache.values()) {
-//            c.remove(key);
-//        }
-//
-//        Map<Object, Object> c = userCache.get(clearPolicy);
-//
-//        if (c == null) {
-//            userCache.put(clearPolicy, c = new HashMap<Object, Object>());
-//        }
-//
-//        c.put(key, value);
-//    }
-//
+    /**
+     * Returns a value cached by a client of this {@link CompilationInfo}.
+     * Cached values are dropped when the source is reparsed.
+     * @param key the key of the value
+     * @return the value or null
+     */
+    public synchronized Object getCachedValue(Object key) {
+        return userCache.get(key);
+    }
+
+    /**
+     * Caches a value for clients of this {@link CompilationInfo}, e.g. results
+     * computed speculatively before they are requested.
+     * @param key the key of the value
+     * @param value the value, null to remove the key
+     */
+    public synchronized void putCachedValue(Object key, Object value) {
+        if (value == null) {
+            userCache.remove(key);
+        } else {
+            userCache.put(key, value);
+        }
+    }
+
 //    public void taskFinished() {
 //        userCache.remove(CacheClearPolicy.ON_TASK_END);
 //    }
@@ -480,6 +557,10 @@ public final class CompilationInfo {
             this.elementUtilities = null;
             this.treeUtilities = null;
             this.typeUtilities = null;
+            this.userCache.clear();
+        }
+        if (phase != this.phase) {
+            this.treePositionIndex = null;
         }
         this.phase = phase;
     }
@@ -491,6 +572,7 @@ public final class CompilationInfo {
     void setCompilationUnit(final CompilationUnitTree compilationUnit) {
         assert compilationUnit != null;
         this.compilationUnit = compilationUnit;
+        this.treePositionIndex = null;
     }
 
     private boolean hasSource () {
@@ -533,6 +615,9 @@ public final class CompilationInfo {
             }
             if (currentPhase == Phase.ELEMENTS_RESOLVED && phase.compareTo(Phase.RESOLVED)>=0 && phase.compareTo(parserError)<=0) {
                 getJavacTask().analyze();
+                // the mandatory notes of deprecated and unchecked uses are deferred
+                // until the compilation ends, which analyze() never reaches
+                JavaCompiler.instance(getJavacTask().getContext()).reportDeferredDiagnostics();
                 currentPhase = Phase.RESOLVED;
             }
             if ((currentPhase == Phase.RESOLVED || currentPhase == Phase.UP_TO_DATE) && phase.compareTo(Phase.GENERATED)==0 && phase.compareTo(parserError)<=0) {
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.nbjava;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Code completion settings of a single query or worker.
+ * Instances are immutable, so they can be shared between concurrent queries;
+ * use {@link Builder} to create a customized instance.
+ */
+public final class CompletionSettings {
+    private static final CompletionSettings DEFAULT = new Builder().build();
+
+    private final boolean caseSensitive;
+    private final boolean subwords;
+    private final boolean showDeprecatedMembers;
+    private final boolean excludeMethods;
+    private final List<String> includes;
+    private final List<String> excludes;
+
+    private CompletionSettings(Builder builder) {
+        this.caseSensitive = builder.caseSensitive;
+        this.subwords = builder.subwords;
+        this.showDeprecatedMembers = builder.showDeprecatedMembers;
+        this.excludeMethods = builder.excludeMethods;
+        this.includes = Collections.unmodifiableList(new ArrayList<>(builder.includes));
+        this.excludes = Collections.unmodifiableList(new ArrayList<>(builder.excludes));
+    }
+
+    public static CompletionSettings getDefault() {
+        return DEFAULT;
+    }
+
+    public boolean isCaseSensitive() {
+        return caseSensitive;
+    }
+
+    public boolean isSubwordSensitive() {
+        return subwords;
+    }
+
+    public boolean isShowDeprecatedMembers() {
+        return showDeprecatedMembers;
+    }
+
+    /**
+     * @return whether the excluder should operate on methods
+     */
+    public boolean isExcludeMethods() {
+        return excludeMethods;
+    }
+
+    /**
+     * Creates a matcher for the given prefix using these settings.
+     */
+    public NameMatcher createMatcher(String prefix) {
+        return new NameMatcher(prefix, caseSensitive, subwords);
+    }
+
+    /**
+     * @param fqn Fully Qualified Name (including method names). Packages names are expected to
+     * end in a trailing "." except the default package.
+     * @return whether the name is excluded from completion
+     */
+    public boolean isExcluded(final CharSequence fqn) {
+        if (fqn == null || fqn.length() == 0) {
+            return true;
+        }
+        if (includes.isEmpty() && excludes.isEmpty()) {
+            return false;
+        }
+        String s = fqn.toString();
+        for (String entry : includes) {
+            if (entry.length() > s.length()) {
+                if (entry.startsWith(s)) {
+                    return false;
+                }
+            } else if (s.startsWith(entry)) {
+                return false;
+            }
+        }
+        for (String entry : excludes) {
+            if (entry.length() <= s.length() && s.startsWith(entry)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static final class Builder {
+        private boolean caseSensitive = true;
+        private boolean subwords = false;
+        private boolean showDeprecatedMembers = true;
+        private boolean excludeMethods = false;
+        private final List<String> includes = new ArrayList<>();
+        private final List<String> excludes = new ArrayList<>();
+
+        public Builder() {
+        }
+
+        public Builder(CompletionSettings settings) {
+            this.caseSensitive = settings.caseSensitive;
+            this.subwords = settings.subwords;
+            this.showDeprecatedMembers = settings.showDeprecatedMembers;
+            this.excludeMethods = settings.excludeMethods;
+            this.includes.addAll(settings.includes);
+            this.excludes.addAll(settings.excludes);
+        }
+
+        public Builder setCaseSensitive(boolean caseSensitive) {
+            this.caseSensitive = caseSensitive;
+            return this;
+        }
+
+        public Builder setSubwords(boolean subwords) {
+            this.subwords = subwords;
+            return this;
+        }
+
+        public Builder setShowDeprecatedMembers(boolean showDeprecatedMembers) {
+            this.showDeprecatedMembers = showDeprecatedMembers;
+            return this;
+        }
+
+        public Builder setExcludeMethods(boolean excludeMethods) {
+            this.excludeMethods = excludeMethods;
+            return this;
+        }
+
+        /**
+         * @param list comma separated name prefixes that are always offered
+         */
+        public Builder setIncludes(String list) {
+            split(includes, list);
+            return this;
+        }
+
+        /**
+         * @param list comma separated name prefixes that are never offered
+         */
+        public Builder setExcludes(String list) {
+            split(excludes, list);
+            return this;
+        }
+
+        private static void split(List<String> target, String list) {
+            target.clear();
+            if (list == null)
+                return;
+            for (String entry : list.split(",")) { //NOI18N
+                if (!entry.isEmpty())
+                    target.add(entry);
+            }
+        }
+
+        public CompletionSettings build() {
+            return new CompletionSettings(this);
+        }
+    }
+}
@@ -77,7 +77,6 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
@@ -266,10 +265,10 @@ public final class ElementUtilities {
      * @see Elements#getAllMembers
      */
     public Iterable<? extends Element> getMembers(TypeMirror type, ElementAcceptor acceptor) {
-        ArrayList<Element> members = new ArrayList<Element>();
+        Elements elements = JavacElements.instance(ctx);
+        Types types = JavacTypes.instance(ctx);
+        MemberList<Element> members = new MemberList<Element>(elements, types);
         if (type != null) {
-            Elements elements = JavacElements.instance(ctx);
-            Types types = JavacTypes.instance(ctx);
             switch (type.getKind()) {
                 case DECLARED:
                 case UNION:
@@ -277,7 +276,7 @@ public final class ElementUtilities {
                     if (te == null) break;
                     for (Element member : elements.getAllMembers(te)) {
                         if (acceptor == null || acceptor.accept(member, type)) {
-                            if (!isHidden(member, members, elements, types))
+                            if (!members.isHidden(member))
                                 members.add(member);
                         }
                     }
@@ -325,21 +324,21 @@ public final class ElementUtilities {
                     break;
             }
         }
-        return members;
+        return members.toList();
     }
 
     /**Return members declared in the given scope.
      */
     public Iterable<? extends Element> getLocalMembersAndVars(Scope scope, ElementAcceptor acceptor) {
-        ArrayList<Element> members = new ArrayList<Element>();
         Elements elements = JavacElements.instance(ctx);
         Types types = JavacTypes.instance(ctx);
+        MemberList<Element> members = new MemberList<Element>(elements, types);
         TypeElement cls;
         while(scope != null) {
             if ((cls = scope.getEnclosingClass()) != null) {
                 for (Element local : scope.getLocalElements()) {
                     if (acceptor == null || acceptor.accept(local, null)) {
-                        if (!isHidden(local, members, elements, types)) {
+                        if (!members.isHidden(local)) {
                             members.add(local);
                         }
                     }
@@ -347,7 +346,7 @@ public final class ElementUtilities {
                 TypeMirror type = cls.asType();
                 for (Element member : elements.getAllMembers(cls)) {
                     if (acceptor == null || acceptor.accept(member, type)) {
-                        if (!isHidden(member, members, elements, types)) {
+                        if (!members.isHidden(member)) {
                             members.add(member);
                         }
                     }
@@ -356,7 +355,7 @@ public final class ElementUtilities {
                 for (Element local : scope.getLocalElements()) {
                     if (!local.getKind().isClass() && !local.getKind().isInterface() &&
                         (acceptor == null || local.getEnclosingElement() != null && acceptor.accept(local, local.getEnclosingElement().asType()))) {
-                        if (!isHidden(local, members, elements, types)) {
+                        if (!members.isHidden(local)) {
                             members.add(local);
                         }
                     }
@@ -364,26 +363,26 @@ public final class ElementUtilities {
             }
             scope = scope.getEnclosingScope();
         }
-        return members;
+        return members.toList();
     }
 
     /**Return variables declared in the given scope.
      */
     public Iterable<? extends Element> getLocalVars(Scope scope, ElementAcceptor acceptor) {
-        ArrayList<Element> members = new ArrayList<Element>();
         Elements elements = JavacElements.instance(ctx);
         Types types = JavacTypes.instance(ctx);
+        MemberList<Element> members = new MemberList<Element>(elements, types);
         while(scope != null && scope.getEnclosingClass() != null) {
             for (Element local : scope.getLocalElements()) {
                 if (acceptor == null || acceptor.accept(local, null)) {
-                    if (!isHidden(local, members, elements, types)) {
+                    if (!members.isHidden(local)) {
                         members.add(local);
                     }
                 }
             }
             scope = scope.getEnclosingScope();
         }
-        return members;
+        return members.toList();
     }
 
     /**Return {@link TypeElement}s:
@@ -394,17 +393,17 @@ public final class ElementUtilities {
      * </ul>
      */
     public Iterable<? extends TypeElement> getGlobalTypes(ElementAcceptor acceptor) {
-        ArrayList<TypeElement> members = new ArrayList<TypeElement>();
         Trees trees = JavacTrees.instance(ctx);
         Elements elements = JavacElements.instance(ctx);
         Types types = JavacTypes.instance(ctx);
+        MemberList<TypeElement> members = new MemberList<TypeElement>(elements, types);
         for (CompilationUnitTree unit : Collections.singletonList(info.getCompilationUnit())) {
             TreePath path = new TreePath(unit);
             Scope scope = trees.getScope(path);
             while (scope != null && scope instanceof JavacScope && !((JavacScope)scope).isStarImportScope()) {
                 for (Element local : scope.getLocalElements()) {
                     if (local.getKind().isClass() || local.getKind().isInterface()) {
-                        if (!isHidden(local, members, elements, types)) {
+                        if (!members.isHidden(local)) {
                             if (acceptor == null || acceptor.accept(local, null))
                                 members.add((TypeElement)local);
                         }
@@ -415,7 +414,7 @@ public final class ElementUtilities {
             Element element = trees.getElement(path);
             if (element != null && element.getKind() == ElementKind.PACKAGE) {
                 for (Element member : element.getEnclosedElements()) {
-                    if (!isHidden(member, members, elements, types)) {
+                    if (!members.isHidden(member)) {
                         if (acceptor == null || acceptor.accept(member, null))
                             members.add((TypeElement) member);
                     }
@@ -424,7 +423,7 @@ public final class ElementUtilities {
             while (scope != null) {
                 for (Element local : scope.getLocalElements()) {
                     if (local.getKind().isClass() || local.getKind().isInterface()) {
-                        if (!isHidden(local, members, elements, types)) {
+                        if (!members.isHidden(local)) {
                             if (acceptor == null || acceptor.accept(local, null))
                                 members.add((TypeElement)local);
                         }
@@ -433,7 +432,7 @@ public final class ElementUtilities {
                 scope = scope.getEnclosingScope();
             }
         }
-        return members;
+        return members.toList();
     }
 
     /**Filter {@link Element}s
@@ -448,14 +447,51 @@ public final class ElementUtilities {
         boolean accept(Element e, TypeMirror type);
     }
 
-    private boolean isHidden(Element member, List<? extends Element> members, Elements elements, Types types) {
-        for (ListIterator<? extends Element> it = members.listIterator(); it.hasNext();) {
-            Element hider = it.next();
-            if (hider == member)
-                return true;
-            if (hider.getSimpleName() == member.getSimpleName()) {
+    /**
+     * Members collected so far, in the order they were added.
+     * The members are also bucketed by simple name, so checking whether
+     * a new element hides or is hidden by a collected one only looks at
+     * the elements of the same name instead of scanning the whole list.
+     */
+    private static final class MemberList<T extends Element> {
+        private final Elements elements;
+        private final Types types;
+        private final ArrayList<T> members = new ArrayList<T>();
+        private final HashMap<javax.lang.model.element.Name, ArrayList<Integer>> byName = new HashMap<javax.lang.model.element.Name, ArrayList<Integer>>();
+        private int removed;
+
+        MemberList(Elements elements, Types types) {
+            this.elements = elements;
+            this.types = types;
+        }
+
+        void add(T member) {
+            ArrayList<Integer> bucket = byName.get(member.getSimpleName());
+            if (bucket == null) {
+                bucket = new ArrayList<Integer>(1);
+                byName.put(member.getSimpleName(), bucket);
+            }
+            bucket.add(members.size());
+            members.add(member);
+        }
+
+        /**
+         * Checks whether the member is already collected or hidden by a collected element.
+         * Collected elements hidden by the member are removed.
+         */
+        boolean isHidden(Element member) {
+            ArrayList<Integer> bucket = byName.get(member.getSimpleName());
+            if (bucket == null)
+                return false;
+            for (Iterator<Integer> it = bucket.iterator(); it.hasNext();) {
+                int index = it.next();
+                Element hider = members.get(index);
+                if (hider == member)
+                    return true;
                 if (elements.hides(member, hider)) {
                     it.remove();
+                    members.set(index, null);
+                    removed++;
                 } else {
                     TypeMirror memberType = member.asType();
                     TypeMirror hiderType = hider.asType();
@@ -467,8 +503,19 @@ public final class ElementUtilities {
                     }
                 }
             }
+            return false;
+        }
+
+        List<T> toList() {
+            if (removed == 0)
+                return members;
+            ArrayList<T> result = new ArrayList<T>(members.size() - removed);
+            for (T member : members) {
+                if (member != null)
+                    result.add(member);
+            }
+            return result;
         }
-        return false;
     }
 
     /**
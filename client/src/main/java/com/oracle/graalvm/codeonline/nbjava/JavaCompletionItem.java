@@ -147,6 +147,33 @@ public abstract class JavaCompletionItem {
         }
     }
 
+    /**
+     * Returns the presentation of a field or method item, see {@link MemberTable}.
+     */
+    static PresentationCache.Presentation createPresentation(CompilationInfo info, Element elem, TypeMirror type) {
+        switch (elem.getKind()) {
+            case ENUM_CONSTANT:
+            case FIELD:
+                return FieldItem.presentation(info, (VariableElement)elem, type);
+            case METHOD:
+                return MethodItem.presentation(info, (ExecutableElement)elem, (ExecutableType)type);
+            default:
+                throw new IllegalArgumentException("kind=" + elem.getKind());
+        }
+    }
+
+    static JavaCompletionItem createMemberItem(MemberTable.Member member, int substitutionOffset) {
+        switch (member.getKind()) {
+            case ENUM_CONSTANT:
+            case FIELD:
+                return new FieldItem(member.getName(), member.getModifiers(), member.getPresentation(), substitutionOffset, member.isInherited(), member.isDeprecated(), false);
+            case METHOD:
+                return new MethodItem(member.getName(), member.getModifiers(), member.getPresentation(), substitutionOffset, member.isInherited(), member.isDeprecated(), false);
+            default:
+                throw new IllegalArgumentException("kind=" + member.getKind());
+        }
+    }
+
     public static JavaCompletionItem createThisOrSuperConstructorItem(CompilationInfo info, ExecutableElement elem, ExecutableType type, int substitutionOffset, boolean isDeprecated, String name/*TODO:, WhiteListQuery.WhiteList whiteList*/) {
         if (elem.getKind() == ElementKind.CONSTRUCTOR) {
             return new ConstructorItem(info, elem, type, substitutionOffset, isDeprecated, false, name/*TODO:, whiteList*/);
@@ -781,14 +808,23 @@ public abstract class JavaCompletionItem {
 //            this.addSimpleName = addSimpleName;
             this.smartType = smartType;
             this.simpleName = elem.getSimpleName().toString();
-            this.typeName = Utilities.getTypeName(info, type, false).toString();
+            PresentationCache cache = PresentationCache.of(info);
+            PresentationCache.Presentation p = cache.get(elem, type);
+            if (p == null) {
+                String tn = Utilities.getTypeName(info, type, false).toString();
+                p = new PresentationCache.Presentation(null, tn, escape(tn), simpleName);
+                cache.put(elem, type, p);
+            }
+            this.typeName = p.typeName;
 //            if (referencesCount != null) {
 //                this.enclName = Utilities.getElementName(elem.getEnclosingElement(), true).toString();
 //                this.sortText = new LazySortText(this.simpleName, this.enclName, getElementHandle(), referencesCount);
 //            } else {
                 this.enclName = null;
-                this.sortText = this.simpleName;
+                this.sortText = p.sortText;
 //            }
+            if (dim == 0)
+                this.leftText = p.leftText;
 //            this.autoImportEnclosingType = autoImportEnclosingType;
         }
 
@@ -1226,6 +1262,7 @@ public abstract class JavaCompletionItem {
         private String simpleName;
         private Set<Modifier> modifiers;
         private String typeName;
+        private String sortText;
         private String rightText;
 //        private boolean autoImportEnclosingType;
         private CharSequence enclSortText;
@@ -1233,23 +1270,39 @@ public abstract class JavaCompletionItem {
 //        private CharSequence assignToVarText;
 
         private FieldItem(CompilationInfo info, VariableElement elem, TypeMirror type, int substitutionOffset, /*TODO:ReferencesCount referencesCount,*/ boolean isInherited, boolean isDeprecated, boolean smartType, int assignToVarOffset/*TODO:, WhiteListQuery.WhiteList whiteList*/) {
-            super(substitutionOffset);
-            this.isInherited = isInherited;
-            this.isDeprecated = isDeprecated;
-            this.smartType = smartType;
-            this.simpleName = elem.getSimpleName().toString();
-            this.modifiers = elem.getModifiers();
-            this.typeName = Utilities.getTypeName(info, type, false).toString();
+            this(elem.getSimpleName().toString(), elem.getModifiers(), presentation(info, elem, type), substitutionOffset, isInherited, isDeprecated, smartType);
 //            this.autoImportEnclosingType = referencesCount != null;
 //            if (this.autoImportEnclosingType) {
 //                this.enclSortText = new LazySortText(elem.getEnclosingElement().getSimpleName().toString(), null, ElementHandle.create((TypeElement)elem.getEnclosingElement()), referencesCount);
-//            } else {
-                this.enclSortText = ""; //NOI18N
 //            }
 //            this.assignToVarOffset = assignToVarOffset;
 //            this.assignToVarText = assignToVarOffset < 0 ? null : createAssignToVarText(info, type, this.simpleName);
         }
 
+        private FieldItem(String simpleName, Set<Modifier> modifiers, PresentationCache.Presentation presentation, int substitutionOffset, boolean isInherited, boolean isDeprecated, boolean smartType) {
+            super(substitutionOffset);
+            this.isInherited = isInherited;
+            this.isDeprecated = isDeprecated;
+            this.smartType = smartType;
+            this.simpleName = simpleName;
+            this.modifiers = modifiers;
+            this.enclSortText = ""; //NOI18N
+            this.typeName = presentation.typeName;
+            this.sortText = presentation.sortText;
+        }
+
+        static PresentationCache.Presentation presentation(CompilationInfo info, VariableElement elem, TypeMirror type) {
+            PresentationCache cache = PresentationCache.of(info);
+            PresentationCache.Presentation p = cache.get(elem, type);
+            if (p == null) {
+                String simpleName = elem.getSimpleName().toString();
+                String typeName = Utilities.getTypeName(info, type, false).toString();
+                p = new PresentationCache.Presentation(null, typeName, simpleName, simpleName + "#"); //NOI18N
+                cache.put(elem, type, p);
+            }
+            return p;
+        }
+
         @Override
         public int getSortPriority() {
             return smartType ? 300 - SMART_TYPE : 300;
@@ -1257,7 +1310,7 @@ public abstract class JavaCompletionItem {
 
         @Override
         public CharSequence getSortText() {
-            return simpleName + "#" + enclSortText; //NOI18N
+            return sortText;
         }
 
         @Override
@@ -1461,38 +1514,79 @@ public abstract class JavaCompletionItem {
 //        private CharSequence assignToVarText;
 
         private MethodItem(CompilationInfo info, ExecutableElement elem, ExecutableType type, int substitutionOffset, /*TODO:ReferencesCount referencesCount,*/ boolean isInherited, boolean isDeprecated, boolean inImport, boolean addSemicolon, boolean smartType, int assignToVarOffset, boolean memberRef/*TODO:, WhiteListQuery.WhiteList whiteList*/) {
-            super(substitutionOffset);
+            this(elem.getSimpleName().toString(), elem.getModifiers(), presentation(info, elem, type), substitutionOffset, isInherited, isDeprecated, smartType);
 //            Color c = LFCustoms.getTextFgColor();
-            this.isInherited = isInherited;
-            this.isDeprecated = isDeprecated;
 //            this.inImport = inImport;
-            this.smartType = smartType;
 //            this.memberRef = memberRef;
-            this.simpleName = elem.getSimpleName().toString();
-            this.modifiers = elem.getModifiers();
-            this.params = new ArrayList<>();
-            Iterator<? extends VariableElement> it = elem.getParameters().iterator();
-            Iterator<? extends TypeMirror> tIt = type.getParameterTypes().iterator();
-            while(it.hasNext() && tIt.hasNext()) {
-                TypeMirror tm = tIt.next();
-                if (tm == null) {
-                    break;
-                }
-                this.params.add(new ParamDesc(tm.toString(), Utilities.getTypeName(info, tm, false, elem.isVarArgs() && !tIt.hasNext()).toString(), it.next().getSimpleName().toString()));
-            }
-            TypeMirror retType = type.getReturnType();
-            this.typeName = Utilities.getTypeName(info, retType, false).toString();
-//            this.addSemicolon = addSemicolon && retType.getKind() == TypeKind.VOID;
+//            this.addSemicolon = addSemicolon && type.getReturnType().getKind() == TypeKind.VOID;
 //            this.autoImportEnclosingType = referencesCount != null;
 //            if (this.autoImportEnclosingType) {
 //                this.enclSortText = new LazySortText(elem.getEnclosingElement().getSimpleName().toString(), null, ElementHandle.create((TypeElement)elem.getEnclosingElement()), referencesCount);
-//            } else {
-                this.enclSortText = ""; //NOI18N
 //            }
 //            this.assignToVarOffset = type.getReturnType().getKind() == TypeKind.VOID ? -1 : assignToVarOffset;
 //            this.assignToVarText = this.assignToVarOffset < 0 ? null : createAssignToVarText(info, type.getReturnType(), this.simpleName);
         }
 
+        private MethodItem(String simpleName, Set<Modifier> modifiers, PresentationCache.Presentation presentation, int substitutionOffset, boolean isInherited, boolean isDeprecated, boolean smartType) {
+            super(substitutionOffset);
+            this.isInherited = isInherited;
+            this.isDeprecated = isDeprecated;
+            this.smartType = smartType;
+            this.simpleName = simpleName;
+            this.modifiers = modifiers;
+            this.enclSortText = ""; //NOI18N
+            this.params = presentation.params;
+            this.typeName = presentation.typeName;
+            this.leftText = presentation.leftText;
+            this.sortText = presentation.sortText;
+        }
+
+        static PresentationCache.Presentation presentation(CompilationInfo info, ExecutableElement elem, ExecutableType type) {
+            PresentationCache cache = PresentationCache.of(info);
+            PresentationCache.Presentation p = cache.get(elem, type);
+            if (p == null) {
+                String simpleName = elem.getSimpleName().toString();
+                List<ParamDesc> params = createParamDescs(info, elem, type);
+                String typeName = Utilities.getTypeName(info, type.getReturnType(), false).toString();
+                p = new PresentationCache.Presentation(params, typeName, createLeftText(simpleName, params), createSortText(simpleName, "", params)); //NOI18N
+                cache.put(elem, type, p);
+            }
+            return p;
+        }
+
+        private static String createSortText(String simpleName, CharSequence enclSortText, List<ParamDesc> params) {
+            StringBuilder sortParams = new StringBuilder();
+            sortParams.append('(');
+            int cnt = 0;
+            for(Iterator<ParamDesc> it = params.iterator(); it.hasNext();) {
+                ParamDesc param = it.next();
+                sortParams.append(param.typeName);
+                if (it.hasNext()) {
+                    sortParams.append(',');
+                }
+                cnt++;
+            }
+            sortParams.append(')');
+            return simpleName + "#" + enclSortText + "#" + ((cnt < 10 ? "0" : "") + cnt) + "#" + sortParams.toString(); //NOI18N
+        }
+
+        private static String createLeftText(String simpleName, List<ParamDesc> params) {
+            StringBuilder lText = new StringBuilder();
+            lText.append(simpleName);
+            lText.append('(');
+            for (Iterator<ParamDesc> it = params.iterator(); it.hasNext();) {
+                ParamDesc paramDesc = it.next();
+                lText.append(escape(paramDesc.typeName));
+                lText.append(' ');
+                lText.append(paramDesc.name);
+                if (it.hasNext()) {
+                    lText.append(", "); //NOI18N
+                }
+            }
+            lText.append(')');
+            return lText.toString();
+        }
+
         @Override
         public int getSortPriority() {
             return smartType ? 500 - SMART_TYPE : 500;
@@ -1500,21 +1594,6 @@ public abstract class JavaCompletionItem {
 
         @Override
         public CharSequence getSortText() {
-            if (sortText == null) {
-                StringBuilder sortParams = new StringBuilder();
-                sortParams.append('(');
-                int cnt = 0;
-                for(Iterator<ParamDesc> it = params.iterator(); it.hasNext();) {
-                    ParamDesc param = it.next();
-                    sortParams.append(param.typeName);
-                    if (it.hasNext()) {
-                        sortParams.append(',');
-                    }
-                    cnt++;
-                }
-                sortParams.append(')');
-                sortText = simpleName + "#" + enclSortText + "#" + ((cnt < 10 ? "0" : "") + cnt) + "#" + sortParams.toString(); //NOI18N
-            }
             return sortText;
         }
 
@@ -1525,22 +1604,6 @@ public abstract class JavaCompletionItem {
 
         @Override
         protected String getLeftHtmlText() {
-            if (leftText == null) {
-                StringBuilder lText = new StringBuilder();
-                lText.append(simpleName);
-                lText.append('(');
-                for (Iterator<ParamDesc> it = params.iterator(); it.hasNext();) {
-                    ParamDesc paramDesc = it.next();
-                    lText.append(escape(paramDesc.typeName));
-                    lText.append(' ');
-                    lText.append(paramDesc.name);
-                    if (it.hasNext()) {
-                        lText.append(", "); //NOI18N
-                    }
-                }
-                lText.append(')');
-                return lText.toString();
-            }
             return leftText;
         }
 
@@ -2040,16 +2103,17 @@ public abstract class JavaCompletionItem {
             this.simpleName = name != null ? name : elem.getEnclosingElement().getSimpleName().toString();
             this.insertName = name != null;
             this.modifiers = elem.getModifiers();
-            this.params = new ArrayList<>();
-            Iterator<? extends VariableElement> it = elem.getParameters().iterator();
-            Iterator<? extends TypeMirror> tIt = type.getParameterTypes().iterator();
-            while(it.hasNext() && tIt.hasNext()) {
-                TypeMirror tm = tIt.next();
-                if (tm == null) {
-                    break;
-                }
-                this.params.add(new ParamDesc(tm.toString(), Utilities.getTypeName(info, tm, false, elem.isVarArgs() && !tIt.hasNext()).toString(), it.next().getSimpleName().toString()));
+            PresentationCache cache = insertName ? null : PresentationCache.of(info);
+            PresentationCache.Presentation p = cache == null ? null : cache.get(elem, type);
+            if (p == null) {
+                this.params = createParamDescs(info, elem, type);
+                p = new PresentationCache.Presentation(params, null, getLeftHtmlText(), getSortText().toString());
+                if (cache != null)
+                    cache.put(elem, type, p);
             }
+            this.params = p.params;
+            this.leftText = p.leftText;
+            this.sortText = p.sortText;
 //            this.isAbstract = !insertName && elem.getEnclosingElement().getModifiers().contains(Modifier.ABSTRACT);
         }
 
@@ -3862,6 +3926,20 @@ public abstract class JavaCompletionItem {
 //        }
 //    }
 //
+    private static List<ParamDesc> createParamDescs(CompilationInfo info, ExecutableElement elem, ExecutableType type) {
+        List<ParamDesc> params = new ArrayList<>();
+        Iterator<? extends VariableElement> it = elem.getParameters().iterator();
+        Iterator<? extends TypeMirror> tIt = type.getParameterTypes().iterator();
+        while(it.hasNext() && tIt.hasNext()) {
+            TypeMirror tm = tIt.next();
+            if (tm == null) {
+                break;
+            }
+            params.add(new ParamDesc(tm.toString(), Utilities.getTypeName(info, tm, false, elem.isVarArgs() && !tIt.hasNext()).toString(), it.next().getSimpleName().toString()));
+        }
+        return Collections.unmodifiableList(params);
+    }
+
     static class ParamDesc {
         private final String fullTypeName;
         private final String typeName;
@@ -72,11 +72,138 @@ public final class JavaCompletionQuery {
     public static final int COMPLETION_ALL_QUERY_TYPE = 3;
 
     public static List<? extends JavaCompletionItem> query(CompilationInfo info, int queryType, int offset) throws Exception {
+        return query(info, queryType, offset, CompletionSettings.getDefault());
+    }
+
+    public static List<? extends JavaCompletionItem> query(CompilationInfo info, int queryType, int offset, CompletionSettings settings) throws Exception {
+        return query(info, queryType, offset, settings, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Runs the query and returns at most {@code limit} best ranked items, in ranking order.
+     * Only the best {@code limit} candidates are kept in a heap while ranking,
+     * so the cost is O(n log limit) instead of sorting all n candidates.
+     */
+    public static List<? extends JavaCompletionItem> query(CompilationInfo info, int queryType, int offset, CompletionSettings settings, int limit) throws Exception {
+        return query(info, queryType, offset, null, settings, limit);
+    }
+
+    /**
+     * Runs the query for the identifier starting at the offset, of which the given prefix
+     * is typed, and returns at most {@code limit} best ranked items matching the prefix.
+     * @param prefix the typed part of the identifier, {@code null} or empty matches everything
+     */
+    public static List<? extends JavaCompletionItem> query(CompilationInfo info, int queryType, int offset, String prefix, CompletionSettings settings, int limit) throws Exception {
         assert info != null;
-        final JavaCompletionQuery query = new JavaCompletionQuery(queryType, offset);
+        assert settings != null;
+        final JavaCompletionQuery query = new JavaCompletionQuery(queryType, offset, prefix, settings);
         query.run(info);
-        Collections.sort(query.results, new CompletionItemComparator());
-        return query.results;
+        return selectTop(query.results, new CompletionItemComparator(), limit);
+    }
+
+    /**
+     * Returns the items matching the prefix, keeping their order.
+     * Used for items queried with a shorter prefix.
+     */
+    public static List<? extends JavaCompletionItem> filter(List<? extends JavaCompletionItem> items, String prefix, CompletionSettings settings) {
+        if (prefix == null || prefix.isEmpty())
+            return items;
+        NameMatcher matcher = settings.createMatcher(prefix);
+        ArrayList<JavaCompletionItem> result = new ArrayList<>();
+        for (JavaCompletionItem item : items) {
+            if (matcher.matches(item.getInsertPrefix()))
+                result.add(item);
+        }
+        return result;
+    }
+
+    /**
+     * Computes the completion environment at the offset ahead of a query, e.g. while
+     * the user is idle. The environment is cached in the {@link CompilationInfo} and
+     * taken over by the next query at the same offset, which then only collects and
+     * ranks the items. The cache is dropped if the source is reparsed.
+     */
+    public static void prepare(CompilationInfo info, int offset) throws IOException {
+        assert info != null;
+        final JavaCompletionQuery query = new JavaCompletionQuery(COMPLETION_QUERY_TYPE, offset, null, CompletionSettings.getDefault());
+        info.putCachedValue(PreparedEnv.class, null);
+        Env env = query.getCompletionEnvironment(info, COMPLETION_QUERY_TYPE);
+        if (env != null) {
+            env.getScope();
+            info.putCachedValue(PreparedEnv.class, new PreparedEnv(env.getOffset(), env.getPath(), env.getSourcePositions(), env.getScope()));
+        }
+    }
+
+    /**
+     * Returns the {@code limit} smallest items in sorted order.
+     * Equal items keep their original order, just like with a full stable sort.
+     */
+    static <T> List<T> selectTop(List<T> items, Comparator<? super T> comparator, int limit) {
+        if (limit <= 0)
+            return new ArrayList<>();
+        if (items.size() <= limit) {
+            ArrayList<T> all = new ArrayList<>(items);
+            Collections.sort(all, comparator);
+            return all;
+        }
+        // Max-heap of item indices, the worst of the best items so far is on top.
+        int[] heap = new int[limit];
+        int size = 0;
+        for (int i = 0; i < items.size(); i++) {
+            if (size < limit) {
+                heap[size] = i;
+                siftUp(heap, size++, items, comparator);
+            } else if (comparator.compare(items.get(i), items.get(heap[0])) < 0) {
+                heap[0] = i;
+                siftDown(heap, 0, size, items, comparator);
+            }
+        }
+        // Heap sort: moving the top to the end leaves the indices in ascending rank.
+        for (int end = size - 1; end > 0; end--) {
+            int worst = heap[0];
+            heap[0] = heap[end];
+            heap[end] = worst;
+            siftDown(heap, 0, end, items, comparator);
+        }
+        ArrayList<T> top = new ArrayList<>(size);
+        for (int k = 0; k < size; k++)
+            top.add(items.get(heap[k]));
+        return top;
+    }
+
+    /**
+     * Compares the items at two indices; equal items are ranked by index.
+     */
+    private static <T> int compareRanks(int i1, int i2, List<T> items, Comparator<? super T> comparator) {
+        int diff = comparator.compare(items.get(i1), items.get(i2));
+        return diff != 0 ? diff : Integer.compare(i1, i2);
+    }
+
+    private static <T> void siftUp(int[] heap, int k, List<T> items, Comparator<? super T> comparator) {
+        int index = heap[k];
+        while (k > 0) {
+            int parent = (k - 1) >>> 1;
+            if (compareRanks(index, heap[parent], items, comparator) <= 0)
+                break;
+            heap[k] = heap[parent];
+            k = parent;
+        }
+        heap[k] = index;
+    }
+
+    private static <T> void siftDown(int[] heap, int k, int size, List<T> items, Comparator<? super T> comparator) {
+        int index = heap[k];
+        int half = size >>> 1;
+        while (k < half) {
+            int child = 2 * k + 1;
+            if (child + 1 < size && compareRanks(heap[child + 1], heap[child], items, comparator) > 0)
+                child++;
+            if (compareRanks(index, heap[child], items, comparator) >= 0)
+                break;
+            heap[k] = heap[child];
+            k = child;
+        }
+        heap[k] = index;
     }
 
     private static final String ERROR = "<error>"; //NOI18N
@@ -196,10 +323,14 @@ public final class JavaCompletionQuery {
     private ArrayList<JavaCompletionItem> results;
     private int queryType;
     private int queryOffset;
+    private final String queryPrefix;
+    private final CompletionSettings settings;
 
-    private JavaCompletionQuery(int queryType, int offset) {
+    private JavaCompletionQuery(int queryType, int offset, String prefix, CompletionSettings settings) {
         this.queryType = queryType;
         this.queryOffset = offset;
+        this.queryPrefix = prefix == null || prefix.isEmpty() ? null : prefix;
+        this.settings = settings;
     }
 
     public void run(CompilationInfo info) throws Exception {
@@ -409,13 +540,12 @@ public final class JavaCompletionQuery {
 
     private void insideImport(Env env) {
         int offset = env.getOffset();
-        String prefix = env.getPrefix();
         ImportTree im = (ImportTree)env.getPath().getLeaf();
         SourcePositions sourcePositions = env.getSourcePositions();
         CompilationUnitTree root = env.getRoot();
         if (offset <= sourcePositions.getStartPosition(root, im.getQualifiedIdentifier())) {
             ListIterator<? extends Pair<String, Integer>> last = findLastNonWhitespaceToken(env, im, offset);
-            if (last != null && last.hasPrevious() && IMPORT_KEYWORD.equals(last.previous().first) && Utilities.startsWith(STATIC_KEYWORD, prefix))
+            if (last != null && last.hasPrevious() && IMPORT_KEYWORD.equals(last.previous().first) && startsWith(env, STATIC_KEYWORD))
                 addKeyword(env, STATIC_KEYWORD, SPACE, false);
             addPackages(env, null, false);
         }
@@ -568,7 +698,7 @@ public final class JavaCompletionQuery {
                     Set<TypeMirror> exs = info.getTreeUtilities().getUncaughtExceptions(tryPath);
                     Elements elements = info.getElements();
                     for (TypeMirror ex : exs)
-                        if (ex.getKind() == TypeKind.DECLARED && startsWith(env, ((DeclaredType)ex).asElement().getSimpleName().toString()) && (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(((DeclaredType)ex).asElement()))) {
+                        if (ex.getKind() == TypeKind.DECLARED && startsWith(env, ((DeclaredType)ex).asElement().getSimpleName().toString()) && (settings.isShowDeprecatedMembers() || !elements.isDeprecated(((DeclaredType)ex).asElement()))) {
                             env.addToExcludes(((DeclaredType)ex).asElement());
 //                            results.add(JavaCompletionItem.createTypeItem(info, (TypeElement)((DeclaredType)ex).asElement(), (DeclaredType)ex, anchorOffset, env.getReferencesCount(), elements.isDeprecated(((DeclaredType)ex).asElement()), false, false, false, true, false, env.getWhiteList()));
                             results.add(JavaCompletionItem.createTypeItem(info, (TypeElement)((DeclaredType)ex).asElement(), (DeclaredType)ex, offset, elements.isDeprecated(((DeclaredType)ex).asElement()), false, false, false, true, false));
@@ -703,7 +833,7 @@ public final class JavaCompletionQuery {
                         Set<TypeMirror> exs = info.getTreeUtilities().getUncaughtExceptions(new TreePath(path, mth.getBody()));
                         Elements elements = info.getElements();
                         for (TypeMirror ex : exs)
-                            if (ex.getKind() == TypeKind.DECLARED && startsWith(env, ((DeclaredType)ex).asElement().getSimpleName().toString()) && (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(((DeclaredType)ex).asElement()))) {
+                            if (ex.getKind() == TypeKind.DECLARED && startsWith(env, ((DeclaredType)ex).asElement().getSimpleName().toString()) && (settings.isShowDeprecatedMembers() || !elements.isDeprecated(((DeclaredType)ex).asElement()))) {
                                 env.addToExcludes(((DeclaredType)ex).asElement());
 //                                results.add(JavaCompletionItem.createTypeItem(env.getController(), (TypeElement)((DeclaredType)ex).asElement(), (DeclaredType)ex, anchorOffset, env.getReferencesCount(), elements.isDeprecated(((DeclaredType)ex).asElement()), false, false, false, true, false, env.getWhiteList()));
                                 results.add(JavaCompletionItem.createTypeItem(info, (TypeElement)((DeclaredType)ex).asElement(), (DeclaredType)ex, offset, elements.isDeprecated(((DeclaredType)ex).asElement()), false, false, false, true, false));
@@ -745,7 +875,7 @@ public final class JavaCompletionQuery {
                                 }
                                 Elements elements = info.getElements();
                                 for (TypeMirror ex : exs)
-                                    if (ex.getKind() == TypeKind.DECLARED && startsWith(env, ((DeclaredType)ex).asElement().getSimpleName().toString()) && (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(((DeclaredType)ex).asElement()))) {
+                                    if (ex.getKind() == TypeKind.DECLARED && startsWith(env, ((DeclaredType)ex).asElement().getSimpleName().toString()) && (settings.isShowDeprecatedMembers() || !elements.isDeprecated(((DeclaredType)ex).asElement()))) {
                                         env.addToExcludes(((DeclaredType)ex).asElement());
 //                                        results.add(JavaCompletionItem.createTypeItem(env.getController(), (TypeElement)((DeclaredType)ex).asElement(), (DeclaredType)ex, anchorOffset, env.getReferencesCount(), elements.isDeprecated(((DeclaredType)ex).asElement()), false, false, false, true, false, env.getWhiteList()));
                                         results.add(JavaCompletionItem.createTypeItem(info, (TypeElement)((DeclaredType)ex).asElement(), (DeclaredType)ex, offset, elements.isDeprecated(((DeclaredType)ex).asElement()), false, false, false, true, false));
@@ -868,7 +998,7 @@ public final class JavaCompletionQuery {
                     for (TypeMirror smart : smarts) {
                         if (smart.getKind() == TypeKind.DECLARED) {
                             TypeElement elem = (TypeElement)((DeclaredType)smart).asElement();
-                            if (elem.getKind() == ANNOTATION_TYPE && (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(elem)))
+                            if (elem.getKind() == ANNOTATION_TYPE && (settings.isShowDeprecatedMembers() || !elements.isDeprecated(elem)))
 //                                results.add(JavaCompletionItem.createTypeItem(env.getController(), elem, (DeclaredType)smart, anchorOffset, env.getReferencesCount(), elements.isDeprecated(elem), false, false, false, true, false, env.getWhiteList()));
                                 results.add(JavaCompletionItem.createTypeItem(info, elem, (DeclaredType)smart, offset, elements.isDeprecated(elem), false, false, false, true, false));
                         }
@@ -904,7 +1034,7 @@ public final class JavaCompletionQuery {
                     } else if (((ExecutableElement)e).getDefaultValue() == null) {
                         valueElement = null;
                     }
-                    if (!names.contains(name) && startsWith(env, name) && (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(e)))
+                    if (!names.contains(name) && startsWith(env, name) && (settings.isShowDeprecatedMembers() || !elements.isDeprecated(e)))
 //                        results.add(JavaCompletionItem.createAttributeItem(env.getController(), (ExecutableElement)e, (ExecutableType)e.asType(), anchorOffset, elements.isDeprecated(e)));
                         results.add(JavaCompletionItem.createAttributeItem(env.getInfo(), (ExecutableElement)e, (ExecutableType)e.asType(), offset, elements.isDeprecated(e)));
                 }
@@ -1073,7 +1203,7 @@ public final class JavaCompletionQuery {
                                                 while(upperBound.getKind() == TypeKind.DECLARED) {
                                                     TypeElement elem = (TypeElement)((DeclaredType)upperBound).asElement();
                                                     if (startsWith(env, elem.getSimpleName().toString()) && withinBounds(env, upperBound, bounds)
-                                                            && (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(elem)))
+                                                            && (settings.isShowDeprecatedMembers() || !elements.isDeprecated(elem)))
 //                                                        results.add(JavaCompletionItem.createTypeItem(env.getController(), elem, (DeclaredType)upperBound, anchorOffset, env.getReferencesCount(), elements.isDeprecated(elem), false, true, false, true, false, env.getWhiteList()));
                                                         results.add(JavaCompletionItem.createTypeItem(info, elem, (DeclaredType)upperBound, offset, elements.isDeprecated(elem), false, true, false, true, false));
                                                     env.addToExcludes(elem);
@@ -1082,7 +1212,7 @@ public final class JavaCompletionQuery {
                                             } else if (lowerBound != null && lowerBound.getKind() == TypeKind.DECLARED) {
                                                 for (DeclaredType subtype : getSubtypesOf(env, (DeclaredType)lowerBound)) {
                                                     TypeElement elem = (TypeElement)subtype.asElement();
-                                                    if (withinBounds(env, subtype, bounds) && (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(elem)))
+                                                    if (withinBounds(env, subtype, bounds) && (settings.isShowDeprecatedMembers() || !elements.isDeprecated(elem)))
 //                                                        results.add(JavaCompletionItem.createTypeItem(env.getController(), elem, subtype, anchorOffset, env.getReferencesCount(), elements.isDeprecated(elem), false, true, false, true, false, env.getWhiteList()));
                                                         results.add(JavaCompletionItem.createTypeItem(info, elem, subtype, offset, elements.isDeprecated(elem), false, true, false, true, false));
                                                     env.addToExcludes(elem);
@@ -1097,7 +1227,7 @@ public final class JavaCompletionQuery {
                             bounds = bounds.subList(0, bounds.size());
                             for (DeclaredType subtype : getSubtypesOf(env, (DeclaredType)lowerBound)) {
                                 TypeElement elem = (TypeElement)subtype.asElement();
-                                if (withinBounds(env, subtype, bounds) && (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(elem)))
+                                if (withinBounds(env, subtype, bounds) && (settings.isShowDeprecatedMembers() || !elements.isDeprecated(elem)))
 //                                    results.add(JavaCompletionItem.createTypeItem(env.getController(), elem, subtype, anchorOffset, env.getReferencesCount(), elements.isDeprecated(elem), false, true, false, true, false, env.getWhiteList()));
                                     results.add(JavaCompletionItem.createTypeItem(info, elem, subtype, offset, elements.isDeprecated(elem), false, true, false, true, false));
                                 env.addToExcludes(elem);
@@ -1136,12 +1266,11 @@ public final class JavaCompletionQuery {
         if (last == null) {
             ExecutableElement enclMethod = env.getScope().getEnclosingMethod();
             if (enclMethod != null && enclMethod.getKind() == ElementKind.CONSTRUCTOR) {
-                String prefix = env.getPrefix();
-                if (Utilities.startsWith(THIS_KEYWORD, prefix)) {
+                if (startsWith(env, THIS_KEYWORD)) {
                     Element element = enclMethod.getEnclosingElement();
                     addThisOrSuperConstructor(env, element.asType(), element, THIS_KEYWORD, enclMethod);
                 }
-                if (Utilities.startsWith(SUPER_KEYWORD, prefix)) {
+                if (startsWith(env, SUPER_KEYWORD)) {
                     Element element = enclMethod.getEnclosingElement();
                     element = ((DeclaredType)((TypeElement)element).getSuperclass()).asElement();
                     addThisOrSuperConstructor(env, element.asType(), element, SUPER_KEYWORD, enclMethod);
@@ -1405,7 +1534,7 @@ public final class JavaCompletionQuery {
                             for (TypeMirror ex : exs)
                                 if (ex.getKind() == TypeKind.DECLARED) {
                                     Element e = ((DeclaredType)ex).asElement();
-                                    if (e.getEnclosingElement() == el && startsWith(env, e.getSimpleName().toString()) && (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(e))) {
+                                    if (e.getEnclosingElement() == el && startsWith(env, e.getSimpleName().toString()) && (settings.isShowDeprecatedMembers() || !elements.isDeprecated(e))) {
                                         env.addToExcludes(e);
 //                                        results.add(JavaCompletionItem.createTypeItem(env.getController(), (TypeElement)e, (DeclaredType)ex, anchorOffset, null, elements.isDeprecated(e), insideNew, insideNew || env.isInsideClass(), true, true, false, env.getWhiteList()));
                                         results.add(JavaCompletionItem.createTypeItem(info, (TypeElement)e, (DeclaredType)ex, offset, elements.isDeprecated(e), insideNew, insideNew || env.isInsideClass(), true, true, false));
@@ -1444,7 +1573,7 @@ public final class JavaCompletionQuery {
                                 for (TypeMirror ex : exs)
                                     if (ex.getKind() == TypeKind.DECLARED) {
                                         Element e = ((DeclaredType)ex).asElement();
-                                        if (e.getEnclosingElement() == el && startsWith(env, e.getSimpleName().toString()) && (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(e))) {
+                                        if (e.getEnclosingElement() == el && startsWith(env, e.getSimpleName().toString()) && (settings.isShowDeprecatedMembers() || !elements.isDeprecated(e))) {
                                             env.addToExcludes(e);
 //                                            results.add(JavaCompletionItem.createTypeItem(env.getController(), (TypeElement)e, (DeclaredType)ex, anchorOffset, env.getReferencesCount(), elements.isDeprecated(e), false, env.isInsideClass(), true, true, false, env.getWhiteList()));
                                             results.add(JavaCompletionItem.createTypeItem(info, (TypeElement)e, (DeclaredType)ex, offset, elements.isDeprecated(e), false, env.isInsideClass(), true, true, false));
@@ -1607,7 +1736,7 @@ public final class JavaCompletionQuery {
                                         if (encl == null) {
                                             for (DeclaredType subtype : getSubtypesOf(env, (DeclaredType)smart)) {
                                                 TypeElement elem = (TypeElement)subtype.asElement();
-                                                if (toExclude != elem && (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(elem)))
+                                                if (toExclude != elem && (settings.isShowDeprecatedMembers() || !elements.isDeprecated(elem)))
 //                                                    results.add(JavaCompletionItem.createTypeItem(env.getController(), elem, (DeclaredType)Utilities.resolveCapturedType(info, subtype), anchorOffset, env.getReferencesCount(), elements.isDeprecated(elem), true, true, false, true, false, env.getWhiteList()));
                                                     results.add(JavaCompletionItem.createTypeItem(info, elem, subtype, offset, elements.isDeprecated(elem), true, true, false, true, false));
                                                 env.addToExcludes(elem);
@@ -1687,7 +1816,7 @@ public final class JavaCompletionQuery {
                 Set<TypeMirror> exs = info.getTreeUtilities().getUncaughtExceptions(tryPath);
                 Elements elements = info.getElements();
                 for (TypeMirror ex : exs)
-                    if (ex.getKind() == TypeKind.DECLARED && startsWith(env, ((DeclaredType)ex).asElement().getSimpleName().toString()) && (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(((DeclaredType)ex).asElement()))) {
+                    if (ex.getKind() == TypeKind.DECLARED && startsWith(env, ((DeclaredType)ex).asElement().getSimpleName().toString()) && (settings.isShowDeprecatedMembers() || !elements.isDeprecated(((DeclaredType)ex).asElement()))) {
                         env.addToExcludes(((DeclaredType)ex).asElement());
 //                        results.add(JavaCompletionItem.createTypeItem(env.getController(), (TypeElement)((DeclaredType)ex).asElement(), (DeclaredType)ex, anchorOffset, env.getReferencesCount(), elements.isDeprecated(((DeclaredType)ex).asElement()), false, false, false, true, false, env.getWhiteList()));
                         results.add(JavaCompletionItem.createTypeItem(info, (TypeElement)((DeclaredType)ex).asElement(), (DeclaredType)ex, offset, elements.isDeprecated(((DeclaredType)ex).asElement()), false, false, false, true, false));
@@ -1723,7 +1852,7 @@ public final class JavaCompletionQuery {
                     }
                     Elements elements = info.getElements();
                     for (TypeMirror ex : exs) {
-                        if (ex.getKind() == TypeKind.DECLARED && startsWith(env, ((DeclaredType)ex).asElement().getSimpleName().toString()) && (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(((DeclaredType)ex).asElement()))) {
+                        if (ex.getKind() == TypeKind.DECLARED && startsWith(env, ((DeclaredType)ex).asElement().getSimpleName().toString()) && (settings.isShowDeprecatedMembers() || !elements.isDeprecated(((DeclaredType)ex).asElement()))) {
                             env.addToExcludes(((DeclaredType)ex).asElement());
 //                            results.add(JavaCompletionItem.createTypeItem(info, (TypeElement)((DeclaredType)ex).asElement(), (DeclaredType)ex, anchorOffset, env.getReferencesCount(), elements.isDeprecated(((DeclaredType)ex).asElement()), false, false, false, true, false, env.getWhiteList()));
                             results.add(JavaCompletionItem.createTypeItem(info, (TypeElement)((DeclaredType)ex).asElement(), (DeclaredType)ex, offset, elements.isDeprecated(((DeclaredType)ex).asElement()), false, false, false, true, false));
@@ -1955,7 +2084,7 @@ public final class JavaCompletionQuery {
                             if (smart.getKind() == TypeKind.DECLARED) {
                                 for (DeclaredType subtype : getSubtypesOf(env, (DeclaredType)smart)) {
                                     TypeElement elem = (TypeElement)subtype.asElement();
-                                    if (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(elem))
+                                    if (settings.isShowDeprecatedMembers() || !elements.isDeprecated(elem))
 //                                        results.add(JavaCompletionItem.createTypeItem(env.getController(), elem, subtype, anchorOffset, env.getReferencesCount(), elements.isDeprecated(elem), false, false, false, true, false, env.getWhiteList()));
                                         results.add(JavaCompletionItem.createTypeItem(info, elem, subtype, offset, elements.isDeprecated(elem), false, false, false, true, false));
                                     env.addToExcludes(elem);
@@ -2512,7 +2641,6 @@ public final class JavaCompletionQuery {
     }
 
     private void addLocalConstantsAndTypes(final Env env) throws IOException {
-        final String prefix = env.getPrefix();
         final int offset = env.getOffset();
         final CompilationInfo info = env.getInfo();
         final Elements elements = info.getElements();
@@ -2533,7 +2661,7 @@ public final class JavaCompletionQuery {
                     if (st.getKind() == TypeKind.DECLARED) {
                         final DeclaredType type = (DeclaredType)st;
                         final TypeElement element = (TypeElement)type.asElement();
-                        if (element.getKind() == ANNOTATION_TYPE && (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(element)))
+                        if (element.getKind() == ANNOTATION_TYPE && (settings.isShowDeprecatedMembers() || !elements.isDeprecated(element)))
 //                            results.add(JavaCompletionItem.createAnnotationItem(env.getController(), element, (DeclaredType)type, anchorOffset, env.getReferencesCount(), elements.isDeprecated(element), env.getWhiteList()));
                             results.add(JavaCompletionItem.createAnnotationItem(info, element, (DeclaredType)type, offset, elements.isDeprecated(element)));
                         if (JAVA_LANG_CLASS.contentEquals(element.getQualifiedName())) {
@@ -2559,10 +2687,10 @@ public final class JavaCompletionQuery {
             }
         }
         if (env.getPath().getLeaf().getKind() != Tree.Kind.CASE) {
-            if (Utilities.startsWith(FALSE_KEYWORD, prefix))
+            if (startsWith(env, FALSE_KEYWORD))
 //                results.add(JavaCompletionItem.createKeywordItem(FALSE_KEYWORD, null, anchorOffset, smartType));
                 results.add(JavaCompletionItem.createKeywordItem(FALSE_KEYWORD, null, offset, smartType));
-            if (Utilities.startsWith(TRUE_KEYWORD, prefix))
+            if (startsWith(env, TRUE_KEYWORD))
 //                results.add(JavaCompletionItem.createKeywordItem(TRUE_KEYWORD, null, anchorOffset, smartType));
                 results.add(JavaCompletionItem.createKeywordItem(TRUE_KEYWORD, null, offset, smartType));
         }
@@ -2702,7 +2830,6 @@ public final class JavaCompletionQuery {
     }
 
     private Iterable<? extends Element> getLocalMembersAndVars(final Env env) throws IOException {
-        final String prefix = env.getPrefix();
         final CompilationInfo info = env.getInfo();
         final Elements elements = info.getElements();
         final Trees trees = info.getTrees();
@@ -2731,20 +2858,20 @@ public final class JavaCompletionQuery {
                                 !illegalForwardRefs.contains(e);
                     case FIELD:
                         if (e.getSimpleName().contentEquals(THIS_KEYWORD) || e.getSimpleName().contentEquals(SUPER_KEYWORD))
-                            return Utilities.startsWith(e.getSimpleName().toString(), prefix) && !isStatic;
+                            return startsWith(env, e.getSimpleName().toString()) && !isStatic;
                     case ENUM_CONSTANT:
                         return startsWith(env, e.getSimpleName().toString()) &&
                                 !illegalForwardRefs.contains(e) &&
                                 (!isStatic || e.getModifiers().contains(STATIC)) &&
-                                (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(e)) &&
+                                (settings.isShowDeprecatedMembers() || !elements.isDeprecated(e)) &&
                                 trees.isAccessible(scope, e, (DeclaredType)t);
                     case METHOD:
                         String sn = e.getSimpleName().toString();
                         return startsWith(env, sn) &&
-                                (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(e)) &&
+                                (settings.isShowDeprecatedMembers() || !elements.isDeprecated(e)) &&
                                 (!isStatic || e.getModifiers().contains(STATIC)) &&
                                 trees.isAccessible(scope, e, (DeclaredType)t) &&
-                                (!Utilities.isExcludeMethods() || !Utilities.isExcluded(Utilities.getElementName(info, e.getEnclosingElement(), true) + "." + sn)); //NOI18N
+                                (!settings.isExcludeMethods() || !settings.isExcluded(Utilities.getElementName(info, e.getEnclosingElement(), true) + "." + sn)); //NOI18N
                 }
                 return false;
             }
@@ -2911,11 +3038,11 @@ public final class JavaCompletionQuery {
                         if (((VariableElement)e).getConstantValue() == null && !CLASS_KEYWORD.contentEquals(e.getSimpleName()))
                             return false;
                     case ENUM_CONSTANT:
-                        return  (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(e)) && trees.isAccessible(scope, e, (DeclaredType)(isSuperCall && enclType != null ? enclType : t));
+                        return  (settings.isShowDeprecatedMembers() || !elements.isDeprecated(e)) && trees.isAccessible(scope, e, (DeclaredType)(isSuperCall && enclType != null ? enclType : t));
                     case CLASS:
                     case ENUM:
                     case INTERFACE:
-                        return  (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(e)) && trees.isAccessible(scope, e, (DeclaredType)t);
+                        return  (settings.isShowDeprecatedMembers() || !elements.isDeprecated(e)) && trees.isAccessible(scope, e, (DeclaredType)t);
                 }
                 return false;
             }
@@ -2947,7 +3074,6 @@ public final class JavaCompletionQuery {
 
     private void addMethodReferences(final Env env, final TypeMirror type, final Element elem) throws IOException {
         Set<? extends TypeMirror> smartTypes = env.getSmartTypes();
-        final String prefix = env.getPrefix();
         final int offset = env.getOffset();
         final CompilationInfo info = env.getInfo();
         final Elements elements = info.getElements();
@@ -2964,10 +3090,10 @@ public final class JavaCompletionQuery {
                 switch (e.getKind()) {
                     case METHOD:
                         String sn = e.getSimpleName().toString();
-                        return startsWith(env, sn, prefix) &&
-                                (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(e)) &&
+                        return startsWith(env, sn) &&
+                                (settings.isShowDeprecatedMembers() || !elements.isDeprecated(e)) &&
                                 env.isAccessible(scope, e, t, isSuperCall) &&
-                                (!Utilities.isExcludeMethods() || !Utilities.isExcluded(Utilities.getElementName(info, e.getEnclosingElement(), true) + "." + sn)); //NOI18N
+                                (!settings.isExcludeMethods() || !settings.isExcluded(Utilities.getElementName(info, e.getEnclosingElement(), true) + "." + sn)); //NOI18N
                 }
                 return false;
             }
@@ -3002,6 +3128,9 @@ public final class JavaCompletionQuery {
         final boolean[] ctorSeen = {false};
         final boolean[] nestedClassSeen = {false};
         final TypeElement enclClass = scope.getEnclosingClass();
+        if (!isStatic && !isThisCall && !isSuperCall && baseType == null && settings.isShowDeprecatedMembers()
+                && (smartTypes == null || smartTypes.isEmpty()) && addMembersFromTable(env, type, kinds, enclClass))
+            return;
         ElementUtilities.ElementAcceptor acceptor = new ElementUtilities.ElementAcceptor() {
             public boolean accept(Element e, TypeMirror t) {
                 switch (e.getKind()) {
@@ -3033,7 +3162,7 @@ public final class JavaCompletionQuery {
                                 return false;
                             }
                         }
-                        return (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(e)) &&
+                        return (settings.isShowDeprecatedMembers() || !elements.isDeprecated(e)) &&
                                 isOfKindAndType(asMemberOf(e, t, types), e, kinds, baseType, scope, trees, types) &&
                                 env.isAccessible(scope, e, t, isSuperCall) &&
                                 ((isStatic && !inImport) || !e.getSimpleName().contentEquals(CLASS_KEYWORD));
@@ -3043,7 +3172,7 @@ public final class JavaCompletionQuery {
                     case RESOURCE_VARIABLE:
                     case PARAMETER:
                         return startsWith(env, e.getSimpleName().toString()) &&
-                                (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(e)) &&
+                                (settings.isShowDeprecatedMembers() || !elements.isDeprecated(e)) &&
                                 isOfKindAndType(asMemberOf(e, t, types), e, kinds, baseType, scope, trees, types) &&
                                 env.isAccessible(scope, e, t, isSuperCall);
                     case METHOD:
@@ -3064,10 +3193,10 @@ public final class JavaCompletionQuery {
                             }
                         }
                         return startsWith(env, sn) &&
-                                (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(e)) &&
+                                (settings.isShowDeprecatedMembers() || !elements.isDeprecated(e)) &&
                                 isOfKindAndType(((ExecutableType)asMemberOf(e, t, types)).getReturnType(), e, kinds, baseType, scope, trees, types) &&
                                 env.isAccessible(scope, e, t, isSuperCall) &&
-                                (!Utilities.isExcludeMethods() || !Utilities.isExcluded(Utilities.getElementName(info, e.getEnclosingElement(), true) + "." + sn)); //NOI18N
+                                (!settings.isExcludeMethods() || !settings.isExcluded(Utilities.getElementName(info, e.getEnclosingElement(), true) + "." + sn)); //NOI18N
                     case CLASS:
                     case ENUM:
                     case INTERFACE:
@@ -3075,13 +3204,13 @@ public final class JavaCompletionQuery {
                         if (!e.getModifiers().contains(STATIC))
                             nestedClassSeen[0] = true;
                         return startsWith(env, e.getSimpleName().toString()) &&
-                                (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(e)) &&
+                                (settings.isShowDeprecatedMembers() || !elements.isDeprecated(e)) &&
                                 isOfKindAndType(e.asType(), e, kinds, baseType, scope, trees, types) &&
                                 (!env.isAfterExtends() || containsAccessibleNonFinalType(e, scope, trees)) &&
                                 env.isAccessible(scope, e, t, isSuperCall) && isStatic;
                     case CONSTRUCTOR:
                         ctorSeen[0] = true;
-                        return (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(e)) &&
+                        return (settings.isShowDeprecatedMembers() || !elements.isDeprecated(e)) &&
                                 isOfKindAndType(e.getEnclosingElement().asType(), e, kinds, baseType, scope, trees, types) &&
                                 (env.isAccessible(scope, e, t, isSuperCall) || (elem.getModifiers().contains(ABSTRACT) && !e.getModifiers().contains(PRIVATE))) &&
                                 isStatic;
@@ -3144,6 +3273,28 @@ public final class JavaCompletionQuery {
         }
     }
 
+    /**
+     * Adds members of an instance receiver from its {@link MemberTable}, if the type has one.
+     * Gives the same items as the javac based code in {@code addMembers} for this case.
+     */
+    private boolean addMembersFromTable(Env env, TypeMirror type, EnumSet<ElementKind> kinds, TypeElement enclClass) {
+        MemberTable table = MemberTable.get(env.getInfo(), type, enclClass);
+        if (table == null)
+            return false;
+        for (MemberTable.Member m : table.getMembers()) {
+            if (!kinds.contains(m.getKind()) || !startsWith(env, m.getName()))
+                continue;
+            if (m.getKind() != ENUM_CONSTANT && queryType == COMPLETION_QUERY_TYPE && m.isStatic())
+                continue;
+            if (m.getKind() == METHOD && settings.isExcludeMethods() && settings.isExcluded(m.getOwnerName() + "." + m.getName())) //NOI18N
+                continue;
+            results.add(JavaCompletionItem.createMemberItem(m, env.getOffset()));
+        }
+        if (table.hasInnerClass())
+            addKeyword(env, NEW_KEYWORD, SPACE, false);
+        return true;
+    }
+
     private void addThisOrSuperConstructor(final Env env, final TypeMirror type, final Element elem, final String name, final ExecutableElement toExclude) throws IOException {
         final CompilationInfo info = env.getInfo();
         final int offset = env.getOffset();
@@ -3157,7 +3308,7 @@ public final class JavaCompletionQuery {
                 switch (e.getKind()) {
                     case CONSTRUCTOR:
                         ctorSeen[0] = true;
-                        return toExclude != e && (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(e)) &&
+                        return toExclude != e && (settings.isShowDeprecatedMembers() || !elements.isDeprecated(e)) &&
                                 (trees.isAccessible(scope, e, (DeclaredType)t) || (elem.getModifiers().contains(ABSTRACT) && !e.getModifiers().contains(PRIVATE)));
                 }
                 return false;
@@ -3179,7 +3330,7 @@ public final class JavaCompletionQuery {
         for(Element e : elem.getEnclosedElements()) {
             if (e.getKind() == ENUM_CONSTANT) {
                 String name = e.getSimpleName().toString();
-                if (startsWith(env, name) && (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(e)))
+                if (startsWith(env, name) && (settings.isShowDeprecatedMembers() || !elements.isDeprecated(e)))
 //                    results.add(JavaCompletionItem.createVariableItem(env.getController(), (VariableElement)e, e.asType(), anchorOffset, null, false, elements.isDeprecated(e), false, env.assignToVarPos(), env.getWhiteList()));
                     results.add(JavaCompletionItem.createVariableItem(info, (VariableElement)e, e.asType(), offset, false, elements.isDeprecated(e), false, env.assignToVarPos()));
             }
@@ -3198,10 +3349,10 @@ public final class JavaCompletionQuery {
             if (e.getKind().isClass() || e.getKind().isInterface()) {
                 String name = e.getSimpleName().toString();
                 if ((env.getExcludes() == null || !env.getExcludes().contains(e))
-                    && startsWith(env, name) && (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(e))
+                    && startsWith(env, name) && (settings.isShowDeprecatedMembers() || !elements.isDeprecated(e))
                     && trees.isAccessible(scope, (TypeElement)e)
                     && isOfKindAndType(e.asType(), e, kinds, baseType, scope, trees, types)
-                    && !Utilities.isExcluded(Utilities.getElementName(info, e, true))) {
+                    && !settings.isExcluded(Utilities.getElementName(info, e, true))) {
 //                        results.add(JavaCompletionItem.createTypeItem(env.getController(), (TypeElement)e, (DeclaredType)e.asType(), anchorOffset, null, elements.isDeprecated(e), insideNew, insideNew || env.isInsideClass(), true, isOfSmartType(env, e.asType(), smartTypes), false, env.getWhiteList()));
                         results.add(JavaCompletionItem.createTypeItem(info, (TypeElement)e, (DeclaredType)e.asType(), offset, elements.isDeprecated(e), insideNew, insideNew || env.isInsideClass(), true, isOfSmartType(env, e.asType(), smartTypes), false));
                 }
@@ -3231,7 +3382,7 @@ public final class JavaCompletionQuery {
                 Set<? extends Element> excludes = env.getExcludes();
                 for(DeclaredType subtype : getSubtypesOf(env, baseType)) {
                     TypeElement elem = (TypeElement)subtype.asElement();
-                    if ((excludes == null || !excludes.contains(elem)) && (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(elem)) && (!env.isAfterExtends() || !elem.getModifiers().contains(Modifier.FINAL)))
+                    if ((excludes == null || !excludes.contains(elem)) && (settings.isShowDeprecatedMembers() || !elements.isDeprecated(elem)) && (!env.isAfterExtends() || !elem.getModifiers().contains(Modifier.FINAL)))
 //                        results.add(JavaCompletionItem.createTypeItem(env.getController(), elem, subtype, anchorOffset, env.getReferencesCount(), elements.isDeprecated(elem), env.isInsideNew(), env.isInsideNew() || env.isInsideClass(), false, true, false, env.getWhiteList()));
                         results.add(JavaCompletionItem.createTypeItem(info, elem, subtype, offset, elements.isDeprecated(elem), env.isInsideNew(), env.isInsideNew() || env.isInsideClass(), false, true, false));
                 }
@@ -3260,7 +3411,7 @@ public final class JavaCompletionQuery {
                 if ((env.getExcludes() == null || !env.getExcludes().contains(e)) && (e.getKind().isClass() || e.getKind().isInterface() || e.getKind() == TYPE_PARAMETER) && (!env.isAfterExtends() || containsAccessibleNonFinalType(e, scope, trees))) {
                     String name = e.getSimpleName().toString();
                     return name.length() > 0 && !Character.isDigit(name.charAt(0)) && startsWith(env, name) &&
-                            (!isStatic || e.getModifiers().contains(STATIC) || e.getEnclosingElement() == enclMethod) && (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(e)) && isOfKindAndType(e.asType(), e, kinds, baseType, scope, trees, types);
+                            (!isStatic || e.getModifiers().contains(STATIC) || e.getEnclosingElement() == enclMethod) && (settings.isShowDeprecatedMembers() || !elements.isDeprecated(e)) && isOfKindAndType(e.asType(), e, kinds, baseType, scope, trees, types);
                 }
                 return false;
             }
@@ -3286,7 +3437,7 @@ public final class JavaCompletionQuery {
             public boolean accept(Element e, TypeMirror t) {
                 if ((e.getKind().isClass() || e.getKind().isInterface())) {
                     return (env.getExcludes() == null || !env.getExcludes().contains(e)) && startsWith(env, e.getSimpleName().toString()) &&
-                            (Utilities.isShowDeprecatedMembers() || !elements.isDeprecated(e)) && trees.isAccessible(scope, (TypeElement)e) &&
+                            (settings.isShowDeprecatedMembers() || !elements.isDeprecated(e)) && trees.isAccessible(scope, (TypeElement)e) &&
                             isOfKindAndType(e.asType(), e, kinds, baseType, scope, trees, types) && (!env.isAfterExtends() || containsAccessibleNonFinalType(e, scope, trees));
                 }
                 return false;
@@ -3630,7 +3781,7 @@ public final class JavaCompletionQuery {
     }
 
     private void addKeyword(Env env, String kw, String postfix, boolean smartType) {
-        if (Utilities.startsWith(kw, env.getPrefix()))
+        if (startsWith(env, kw))
 //            results.add(JavaCompletionItem.createKeywordItem(kw, postfix, anchorOffset, smartType));
             results.add(JavaCompletionItem.createKeywordItem(kw, postfix, env.getOffset(), smartType));
     }
@@ -3638,7 +3789,6 @@ public final class JavaCompletionQuery {
     private void addKeywordsForCU(Env env) {
         List<String> kws = new ArrayList<>();
         int offset = env.getOffset();
-        String prefix = env.getPrefix();
         CompilationUnitTree cu = env.getRoot();
         SourcePositions sourcePositions = env.getSourcePositions();
         kws.add(ABSTRACT_KEYWORD);
@@ -3675,17 +3825,16 @@ public final class JavaCompletionQuery {
                 kws.add(PACKAGE_KEYWORD);
         }
         for (String kw : kws) {
-            if (Utilities.startsWith(kw, prefix))
+            if (startsWith(env, kw))
 //                results.add(JavaCompletionItem.createKeywordItem(kw, SPACE, anchorOffset, false));
                 results.add(JavaCompletionItem.createKeywordItem(kw, SPACE, offset, false));
         }
     }
 
     private void addKeywordsForClassBody(Env env) {
-        String prefix = env.getPrefix();
         int offset = env.getOffset();
         for (String kw : CLASS_BODY_KEYWORDS)
-            if (Utilities.startsWith(kw, prefix))
+            if (startsWith(env, kw))
 //                results.add(JavaCompletionItem.createKeywordItem(kw, SPACE, anchorOffset, false));
                 results.add(JavaCompletionItem.createKeywordItem(kw, SPACE, offset, false));
 //        if (env.getInfo().getSourceVersion().compareTo(SourceVersion.RELEASE_8) >= 0
@@ -3697,19 +3846,18 @@ public final class JavaCompletionQuery {
     }
 
     private void addKeywordsForBlock(Env env) {
-        String prefix = env.getPrefix();
         int offset = env.getOffset();
         for (String kw : STATEMENT_KEYWORDS) {
-            if (Utilities.startsWith(kw, prefix))
+            if (startsWith(env, kw))
 //                results.add(JavaCompletionItem.createKeywordItem(kw, null, anchorOffset, false));
                 results.add(JavaCompletionItem.createKeywordItem(kw, null, offset, false));
         }
         for (String kw : BLOCK_KEYWORDS) {
-            if (Utilities.startsWith(kw, prefix))
+            if (startsWith(env, kw))
 //                results.add(JavaCompletionItem.createKeywordItem(kw, SPACE, anchorOffset, false));
                 results.add(JavaCompletionItem.createKeywordItem(kw, SPACE, offset, false));
         }
-        if (Utilities.startsWith(RETURN_KEYWORD, prefix)) {
+        if (startsWith(env, RETURN_KEYWORD)) {
             TreePath tp = Utilities.getPathElementOfKind(EnumSet.of(Tree.Kind.METHOD, Tree.Kind.LAMBDA_EXPRESSION), env.getPath());
             String postfix = SPACE;
             if (tp != null) {
@@ -3747,14 +3895,14 @@ public final class JavaCompletionQuery {
                     }
                     if (! caseAdded && (lastCase == null || lastCase.getExpression() != null)) {
                         caseAdded = true;
-                        if (Utilities.startsWith(CASE_KEYWORD, prefix))
+                        if (startsWith(env, CASE_KEYWORD))
 //                            results.add(JavaCompletionItem.createKeywordItem(CASE_KEYWORD, SPACE, anchorOffset, false));
                             results.add(JavaCompletionItem.createKeywordItem(CASE_KEYWORD, SPACE, offset, false));
-                        if (Utilities.startsWith(DEFAULT_KEYWORD, prefix))
+                        if (startsWith(env, DEFAULT_KEYWORD))
 //                            results.add(JavaCompletionItem.createKeywordItem(DEFAULT_KEYWORD, COLON, anchorOffset, false));
                             results.add(JavaCompletionItem.createKeywordItem(DEFAULT_KEYWORD, COLON, offset, false));
                     }
-                    if (!breakAdded && Utilities.startsWith(BREAK_KEYWORD, prefix)) {
+                    if (!breakAdded && startsWith(env, BREAK_KEYWORD)) {
                         breakAdded = true;
 //                        results.add(JavaCompletionItem.createKeywordItem(BREAK_KEYWORD, withinLabeledStatement(env) ? null : SEMI, anchorOffset, false));
                         results.add(JavaCompletionItem.createKeywordItem(BREAK_KEYWORD, withinLabeledStatement(env) ? null : SEMI, offset, false));
@@ -3764,12 +3912,12 @@ public final class JavaCompletionQuery {
                 case ENHANCED_FOR_LOOP:
                 case FOR_LOOP:
                 case WHILE_LOOP:
-                    if (! breakAdded && Utilities.startsWith(BREAK_KEYWORD, prefix)) {
+                    if (! breakAdded && startsWith(env, BREAK_KEYWORD)) {
                         breakAdded = true;
 //                        results.add(JavaCompletionItem.createKeywordItem(BREAK_KEYWORD, withinLabeledStatement(env) ? null : SEMI, anchorOffset, false));
                         results.add(JavaCompletionItem.createKeywordItem(BREAK_KEYWORD, withinLabeledStatement(env) ? null : SEMI, offset, false));
                     }
-                    if (!continueAdded && Utilities.startsWith(CONTINUE_KEYWORD, prefix)) {
+                    if (!continueAdded && startsWith(env, CONTINUE_KEYWORD)) {
                         continueAdded = true;
 //                        results.add(JavaCompletionItem.createKeywordItem(CONTINUE_KEYWORD, withinLabeledStatement(env) ? null : SEMI, anchorOffset, false));
                         results.add(JavaCompletionItem.createKeywordItem(CONTINUE_KEYWORD, withinLabeledStatement(env) ? null : SEMI, offset, false));
@@ -3781,19 +3929,18 @@ public final class JavaCompletionQuery {
     }
 
     private void addKeywordsForStatement(Env env) {
-        String prefix = env.getPrefix();
         int offset = env.getOffset();
         for (String kw : STATEMENT_KEYWORDS) {
-            if (Utilities.startsWith(kw, prefix))
+            if (startsWith(env, kw))
 //                results.add(JavaCompletionItem.createKeywordItem(kw, null, anchorOffset, false));
                 results.add(JavaCompletionItem.createKeywordItem(kw, null, offset, false));
         }
         for (String kw : STATEMENT_SPACE_KEYWORDS) {
-            if (Utilities.startsWith(kw, prefix))
+            if (startsWith(env, kw))
 //                results.add(JavaCompletionItem.createKeywordItem(kw, SPACE, anchorOffset, false));
                 results.add(JavaCompletionItem.createKeywordItem(kw, SPACE, offset, false));
         }
-        if (Utilities.startsWith(RETURN_KEYWORD, prefix)) {
+        if (startsWith(env, RETURN_KEYWORD)) {
             TreePath tp = Utilities.getPathElementOfKind(EnumSet.of(Tree.Kind.METHOD, Tree.Kind.LAMBDA_EXPRESSION), env.getPath());
             String postfix = SPACE;
             if (tp != null) {
@@ -3821,11 +3968,11 @@ public final class JavaCompletionQuery {
                 case ENHANCED_FOR_LOOP:
                 case FOR_LOOP:
                 case WHILE_LOOP:
-                    if (Utilities.startsWith(CONTINUE_KEYWORD, prefix))
+                    if (startsWith(env, CONTINUE_KEYWORD))
 //                        results.add(JavaCompletionItem.createKeywordItem(CONTINUE_KEYWORD, SEMI, anchorOffset, false));
                         results.add(JavaCompletionItem.createKeywordItem(CONTINUE_KEYWORD, SEMI, offset, false));
                 case SWITCH:
-                    if (Utilities.startsWith(BREAK_KEYWORD, prefix))
+                    if (startsWith(env, BREAK_KEYWORD))
 //                        results.add(JavaCompletionItem.createKeywordItem(BREAK_KEYWORD, SEMI, anchorOffset, false));
                         results.add(JavaCompletionItem.createKeywordItem(BREAK_KEYWORD, SEMI, offset, false));
                     break;
@@ -3835,7 +3982,6 @@ public final class JavaCompletionQuery {
     }
 
     private void addValueKeywords(Env env) throws IOException {
-        String prefix = env.getPrefix();
         int offset = env.getOffset();
         boolean smartType = false;
         if (queryType == COMPLETION_QUERY_TYPE) {
@@ -3849,32 +3995,30 @@ public final class JavaCompletionQuery {
                 }
             }
         }
-        if (Utilities.startsWith(FALSE_KEYWORD, prefix))
+        if (startsWith(env, FALSE_KEYWORD))
 //            results.add(JavaCompletionItem.createKeywordItem(FALSE_KEYWORD, null, anchorOffset, smartType));
             results.add(JavaCompletionItem.createKeywordItem(FALSE_KEYWORD, null, offset, smartType));
-        if (Utilities.startsWith(TRUE_KEYWORD, prefix))
+        if (startsWith(env, TRUE_KEYWORD))
 //            results.add(JavaCompletionItem.createKeywordItem(TRUE_KEYWORD, null, anchorOffset, smartType));
             results.add(JavaCompletionItem.createKeywordItem(TRUE_KEYWORD, null, offset, smartType));
-        if (Utilities.startsWith(NULL_KEYWORD, prefix))
+        if (startsWith(env, NULL_KEYWORD))
 //            results.add(JavaCompletionItem.createKeywordItem(NULL_KEYWORD, null, anchorOffset, false));
             results.add(JavaCompletionItem.createKeywordItem(NULL_KEYWORD, null, offset, false));
-        if (Utilities.startsWith(NEW_KEYWORD, prefix))
+        if (startsWith(env, NEW_KEYWORD))
 //            results.add(JavaCompletionItem.createKeywordItem(NEW_KEYWORD, SPACE, anchorOffset, false));
             results.add(JavaCompletionItem.createKeywordItem(NEW_KEYWORD, SPACE, offset, false));
     }
 
     private void addPrimitiveTypeKeywords(Env env) {
-        String prefix = env.getPrefix();
         int offset = env.getOffset();
         for (String kw : PRIM_KEYWORDS) {
-            if (Utilities.startsWith(kw, prefix))
+            if (startsWith(env, kw))
 //                results.add(JavaCompletionItem.createKeywordItem(kw, null, anchorOffset, false));
                 results.add(JavaCompletionItem.createKeywordItem(kw, null, offset, false));
         }
     }
 
     private void addClassModifiers(Env env, Set<Modifier> modifiers) {
-        String prefix = env.getPrefix();
         int offset = env.getOffset();
         List<String> kws = new ArrayList<>();
         if (!modifiers.contains(PUBLIC) && !modifiers.contains(PRIVATE)) {
@@ -3888,14 +4032,13 @@ public final class JavaCompletionQuery {
         kws.add(INTERFACE_KEYWORD);
         kws.add(ENUM_KEYWORD);
         for (String kw : kws) {
-            if (Utilities.startsWith(kw, prefix))
+            if (startsWith(env, kw))
 //                results.add(JavaCompletionItem.createKeywordItem(kw, SPACE, anchorOffset, false));
                 results.add(JavaCompletionItem.createKeywordItem(kw, SPACE, offset, false));
         }
     }
 
     private void addMemberModifiers(Env env, Set<Modifier> modifiers, boolean isLocal) {
-        String prefix = env.getPrefix();
         int offset = env.getOffset();
         List<String> kws = new ArrayList<>();
         if (isLocal) {
@@ -3944,12 +4087,12 @@ public final class JavaCompletionQuery {
             kws.add(ENUM_KEYWORD);
         }
         for (String kw : kws) {
-            if (Utilities.startsWith(kw, prefix))
+            if (startsWith(env, kw))
 //                results.add(JavaCompletionItem.createKeywordItem(kw, SPACE, anchorOffset, false));
                 results.add(JavaCompletionItem.createKeywordItem(kw, SPACE, offset, false));
         }
         for (String kw : PRIM_KEYWORDS) {
-            if (Utilities.startsWith(kw, prefix))
+            if (startsWith(env, kw))
 //                results.add(JavaCompletionItem.createKeywordItem(kw, SPACE, anchorOffset, false));
                 results.add(JavaCompletionItem.createKeywordItem(kw, SPACE, offset, false));
         }
@@ -5132,7 +5275,14 @@ public final class JavaCompletionQuery {
         info.toPhase(Phase.PARSED);
         if (queryOffset < 0 || queryOffset > info.getText().length())
             return null;
-        String prefix = null;
+        PreparedEnv prepared = (PreparedEnv)info.getCachedValue(PreparedEnv.class);
+        if (prepared != null) {
+            // the fake trees of the environment must not be attributed again, use it once
+            info.putCachedValue(PreparedEnv.class, null);
+            if (prepared.offset == queryOffset)
+                return new Env(prepared.offset, queryPrefix, info, prepared.path, prepared.sourcePositions, prepared.scope);
+        }
+        String prefix = queryPrefix;
 //        if (offset > 0) {
 //            if (queryType != DOCUMENTATION_QUERY_TYPE) {
 //                TokenSequence<JavaTokenId> ts = controller.getTokenHierarchy().tokenSequence(JavaTokenId.language());
@@ -5420,15 +5570,7 @@ public final class JavaCompletionQuery {
     }
 
     private boolean startsWith(Env env, String theString) {
-        String prefix = env.getPrefix();
-        return startsWith(env, theString, prefix);
-    }
-
-    private boolean startsWith(Env env, String theString, String prefix) {
-        return env.isCamelCasePrefix() ? Utilities.isCaseSensitive() ?
-            Utilities.startsWithCamelCase(theString, prefix) :
-            Utilities.startsWithCamelCase(theString, prefix) || Utilities.startsWith(theString, prefix) :
-            Utilities.startsWith(theString, prefix);
+        return env.getMatcher().matches(theString);
     }
 
     private boolean withinBounds(Env env, TypeMirror type, List<? extends TypeMirror> bounds) {
@@ -5488,20 +5630,28 @@ public final class JavaCompletionQuery {
         }
     }
 
-    private static boolean isCamelCasePrefix(String prefix) {
-        if (prefix == null || prefix.length() < 2 || prefix.charAt(0) == '"')
-            return false;
-        for (int i = 1; i < prefix.length(); i++) {
-            if (Character.isUpperCase(prefix.charAt(i)))
-                    return true;
+    /**
+     * A completion environment computed by {@link #prepare}, without the query state.
+     * It does not depend on the prefix, which is typed after the offset.
+     */
+    private static final class PreparedEnv {
+        private final int offset;
+        private final TreePath path;
+        private final SourcePositions sourcePositions;
+        private final Scope scope;
+
+        private PreparedEnv(int offset, TreePath path, SourcePositions sourcePositions, Scope scope) {
+            this.offset = offset;
+            this.path = path;
+            this.sourcePositions = sourcePositions;
+            this.scope = scope;
         }
-        return false;
     }
 
     private class Env {
         private int offset;
         private String prefix;
-        private boolean isCamelCasePrefix;
+        private NameMatcher matcher;
         private CompilationInfo info;
         private TreePath path;
         private SourcePositions sourcePositions;
@@ -5521,7 +5671,7 @@ public final class JavaCompletionQuery {
         private Env(int offset, String prefix, CompilationInfo info, TreePath path, SourcePositions sourcePositions, Scope scope) {
             this.offset = offset;
             this.prefix = prefix;
-            this.isCamelCasePrefix = JavaCompletionQuery.isCamelCasePrefix(prefix);
+            this.matcher = settings.createMatcher(prefix);
             this.info = info;
             this.path = path;
             this.sourcePositions = sourcePositions;
@@ -5537,7 +5687,11 @@ public final class JavaCompletionQuery {
         }
 
         public boolean isCamelCasePrefix() {
-            return isCamelCasePrefix;
+            return matcher.isCamelCase();
+        }
+
+        public NameMatcher getMatcher() {
+            return matcher;
         }
 
         public CompilationInfo getInfo() {
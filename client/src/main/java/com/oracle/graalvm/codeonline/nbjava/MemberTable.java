@@ -0,0 +1,240 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.nbjava;
+
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Symbol.ClassSymbol;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.JavaFileObject;
+
+/**
+ * Flattened public fields and methods of a platform type, shared by all queries.
+ * <p>
+ * A table is built from javac on first use of the type as a receiver and then
+ * answers member-select completion on instances of the type without walking
+ * the inheritance chain, checking hiding and accessibility, or building names.
+ * Only non-generic types are tabulated; members of generic instantiations
+ * depend on the type arguments and are left to javac.
+ */
+final class MemberTable {
+    private static final int MAX_TABLES = 512;
+
+    private static final ConcurrentHashMap<String, MemberTable> tables = new ConcurrentHashMap<>();
+
+    private final List<Member> members;
+    private final boolean hasInnerClass;
+
+    private MemberTable(List<Member> members, boolean hasInnerClass) {
+        this.members = members;
+        this.hasInnerClass = hasInnerClass;
+    }
+
+    /**
+     * All public fields, enum constants and methods of the type, including static ones.
+     */
+    List<Member> getMembers() {
+        return members;
+    }
+
+    /**
+     * Whether the type has a non-static member class, i.e. {@code new} may follow the receiver.
+     */
+    boolean hasInnerClass() {
+        return hasInnerClass;
+    }
+
+    /**
+     * Returns the member table for an instance receiver of the given type.
+     * @param info the current compilation
+     * @param type the type of the receiver
+     * @param enclClass the class enclosing the completion site
+     * @return the table or {@code null} if the members have to be computed by javac,
+     * e.g. for generic types or when protected or package-private members may be accessible
+     */
+    static MemberTable get(CompilationInfo info, TypeMirror type, TypeElement enclClass) {
+        if (type.getKind() != TypeKind.DECLARED || !((DeclaredType)type).getTypeArguments().isEmpty())
+            return null;
+        TypeElement te = (TypeElement)((DeclaredType)type).asElement();
+        if (!(te instanceof ClassSymbol) || !te.getTypeParameters().isEmpty() || !isPublicApi(te) || !isPlatformElement(te))
+            return null;
+        if (enclClass == null || !isOutsider(info, te, enclClass))
+            return null;
+        String key = ((ClassSymbol)te).flatname.toString();
+        MemberTable table = tables.get(key);
+        if (table == null) {
+            table = build(info, te);
+            if (tables.size() >= MAX_TABLES)
+                tables.clear();
+            MemberTable prev = tables.putIfAbsent(key, table);
+            if (prev != null)
+                table = prev;
+        }
+        return table;
+    }
+
+    /**
+     * A public top level or static nested type, enclosed only by such types.
+     */
+    private static boolean isPublicApi(TypeElement te) {
+        for (Element e = te; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            TypeElement t = (TypeElement)e;
+            if (!t.getModifiers().contains(Modifier.PUBLIC))
+                return false;
+            if (t.getNestingKind() != NestingKind.TOP_LEVEL && !t.getModifiers().contains(Modifier.STATIC))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * A type loaded from a class file, which is the same in every compilation.
+     */
+    private static boolean isPlatformElement(Element elem) {
+        if (!(elem instanceof Symbol))
+            return false;
+        ClassSymbol outermost = ((Symbol)elem).outermostClass();
+        return outermost != null && outermost.classfile != null && outermost.classfile.getKind() == JavaFileObject.Kind.CLASS;
+    }
+
+    /**
+     * Checks that only public members of the type can be accessible from the completion site:
+     * the site is in another package and no enclosing class is a supertype of the receiver.
+     */
+    private static boolean isOutsider(CompilationInfo info, TypeElement te, TypeElement enclClass) {
+        Elements elements = info.getElements();
+        Types types = info.getTypes();
+        if (elements.getPackageOf(te).getQualifiedName().contentEquals(elements.getPackageOf(enclClass).getQualifiedName()))
+            return false;
+        TypeMirror receiver = types.erasure(te.asType());
+        for (Element e = enclClass; e != null; e = e.getEnclosingElement()) {
+            if ((e.getKind().isClass() || e.getKind().isInterface()) && types.isSubtype(receiver, types.erasure(e.asType())))
+                return false;
+        }
+        return true;
+    }
+
+    private static MemberTable build(CompilationInfo info, TypeElement te) {
+        Elements elements = info.getElements();
+        Types types = info.getTypes();
+        DeclaredType type = (DeclaredType)te.asType();
+        boolean[] hasInnerClass = {false};
+        ArrayList<Member> members = new ArrayList<>();
+        for (Element e : info.getElementUtilities().getMembers(type, (member, t) -> {
+            switch (member.getKind()) {
+                case CLASS:
+                case ENUM:
+                case INTERFACE:
+                case ANNOTATION_TYPE:
+                    if (!member.getModifiers().contains(Modifier.STATIC))
+                        hasInnerClass[0] = true;
+                    return false;
+                case FIELD:
+                    if (member.getSimpleName().contentEquals("class")) //NOI18N
+                        return false;
+                case ENUM_CONSTANT:
+                case METHOD:
+                    return member.getModifiers().contains(Modifier.PUBLIC);
+            }
+            return false;
+        })) {
+            TypeMirror tm = types.asMemberOf(type, e);
+            boolean isInherited = te != e.getEnclosingElement();
+            boolean isDeprecated = elements.isDeprecated(e);
+            String ownerName = Utilities.getElementName(info, e.getEnclosingElement(), true).toString();
+            TypeMirror resultType = e.getKind() == ElementKind.METHOD ? ((ExecutableType)tm).getReturnType() : tm;
+            if (resultType.getKind() == TypeKind.ERROR)
+                continue;
+            members.add(new Member(e, ownerName, isInherited, isDeprecated, JavaCompletionItem.createPresentation(info, e, tm)));
+        }
+        members.trimToSize();
+        return new MemberTable(Collections.unmodifiableList(members), hasInnerClass[0]);
+    }
+
+    /**
+     * A member of the table; does not refer to any javac data.
+     */
+    static final class Member {
+        private final ElementKind kind;
+        private final String name;
+        private final Set<Modifier> modifiers;
+        private final String ownerName;
+        private final boolean isInherited;
+        private final boolean isDeprecated;
+        private final PresentationCache.Presentation presentation;
+
+        private Member(Element e, String ownerName, boolean isInherited, boolean isDeprecated, PresentationCache.Presentation presentation) {
+            this.kind = e.getKind();
+            this.name = e.getSimpleName().toString();
+            this.modifiers = Collections.unmodifiableSet(EnumSet.copyOf(e.getModifiers()));
+            this.ownerName = ownerName;
+            this.isInherited = isInherited;
+            this.isDeprecated = isDeprecated;
+            this.presentation = presentation;
+        }
+
+        ElementKind getKind() {
+            return kind;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        Set<Modifier> getModifiers() {
+            return modifiers;
+        }
+
+        boolean isStatic() {
+            return modifiers.contains(Modifier.STATIC);
+        }
+
+        /**
+         * The name of the declaring type as used by the include/exclude settings.
+         */
+        String getOwnerName() {
+            return ownerName;
+        }
+
+        boolean isInherited() {
+            return isInherited;
+        }
+
+        boolean isDeprecated() {
+            return isDeprecated;
+        }
+
+        PresentationCache.Presentation getPresentation() {
+            return presentation;
+        }
+    }
+}
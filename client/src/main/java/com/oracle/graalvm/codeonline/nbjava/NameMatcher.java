@@ -0,0 +1,192 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.nbjava;
+
+/**
+ * Matches completion candidates against a typed prefix without regular expressions.
+ * Prefix, camel-case ({@code NPE} matches {@code NullPointerException})
+ * and subword ({@code argex} matches {@code IllegalArgumentException}) matching
+ * are all done in a single pass over the characters of the candidate.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ * Matching a candidate does not allocate.
+ */
+public final class NameMatcher {
+    /** The candidate does not match. */
+    public static final int NO_MATCH = 0;
+    /** The prefix is a subsequence of the candidate. */
+    public static final int SUBWORDS = 1;
+    /** Each camel-case hump of the prefix starts a hump of the candidate. */
+    public static final int CAMEL_CASE = 2;
+    /** The candidate starts with the prefix, ignoring case. */
+    public static final int CASE_INSENSITIVE_PREFIX = 3;
+    /** The candidate starts with the prefix. */
+    public static final int PREFIX = 4;
+
+    private static final String ERROR = "<error>"; //NOI18N
+
+    private final String prefix;
+    private final boolean caseSensitive;
+    private final boolean camelCase;
+    private final boolean subwords;
+
+    /**
+     * @param prefix the typed prefix, {@code null} or empty matches everything
+     * @param caseSensitive whether plain prefix matching is case sensitive
+     * @param subwords whether subword matching is enabled
+     */
+    public NameMatcher(String prefix, boolean caseSensitive, boolean subwords) {
+        this.prefix = prefix == null ? "" : prefix;
+        this.caseSensitive = caseSensitive;
+        this.camelCase = isCamelCasePrefix(this.prefix);
+        this.subwords = subwords && isIdentifierPart(this.prefix);
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public boolean isCamelCase() {
+        return camelCase;
+    }
+
+    /**
+     * Matches the candidate against the prefix.
+     * @param candidate the name to check
+     * @return {@link #NO_MATCH} or one of the match kinds, a higher value is a better match
+     */
+    public int match(String candidate) {
+        if (candidate == null || candidate.isEmpty() || ERROR.equals(candidate))
+            return NO_MATCH;
+        if (prefix.isEmpty())
+            return PREFIX;
+        if (camelCase) {
+            if (candidate.startsWith(prefix))
+                return PREFIX;
+            if (startsWithCamelCase(candidate, prefix))
+                return CAMEL_CASE;
+            if (caseSensitive)
+                return NO_MATCH;
+        }
+        return matchPlain(candidate, prefix, caseSensitive, subwords);
+    }
+
+    public boolean matches(String candidate) {
+        return match(candidate) != NO_MATCH;
+    }
+
+    /**
+     * Plain prefix matching with optional subwords, as done by {@link Utilities#startsWith}.
+     */
+    static int matchPlain(String candidate, String prefix, boolean caseSensitive, boolean subwords) {
+        if (candidate.startsWith(prefix))
+            return PREFIX;
+        if (!caseSensitive && startsWithIgnoreCase(candidate, prefix))
+            return CASE_INSENSITIVE_PREFIX;
+        if (subwords && matchesSubwords(candidate, prefix))
+            return SUBWORDS;
+        return NO_MATCH;
+    }
+
+    static boolean startsWithIgnoreCase(String candidate, String prefix) {
+        int len = prefix.length();
+        if (candidate.length() < len)
+            return false;
+        for (int i = 0; i < len; i++) {
+            char c = candidate.charAt(i);
+            char p = prefix.charAt(i);
+            if (c != p && Character.toLowerCase(c) != Character.toLowerCase(p))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the prefix is a subsequence of the candidate.
+     * Lowercase characters of the prefix match either case,
+     * other characters are kept as beacons and have to match exactly
+     * (e.g. {@code sIn} matches {@code setIn} but not {@code getSecurityManager}).
+     */
+    static boolean matchesSubwords(String candidate, String prefix) {
+        int plen = prefix.length();
+        int clen = candidate.length();
+        int ci = 0;
+        for (int pi = 0; pi < plen; pi++) {
+            char p = prefix.charAt(pi);
+            char alt = Character.isLowerCase(p) ? Character.toUpperCase(p) : p;
+            for (;;) {
+                if (ci == clen)
+                    return false;
+                char c = candidate.charAt(ci++);
+                if (c == p || c == alt)
+                    break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Camel-case matching: the prefix is split in front of each uppercase character
+     * and each part has to start a hump of the candidate, e.g. {@code NuPoE} matches
+     * {@code NullPointerException}. Humps of the candidate are separated by runs of
+     * lowercase characters, digits, {@code _} and {@code $}.
+     */
+    static boolean startsWithCamelCase(String candidate, String prefix) {
+        int plen = prefix.length();
+        int clen = candidate.length();
+        if (clen == 0 || plen == 0)
+            return false;
+        int pi = 0;
+        int ci = 0;
+        for (;;) {
+            int end = pi + 1;
+            while (end < plen && !Character.isUpperCase(prefix.charAt(end)))
+                end++;
+            int len = end - pi;
+            if (!candidate.regionMatches(ci, prefix, pi, len))
+                return false;
+            ci += len;
+            if (end == plen)
+                return true;
+            while (ci < clen && isHumpPart(candidate.charAt(ci)))
+                ci++;
+            pi = end;
+        }
+    }
+
+    private static boolean isHumpPart(char c) {
+        return Character.isLowerCase(c) || c >= '0' && c <= '9' || c == '_' || c == '$';
+    }
+
+    static boolean isCamelCasePrefix(String prefix) {
+        if (prefix == null || prefix.length() < 2 || prefix.charAt(0) == '"')
+            return false;
+        for (int i = 1; i < prefix.length(); i++) {
+            if (Character.isUpperCase(prefix.charAt(i)))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean isIdentifierPart(String prefix) {
+        for (int i = 0; i < prefix.length(); i++) {
+            if (!Character.isJavaIdentifierPart(prefix.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+}
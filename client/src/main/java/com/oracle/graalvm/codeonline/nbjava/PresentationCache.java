@@ -0,0 +1,106 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.nbjava;
+
+import com.oracle.graalvm.codeonline.nbjava.JavaCompletionItem.ParamDesc;
+import java.util.HashMap;
+import java.util.List;
+import javax.lang.model.element.Element;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * Presentation strings of completion items, built once per compilation.
+ * <p>
+ * Type names, display texts and sort texts of an element only depend on the element
+ * and its type as seen from the completion site, so they are kept for the next
+ * queries on the same {@link CompilationInfo}, e.g. the next page or the request that
+ * follows a speculative completion. The cache is keyed by the identity of the element
+ * and of the type, which is only meaningful within one compilation; it is dropped
+ * with the other cached values of the compilation. The members of platform types
+ * are shared by all compilations through {@link MemberTable}.
+ */
+final class PresentationCache {
+    private final HashMap<Key, Presentation> presentations = new HashMap<>();
+
+    private PresentationCache() {
+    }
+
+    /**
+     * Returns the cache of the compilation.
+     */
+    static PresentationCache of(CompilationInfo info) {
+        PresentationCache cache = (PresentationCache)info.getCachedValue(PresentationCache.class);
+        if (cache == null) {
+            cache = new PresentationCache();
+            info.putCachedValue(PresentationCache.class, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * @param elem the element of the completion item
+     * @param type the type of the element as seen from the completion site
+     * @return the presentation or {@code null} if it has not been cached
+     */
+    Presentation get(Element elem, TypeMirror type) {
+        return presentations.get(new Key(elem, type));
+    }
+
+    void put(Element elem, TypeMirror type, Presentation presentation) {
+        presentations.put(new Key(elem, type), presentation);
+    }
+
+    private static final class Key {
+        private final Element elem;
+        private final TypeMirror type;
+
+        Key(Element elem, TypeMirror type) {
+            this.elem = elem;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key)obj;
+            return elem == other.elem && type == other.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(elem) + System.identityHashCode(type);
+        }
+    }
+
+    /**
+     * Immutable strings of one completion item.
+     */
+    static final class Presentation {
+        final List<ParamDesc> params;
+        final String typeName;
+        final String leftText;
+        final String sortText;
+
+        Presentation(List<ParamDesc> params, String typeName, String leftText, String sortText) {
+            this.params = params;
+            this.typeName = typeName;
+            this.leftText = leftText;
+            this.sortText = sortText;
+        }
+    }
+}
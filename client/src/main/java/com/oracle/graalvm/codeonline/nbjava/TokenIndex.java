@@ -0,0 +1,362 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.nbjava;
+
+import com.oracle.graalvm.codeonline.nbjava.CompilationInfo.Pair;
+import com.sun.tools.javac.parser.Scanner;
+import com.sun.tools.javac.parser.ScannerFactory;
+import com.sun.tools.javac.parser.Tokens;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Log;
+import java.net.URI;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+
+/**
+ * The tokens of one version of a source text.
+ * <p>
+ * Token kinds and offsets are kept in primitive arrays and looked up by
+ * binary search. A new version of the text is indexed by {@link #update},
+ * which relexes only from the edited region until the tokens fall back in
+ * step with the previous version and shifts the rest. Instances are immutable.
+ */
+public final class TokenIndex {
+    /**
+     * Characters the lexer may look at past the end of a token,
+     * e.g. the unicode escape {@code \}{@code uXXXX} or the last dot of an ellipsis.
+     */
+    private static final int MAX_LOOKAHEAD = 6;
+
+    private static final Tokens.TokenKind[] KINDS = Tokens.TokenKind.values();
+    private static final String[] TEXTS = new String[KINDS.length];
+
+    static {
+        for (Tokens.TokenKind kind : KINDS) {
+            switch (kind) {
+                case DOT: case COMMA: case SEMI: case LPAREN: case RPAREN:
+                case LBRACKET: case RBRACKET: case LBRACE: case RBRACE:
+                    TEXTS[kind.ordinal()] = kind.name;
+                    break;
+                default:
+                    TEXTS[kind.ordinal()] = kind.toString();
+            }
+        }
+    }
+
+    private final String text;
+    private final int size;
+    private final int[] kinds;
+    private final int[] starts;
+    private final int[] ends;
+    private final Pair<String, Integer>[] pairs;
+
+    @SuppressWarnings("unchecked")
+    private TokenIndex(String text, int size, int[] kinds, int[] starts, int[] ends) {
+        this.text = text;
+        this.size = size;
+        this.kinds = kinds;
+        this.starts = starts;
+        this.ends = ends;
+        this.pairs = new Pair[size];
+    }
+
+    /**
+     * Lexes the whole text.
+     * @param context the javac context providing the lexer
+     */
+    public static TokenIndex create(Context context, String text) {
+        Builder builder = new Builder(text.length() / 4 + 16);
+        lex(context, text, 0, builder, null, 0);
+        return builder.build(text);
+    }
+
+    /**
+     * Returns the index of a new version of the text, reusing the tokens
+     * before and after the edited region.
+     * @param context the javac context providing the lexer
+     */
+    public TokenIndex update(Context context, String newText) {
+        if (newText.equals(text))
+            return this;
+        int oldLength = text.length();
+        int newLength = newText.length();
+        int max = Math.min(oldLength, newLength);
+        int prefix = 0;
+        while (prefix < max && text.charAt(prefix) == newText.charAt(prefix))
+            prefix++;
+        int suffix = 0;
+        while (suffix < max - prefix && text.charAt(oldLength - 1 - suffix) == newText.charAt(newLength - 1 - suffix))
+            suffix++;
+
+        int first = firstEndingAtOrAfter(prefix - MAX_LOOKAHEAD);
+        // javac ends a token inside a unicode escape that starts the next one, which cannot be relexed from there
+        while (first > 0 && containsBackslash(first - 1))
+            first--;
+        int restart = first > 0 ? ends[first - 1] : 0;
+        Builder builder = new Builder(size + 16);
+        builder.addAll(this, 0, first, 0);
+        lex(context, newText, restart, builder, this, newLength - suffix);
+        return builder.build(newText);
+    }
+
+    private boolean containsBackslash(int index) {
+        for (int i = starts[index]; i < ends[index]; i++) {
+            if (text.charAt(i) == '\\')
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Lexes the text from the given offset, which must not be inside a token or comment.
+     * If a previous version is given, stops as soon as a token at or after
+     * {@code damageEnd} matches a token of that version and copies the rest.
+     */
+    private static void lex(Context context, String text, int from, Builder builder, TokenIndex previous, int damageEnd) {
+        Log log = Log.instance(context);
+        Log.DiagnosticHandler discard = new Log.DiscardDiagnosticHandler(log);
+        // javac refuses to create positioned diagnostics without a source
+        JavaFileObject prev = log.useSource(new SimpleJavaFileObject(URI.create("string:///Tokens.java"), JavaFileObject.Kind.SOURCE) { //NOI18N
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return text;
+            }
+        });
+        try {
+            Scanner s = ScannerFactory.instance(context).newScanner(text.subSequence(from, text.length()), false);
+            int delta = previous != null ? text.length() - previous.text.length() : 0;
+            int j = 0;
+            while (true) {
+                s.nextToken();
+                Tokens.Token t = s.token();
+                if (t == null || t.kind == Tokens.TokenKind.EOF)
+                    return;
+                int start = from + t.pos;
+                int end = from + t.endPos;
+                if (previous != null && start >= damageEnd) {
+                    j = previous.firstStartingAtOrAfter(start - delta, j);
+                    if (j < previous.size && previous.starts[j] + delta == start && previous.ends[j] + delta == end && previous.kinds[j] == t.kind.ordinal()) {
+                        builder.addAll(previous, j, previous.size, delta);
+                        return;
+                    }
+                }
+                builder.add(t.kind.ordinal(), start, end);
+            }
+        } finally {
+            log.useSource(prev);
+            log.popDiagnosticHandler(discard);
+        }
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Tokens.TokenKind getKind(int index) {
+        return KINDS[kinds[index]];
+    }
+
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    public int getEnd(int index) {
+        return ends[index];
+    }
+
+    /**
+     * The token in the form returned by {@link CompilationInfo#getTokens}.
+     */
+    public Pair<String, Integer> getToken(int index) {
+        Pair<String, Integer> pair = pairs[index];
+        if (pair == null)
+            pairs[index] = pair = new Pair<>(TEXTS[kinds[index]], starts[index]);
+        return pair;
+    }
+
+    /**
+     * @return the index of the first token starting at or after the offset, or {@link #size()}
+     */
+    public int firstStartingAtOrAfter(int offset) {
+        return firstStartingAtOrAfter(offset, 0);
+    }
+
+    private int firstStartingAtOrAfter(int offset, int from) {
+        int lo = from, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] < offset)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @return the index of the first token ending at or after the offset, or {@link #size()}
+     */
+    public int firstEndingAtOrAfter(int offset) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ends[mid] < offset)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Checks whether the other version of the text consists of the same tokens,
+     * i.e. it differs from this one only in whitespace and comments.
+     */
+    public boolean hasSameTokens(TokenIndex other) {
+        if (other == this)
+            return true;
+        if (other.size != size)
+            return false;
+        for (int i = 0; i < size; i++) {
+            int length = ends[i] - starts[i];
+            if (kinds[i] != other.kinds[i] || other.ends[i] - other.starts[i] != length
+                    || !text.regionMatches(starts[i], other.text, other.starts[i], length))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Maps an offset in the text of this index to the other version of the text,
+     * which must have the same tokens. Offsets within a token keep their place in
+     * the token, offsets between tokens keep their distance from the preceding token
+     * as far as the new gap allows.
+     * @see #hasSameTokens
+     */
+    public int mapOffset(TokenIndex other, int offset) {
+        int i = firstEndingAtOrAfter(offset + 1);
+        if (i < size && starts[i] <= offset)
+            return other.starts[i] + offset - starts[i];
+        return mapGapOffset(other, i, offset);
+    }
+
+    /**
+     * Maps the end offset of a range like {@link #mapOffset}, except that an offset
+     * at the end of a token stays at the end of that token, even if the next one
+     * follows immediately.
+     */
+    public int mapEndOffset(TokenIndex other, int offset) {
+        int i = firstEndingAtOrAfter(offset);
+        if (i < size && starts[i] < offset)
+            return other.starts[i] + offset - starts[i];
+        return mapGapOffset(other, i, offset);
+    }
+
+    /**
+     * Maps an offset between the token {@code i} and the one preceding it.
+     */
+    private int mapGapOffset(TokenIndex other, int i, int offset) {
+        int gapStart = i > 0 ? ends[i - 1] : 0;
+        int newGapStart = i > 0 ? other.ends[i - 1] : 0;
+        int newGapEnd = i < size ? other.starts[i] : other.text.length();
+        return newGapStart + Math.min(Math.max(offset - gapStart, 0), newGapEnd - newGapStart);
+    }
+
+    /**
+     * Returns the tokens with indexes in the given range as a view.
+     */
+    public List<Pair<String, Integer>> subList(int from, int to) {
+        return new TokenList(this, from, to);
+    }
+
+    private static final class TokenList extends AbstractList<Pair<String, Integer>> implements RandomAccess {
+        private final TokenIndex index;
+        private final int from;
+        private final int to;
+
+        private TokenList(TokenIndex index, int from, int to) {
+            this.index = index;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Pair<String, Integer> get(int i) {
+            if (i < 0 || i >= to - from)
+                throw new IndexOutOfBoundsException(String.valueOf(i));
+            return index.getToken(from + i);
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+
+    private static final class Builder {
+        private int size;
+        private int[] kinds;
+        private int[] starts;
+        private int[] ends;
+
+        private Builder(int capacity) {
+            kinds = new int[capacity];
+            starts = new int[capacity];
+            ends = new int[capacity];
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > kinds.length) {
+                capacity = Math.max(capacity, kinds.length * 2);
+                kinds = Arrays.copyOf(kinds, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+            }
+        }
+
+        private void add(int kind, int start, int end) {
+            ensureCapacity(size + 1);
+            kinds[size] = kind;
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
+
+        private void addAll(TokenIndex index, int from, int to, int delta) {
+            int count = to - from;
+            ensureCapacity(size + count);
+            System.arraycopy(index.kinds, from, kinds, size, count);
+            for (int i = 0; i < count; i++) {
+                starts[size + i] = index.starts[from + i] + delta;
+                ends[size + i] = index.ends[from + i] + delta;
+            }
+            size += count;
+        }
+
+        private TokenIndex build(String text) {
+            return new TokenIndex(text, size, kinds, starts, ends);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.nbjava;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreeScanner;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Source intervals of all trees of a compilation unit, answering offset to
+ * {@link TreePath} queries without rescanning the tree.
+ * <p>
+ * The index is built once per parsed source version and phase, see
+ * {@link CompilationInfo#getTreePositionIndex()}. A tree contains an offset
+ * if its start position is before the offset and its end position is at or
+ * after it. The deepest tree containing the offset is found by descending
+ * from the compilation unit, taking the first containing child in scan order;
+ * children with ordered, disjoint intervals are searched by bisection.
+ * Erroneous trees are skipped in the resulting paths.
+ */
+public final class TreePositionIndex {
+    private final CompilationUnitTree root;
+
+    private Tree[] trees;
+    private int[] starts;
+    private int[] ends;
+    private int[] pathParents;
+    private int[] firstChildren;
+    private int[] childCounts;
+    private boolean[] bisectable;
+    private int size;
+    private final TreePath[] paths;
+
+    TreePositionIndex(CompilationUnitTree root, SourcePositions sourcePositions) {
+        this.root = root;
+        int capacity = 256;
+        trees = new Tree[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+        pathParents = new int[capacity];
+        firstChildren = new int[capacity];
+        childCounts = new int[capacity];
+        bisectable = new boolean[capacity];
+        trees[0] = root;
+        pathParents[0] = -1;
+        size = 1;
+        ChildCollector collector = new ChildCollector();
+        ArrayList<Tree> children = new ArrayList<>();
+        for (int node = 0; node < size; node++) {
+            children.clear();
+            trees[node].accept(collector, children);
+            int first = size;
+            int pathParent = trees[node].getKind() == Tree.Kind.ERRONEOUS ? pathParents[node] : node;
+            boolean ordered = true;
+            for (Tree child : children) {
+                int start = (int)sourcePositions.getStartPosition(root, child);
+                int end = (int)sourcePositions.getEndPosition(root, child);
+                if (start >= end)
+                    continue; // never contains any offset, nor do its children for the search
+                if (size > first && ends[size - 1] > start)
+                    ordered = false;
+                add(child, start, end, pathParent);
+            }
+            firstChildren[node] = first;
+            childCounts[node] = size - first;
+            bisectable[node] = ordered;
+        }
+        paths = new TreePath[size];
+        paths[0] = new TreePath(root);
+    }
+
+    private void add(Tree tree, int start, int end, int pathParent) {
+        if (size == trees.length) {
+            int capacity = size * 2;
+            trees = Arrays.copyOf(trees, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            pathParents = Arrays.copyOf(pathParents, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            childCounts = Arrays.copyOf(childCounts, capacity);
+            bisectable = Arrays.copyOf(bisectable, capacity);
+        }
+        trees[size] = tree;
+        starts[size] = start;
+        ends[size] = end;
+        pathParents[size] = pathParent;
+        size++;
+    }
+
+    public CompilationUnitTree getCompilationUnit() {
+        return root;
+    }
+
+    /**
+     * Returns the path to the deepest tree containing the given offset,
+     * or the path of the compilation unit if no tree contains it.
+     */
+    public TreePath pathFor(int pos) {
+        int node = 0;
+        for (int child; (child = findChild(node, pos)) >= 0;)
+            node = child;
+        return pathOf(node);
+    }
+
+    private int findChild(int node, int pos) {
+        int from = firstChildren[node];
+        int to = from + childCounts[node];
+        if (bisectable[node]) {
+            int lo = from, hi = to - 1, found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (starts[mid] < pos) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found >= 0 && ends[found] >= pos ? found : -1;
+        }
+        for (int i = from; i < to; i++) {
+            if (starts[i] < pos && ends[i] >= pos)
+                return i;
+        }
+        return -1;
+    }
+
+    private TreePath pathOf(int node) {
+        if (trees[node].getKind() == Tree.Kind.ERRONEOUS)
+            return pathOf(pathParents[node]);
+        TreePath path = paths[node];
+        if (path == null)
+            paths[node] = path = new TreePath(pathOf(pathParents[node]), trees[node]);
+        return path;
+    }
+
+    /**
+     * Finds the deepest tree under the given path containing the offset,
+     * using the same rules as the index. Used for trees that are not part
+     * of the indexed compilation unit or are positioned differently.
+     */
+    static TreePath pathFor(TreePath path, int pos, SourcePositions sourcePositions) {
+        CompilationUnitTree cu = path.getCompilationUnit();
+        ChildCollector collector = new ChildCollector();
+        ArrayList<Tree> children = new ArrayList<>();
+        TreePath parent = path;
+        Tree tree = path.getLeaf();
+        while (true) {
+            children.clear();
+            tree.accept(collector, children);
+            Tree found = null;
+            for (Tree child : children) {
+                if (sourcePositions.getStartPosition(cu, child) < pos && sourcePositions.getEndPosition(cu, child) >= pos) {
+                    found = child;
+                    break;
+                }
+            }
+            if (found == null)
+                return parent;
+            if (found.getKind() != Tree.Kind.ERRONEOUS)
+                parent = new TreePath(parent, found);
+            tree = found;
+        }
+    }
+
+    /**
+     * Collects the direct children of a tree in scan order.
+     */
+    private static final class ChildCollector extends TreeScanner<Void, List<Tree>> {
+        @Override
+        public Void scan(Tree tree, List<Tree> children) {
+            if (tree != null)
+                children.add(tree);
+            return null;
+        }
+    }
+}
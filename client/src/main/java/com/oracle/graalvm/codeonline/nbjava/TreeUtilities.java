@@ -227,10 +227,12 @@ public final class TreeUtilities {
 //    }
 //
     public TreePath pathFor(int pos) {
-        return pathFor(new TreePath(info.getCompilationUnit()), pos);
+        return adjustPath(info.getTreePositionIndex().pathFor(pos), pos, info.getTrees().getSourcePositions());
     }
 
     public TreePath pathFor(TreePath path, int pos) {
+        if (path != null && path.getParentPath() == null && path.getLeaf() == info.getCompilationUnit())
+            return pathFor(pos);
         return pathFor(path, pos, info.getTrees().getSourcePositions());
     }
 
@@ -238,71 +240,13 @@ public final class TreeUtilities {
         if (info == null || path == null || sourcePositions == null)
             throw new IllegalArgumentException();
 
-        class Result extends Error {
-            TreePath path;
-            Result(TreePath path) {
-                this.path = path;
-            }
-
-            @Override
-            public synchronized Throwable fillInStackTrace() {
-                return this;
-            }
-        }
-
-        class PathFinder extends TreePathScanner<Void,Void> {
-            private int pos;
-            private SourcePositions sourcePositions;
-
-            private PathFinder(int pos, SourcePositions sourcePositions) {
-                this.pos = pos;
-                this.sourcePositions = sourcePositions;
-            }
-
-            @Override
-            public Void scan(Tree tree, Void p) {
-                if (tree != null) {
-                    if (sourcePositions.getStartPosition(getCurrentPath().getCompilationUnit(), tree) < pos && sourcePositions.getEndPosition(getCurrentPath().getCompilationUnit(), tree) >= pos) {
-                        if (tree.getKind() == Tree.Kind.ERRONEOUS) {
-                            tree.accept(this, p);
-                            throw new Result(getCurrentPath());
-                        }
-                        super.scan(tree, p);
-                        throw new Result(new TreePath(getCurrentPath(), tree));
-                    }
-                }
-                return null;
-            }
-
-//            @Override
-//            public Void visitVariable(VariableTree node, Void p) {
-//                int[] span = findNameSpan(node);
-//
-//                if (span != null && span[0] <= pos && pos < span[1]) {
-//                    throw new Result(getCurrentPath());
-//                }
-//
-//                return super.visitVariable(node, p);
-//            }
-//
-//            @Override
-//            public Void visitMethod(MethodTree node, Void p) {
-//                int[] span = findNameSpan(node);
-//
-//                if (span != null && span[0] <= pos && pos < span[1]) {
-//                    throw new Result(getCurrentPath());
-//                }
-//
-//                return super.visitMethod(node, p);
-//            }
-        }
-
-        try {
-            new PathFinder(pos, sourcePositions).scan(path, null);
-        } catch (Result result) {
-            path = result.path;
-        }
+        return adjustPath(TreePositionIndex.pathFor(path, pos, sourcePositions), pos, sourcePositions);
+    }
 
+    /**Moves the path found for the given position out of trees whose last token
+     * precedes the position, e.g. out of a block when the position follows its closing brace.
+     */
+    private TreePath adjustPath(TreePath path, int pos, SourcePositions sourcePositions) {
         if (path.getLeaf() == path.getCompilationUnit())
             return path;
         List<? extends CompilationInfo.Pair<String, Integer>> tokenList = tokensFor(path.getLeaf(), sourcePositions);
@@ -57,8 +57,6 @@ import com.sun.source.util.TreeScanner;
 
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.regex.Pattern;
 
 import javax.lang.model.element.*;
 import javax.lang.model.type.*;
@@ -76,227 +74,99 @@ public final class Utilities {
 
     private static final String ERROR = "<error>"; //NOI18N
 
-    private static boolean caseSensitive = true;
-    private static boolean showDeprecatedMembers = true;
-    private static boolean guessMethodArguments = true; //CodeCompletionPanel.GUESS_METHOD_ARGUMENTS_DEFAULT;
-    private static boolean autoPopupOnJavaIdentifierPart = false; //CodeCompletionPanel.JAVA_AUTO_POPUP_ON_IDENTIFIER_PART_DEFAULT;
-    private static boolean javaCompletionExcluderMethods = false; //CodeCompletionPanel.JAVA_COMPLETION_EXCLUDER_METHODS_DEFAULT;
-    private static boolean javaCompletionSubwords = false; //CodeCompletionPanel.JAVA_AUTO_COMPLETION_SUBWORDS_DEFAULT;
-    private static String javaCompletionAutoPopupTriggers = "."; //CodeCompletionPanel.JAVA_AUTO_COMPLETION_TRIGGERS_DEFAULT;
-    private static String javaCompletionSelectors = ".,;:([+-="; //CodeCompletionPanel.JAVA_COMPLETION_SELECTORS_DEFAULT;
-    private static String javadocCompletionAutoPopupTriggers = ".#@"; //CodeCompletionPanel.JAVADOC_AUTO_COMPLETION_TRIGGERS_DEFAULT;
-    private static String javadocCompletionSelectors = ".#"; //CodeCompletionPanel.JAVADOC_COMPLETION_SELECTORS_DEFAULT;
-
-    private static final AtomicBoolean inited = new AtomicBoolean(false);
-
-    private static String cachedPrefix = null;
-    private static Pattern cachedCamelCasePattern = null;
-    private static Pattern cachedSubwordsPattern = null;
+    private static final boolean guessMethodArguments = true; //CodeCompletionPanel.GUESS_METHOD_ARGUMENTS_DEFAULT;
+    private static final boolean autoPopupOnJavaIdentifierPart = false; //CodeCompletionPanel.JAVA_AUTO_POPUP_ON_IDENTIFIER_PART_DEFAULT;
+    private static final String javaCompletionAutoPopupTriggers = "."; //CodeCompletionPanel.JAVA_AUTO_COMPLETION_TRIGGERS_DEFAULT;
+    private static final String javaCompletionSelectors = ".,;:([+-="; //CodeCompletionPanel.JAVA_COMPLETION_SELECTORS_DEFAULT;
+    private static final String javadocCompletionAutoPopupTriggers = ".#@"; //CodeCompletionPanel.JAVADOC_AUTO_COMPLETION_TRIGGERS_DEFAULT;
+    private static final String javadocCompletionSelectors = ".#"; //CodeCompletionPanel.JAVADOC_COMPLETION_SELECTORS_DEFAULT;
 
+    /**
+     * Matches using {@link CompletionSettings#getDefault() the default settings};
+     * queries match through their own {@link NameMatcher} instead.
+     */
     public static boolean startsWith(String theString, String prefix) {
         if (theString == null || theString.length() == 0 || ERROR.equals(theString))
             return false;
         if (prefix == null || prefix.length() == 0)
             return true;
 
-        // sub word completion
-        if (javaCompletionSubwords) {
-            // example:
-            // 'out' produces '.*?[o|O].*?[u|U].*?[t|T].*?'
-            // org.openide.util.Utilities.acoh -> actionsForPath
-            // java.lang.System.out -> setOut
-            // argex -> IllegalArgumentException
-            // java.util.Collections.que -> asLifoQueue
-            // java.lang.System.sin -> setIn, getSecurityManager, setSecurityManager
-
-            // check whether user input matches the regex
-            if (!prefix.equals(cachedPrefix)) {
-                cachedCamelCasePattern = cachedSubwordsPattern = null;
-            }
-            if (cachedSubwordsPattern == null) {
-                cachedPrefix = prefix;
-                String patternString = createSubwordsPattern(prefix);
-                cachedSubwordsPattern = patternString != null ? Pattern.compile(patternString) : null;
-            }
-            if (cachedSubwordsPattern != null && cachedSubwordsPattern.matcher(theString).matches()) {
-                return true;
-            };
+        // sub word completion, examples:
+        // org.openide.util.Utilities.acoh -> actionsForPath
+        // java.lang.System.out -> setOut
+        // argex -> IllegalArgumentException
+        // java.util.Collections.que -> asLifoQueue
+        // java.lang.System.sin -> setIn, getSecurityManager, setSecurityManager
+        CompletionSettings settings = CompletionSettings.getDefault();
+        boolean subwords = settings.isSubwordSensitive() && isJavaIdentifierPart(prefix);
+        return NameMatcher.matchPlain(theString, prefix, settings.isCaseSensitive(), subwords) != NameMatcher.NO_MATCH;
+    }
+
+    private static boolean isJavaIdentifierPart(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isJavaIdentifierPart(text.charAt(i)))
+                return false;
         }
-
-        return isCaseSensitive() ? theString.startsWith(prefix) :
-            theString.toLowerCase(Locale.ENGLISH).startsWith(prefix.toLowerCase(Locale.ENGLISH));
-    }
-
-    public static String createSubwordsPattern(String prefix) {
-        StringBuilder sb = new StringBuilder(3+8*prefix.length());
-        sb.append(".*?");
-        for (int i = 0; i < prefix.length(); i++) {
-            char charAt = prefix.charAt(i);
-            if (!Character.isJavaIdentifierPart(charAt)) {
-                return null;
-            }
-            if (Character.isLowerCase(charAt)) {
-                sb.append("[");
-                sb.append(charAt);
-                sb.append(Character.toUpperCase(charAt));
-                sb.append("]");
-            } else {
-                //keep uppercase characters as beacons
-                // for example: java.lang.System.sIn -> setIn
-                sb.append(charAt);
-            }
-            sb.append(".*?");
-        }
-        return sb.toString();
+        return true;
     }
 
     public static boolean startsWithCamelCase(String theString, String prefix) {
         if (theString == null || theString.length() == 0 || prefix == null || prefix.length() == 0)
             return false;
-        if (!prefix.equals(cachedPrefix)) {
-            cachedCamelCasePattern = cachedSubwordsPattern = null;
-        }
-        if (cachedCamelCasePattern == null) {
-            StringBuilder sb = new StringBuilder();
-            int lastIndex = 0;
-            int index;
-            do {
-                index = findNextUpper(prefix, lastIndex + 1);
-                String token = prefix.substring(lastIndex, index == -1 ? prefix.length(): index);
-                sb.append(token);
-                sb.append(index != -1 ? "[\\p{javaLowerCase}\\p{Digit}_\\$]*" : ".*"); // NOI18N
-                lastIndex = index;
-            } while (index != -1);
-            cachedPrefix = prefix;
-            cachedCamelCasePattern = Pattern.compile(sb.toString());
-        }
-        return cachedCamelCasePattern.matcher(theString).matches();
-    }
-
-    private static int findNextUpper(String text, int offset) {
-        for (int i = offset; i < text.length(); i++) {
-            if (Character.isUpperCase(text.charAt(i)))
-                return i;
-        }
-        return -1;
+        return NameMatcher.startsWithCamelCase(theString, prefix);
     }
 
     public static boolean isCaseSensitive() {
-        lazyInit();
-        return caseSensitive;
-    }
-
-    public static void setCaseSensitive(boolean b) {
-        lazyInit();
-        caseSensitive = b;
+        return CompletionSettings.getDefault().isCaseSensitive();
     }
 
     public static boolean isSubwordSensitive() {
-        lazyInit();
-        return javaCompletionSubwords;
+        return CompletionSettings.getDefault().isSubwordSensitive();
     }
 
     public static boolean isShowDeprecatedMembers() {
-        lazyInit();
-        return showDeprecatedMembers;
-    }
-
-    public static void setShowDeprecatedMembers(boolean b) {
-        lazyInit();
-        showDeprecatedMembers = b;
+        return CompletionSettings.getDefault().isShowDeprecatedMembers();
     }
 
     public static boolean guessMethodArguments() {
-        lazyInit();
         return guessMethodArguments;
     }
 
     public static boolean autoPopupOnJavaIdentifierPart() {
-        lazyInit();
         return autoPopupOnJavaIdentifierPart;
     }
 
     public static String getJavaCompletionAutoPopupTriggers() {
-        lazyInit();
         return javaCompletionAutoPopupTriggers;
     }
 
     public static String getJavaCompletionSelectors() {
-        lazyInit();
         return javaCompletionSelectors;
     }
 
     public static String getJavadocCompletionAutoPopupTriggers() {
-        lazyInit();
         return javadocCompletionAutoPopupTriggers;
     }
 
     public static String getJavadocCompletionSelectors() {
-        lazyInit();
         return javadocCompletionSelectors;
     }
 
-    static private final AtomicReference<Collection<String>> excludeRef = new AtomicReference<>();
-    static private final AtomicReference<Collection<String>> includeRef = new AtomicReference<>();
-
-    private static void updateExcluder(AtomicReference<Collection<String>> existing, String updated) {
-        Collection<String> nue = new LinkedList<>();
-        if (updated == null || updated.length() == 0) {
-            existing.set(nue);
-            return;
-        }
-        String[] entries = updated.split(","); //NOI18N
-        for (String entry : entries) {
-            if (entry.length() != 0) {
-                nue.add(entry);
-            }
-        }
-        existing.set(nue);
-    }
-
     /**
-     * @return the user setting for whether the excluder should operate on methods
+     * @return the default setting for whether the excluder should operate on methods
      */
     public static boolean isExcludeMethods(){
-        lazyInit();
-        return javaCompletionExcluderMethods;
+        return CompletionSettings.getDefault().isExcludeMethods();
     }
 
     /**
      * @param fqn Fully Qualified Name (including method names). Packages names are expected to
      * end in a trailing "." except the default package.
      * @return
+     * @see CompletionSettings#isExcluded(CharSequence)
      */
     public static boolean isExcluded(final CharSequence fqn) {
-        if (fqn == null || fqn.length() == 0) {
-            return true;
-        }
-        lazyInit();
-        String s = fqn.toString();
-        Collection<String> include = includeRef.get();
-        Collection<String> exclude = excludeRef.get();
-
-        if (include != null && !include.isEmpty()) {
-            for (String entry : include) {
-                if (entry.length() > fqn.length()) {
-                    if (entry.startsWith(s)) {
-                        return false;
-                    }
-                } else if (s.startsWith(entry)) {
-                    return false;
-                }
-            }
-        }
-
-        if (exclude != null && !exclude.isEmpty()) {
-            for (String entry : exclude) {
-                if (entry.length() <= fqn.length() && s.startsWith(entry)) {
-                    return true;
-                }
-            }
-        }
-
-        return false;
+        return CompletionSettings.getDefault().isExcluded(fqn);
     }
 
 //    public static void exclude(final CharSequence fqn) {
@@ -308,11 +178,6 @@ public final class Utilities {
 //        }
 //    }
 //
-    private static void lazyInit() {
-        if (inited.compareAndSet(false, true)) {
-        }
-    }
-
 //    public static int getImportanceLevel(CompilationInfo info, ReferencesCount referencesCount, @NonNull Element element) {
 //        boolean isType = element.getKind().isClass() || element.getKind().isInterface();
 //
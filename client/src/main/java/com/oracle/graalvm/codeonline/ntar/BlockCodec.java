@@ -0,0 +1,164 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.ntar;
+
+import java.util.Arrays;
+
+/**
+ * A byte-oriented LZ77 block codec in plain Java, using the LZ4 block format.
+ * <p>
+ * A block is a sequence of sequences, each encoded as a token byte (the high
+ * nibble is the literal length, the low nibble the match length minus 4, 15
+ * meaning that more length bytes follow, each adding up to 255), the literals,
+ * and a 2-byte little-endian offset of the match. The last sequence has only
+ * literals. Decoding is a loop of array copies, which is fast even when the
+ * code is translated to JavaScript.
+ */
+final class BlockCodec {
+    private static final int MIN_MATCH = 4;
+    /** The last literals and the distance from the end a match must start before, as in LZ4. */
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_OFFSET = 0xffff;
+    private static final int HASH_LOG = 12;
+
+    private BlockCodec() {
+        throw new UnsupportedOperationException();
+    }
+
+    static byte[] compress(byte[] src) {
+        int length = src.length;
+        byte[] dst = new byte[length + length / 255 + 16];
+        int[] table = new int[1 << HASH_LOG]; // positions + 1, 0 is empty
+        int matchLimit = length - LAST_LITERALS;
+        int mfLimit = length - MF_LIMIT;
+        int anchor = 0, ip = 0, op = 0;
+        while(ip < mfLimit) {
+            int sequence = readInt(src, ip);
+            int h = hash(sequence);
+            int ref = table[h] - 1;
+            table[h] = ip + 1;
+            if(ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                ip++;
+                continue;
+            }
+            while(ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+                ip--;
+                ref--;
+            }
+            int matchLength = MIN_MATCH;
+            while(ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength])
+                matchLength++;
+            op = writeSequence(dst, op, src, anchor, ip - anchor, ip - ref, matchLength);
+            ip += matchLength;
+            anchor = ip;
+            if(ip < mfLimit)
+                table[hash(readInt(src, ip - 2))] = ip - 2 + 1;
+        }
+        op = writeLiterals(dst, op, src, anchor, length - anchor, 0);
+        return Arrays.copyOf(dst, op);
+    }
+
+    private static int writeSequence(byte[] dst, int op, byte[] src, int literalsStart, int literalsLength, int offset, int matchLength) {
+        op = writeLiterals(dst, op, src, literalsStart, literalsLength, Math.min(matchLength - MIN_MATCH, 15));
+        dst[op++] = (byte) offset;
+        dst[op++] = (byte) (offset >>> 8);
+        if(matchLength - MIN_MATCH >= 15)
+            op = writeLength(dst, op, matchLength - MIN_MATCH - 15);
+        return op;
+    }
+
+    private static int writeLiterals(byte[] dst, int op, byte[] src, int start, int length, int matchNibble) {
+        dst[op++] = (byte) (Math.min(length, 15) << 4 | matchNibble);
+        if(length >= 15)
+            op = writeLength(dst, op, length - 15);
+        System.arraycopy(src, start, dst, op, length);
+        return op + length;
+    }
+
+    private static int writeLength(byte[] dst, int op, int rest) {
+        while(rest >= 255) {
+            dst[op++] = (byte) 255;
+            rest -= 255;
+        }
+        dst[op++] = (byte) rest;
+        return op;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return b[i] & 0xff | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    /**
+     * Decodes a block.
+     * @param size the size of the decoded data
+     * @throws NtarReader.NtarException if the block is corrupt
+     */
+    static byte[] decompress(byte[] src, int offset, int length, int size) {
+        byte[] dst = new byte[size];
+        int ip = offset, end = offset + length, op = 0;
+        try {
+            for(;;) {
+                int token = src[ip++] & 0xff;
+                int literalsLength = token >>> 4;
+                if(literalsLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        literalsLength += b;
+                    } while(b == 255);
+                }
+                System.arraycopy(src, ip, dst, op, literalsLength);
+                ip += literalsLength;
+                op += literalsLength;
+                if(ip >= end)
+                    break;
+                int matchOffset = src[ip] & 0xff | (src[ip + 1] & 0xff) << 8;
+                ip += 2;
+                int matchLength = token & 0xf;
+                if(matchLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        matchLength += b;
+                    } while(b == 255);
+                }
+                matchLength += MIN_MATCH;
+                int ref = op - matchOffset;
+                if(matchOffset == 0 || ref < 0)
+                    throw new NtarReader.NtarException("Corrupt block: bad offset");
+                if(matchOffset >= matchLength) {
+                    System.arraycopy(dst, ref, dst, op, matchLength);
+                } else {
+                    // overlapping match, e.g. a run of one repeated byte
+                    for(int i = 0; i < matchLength; i++)
+                        dst[op + i] = dst[ref + i];
+                }
+                op += matchLength;
+            }
+        } catch(IndexOutOfBoundsException ex) {
+            throw new NtarReader.NtarException("Corrupt block: " + ex.getMessage());
+        }
+        if(ip != end || op != size)
+            throw new NtarReader.NtarException("Corrupt block: bad size");
+        return dst;
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.ntar;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The UTF8 constants shared by the class files of an archive.
+ * <p>
+ * Classes of one package repeat the same constant pool strings, e.g. {@code java/lang/Object},
+ * {@code Code} or common descriptors. An encoded class file is the original one in which
+ * each {@code CONSTANT_Utf8} entry with a string of the dictionary is replaced by the tag 0,
+ * which is unused in class files, and the 2-byte big-endian index of the string.
+ * Decoding restores the original bytes exactly. An encoded entry starts with a byte telling
+ * whether it is such a class file or any other content, which is stored unchanged.
+ * <p>
+ * The dictionary itself is stored as the strings, each preceded by its 2-byte big-endian
+ * length, as in a class file.
+ */
+final class ConstantPoolDictionary {
+    private static final int VERBATIM = 0;
+    private static final int CLASS_FILE = 1;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int DICTIONARY_REFERENCE = 0;
+    private static final int MAX_SIZE = 0xffff;
+
+    private final byte[][] strings;
+    /** Indexes of the strings, keyed by their bytes as ISO-8859-1 strings; only used for encoding. */
+    private final HashMap<String, Integer> indexes = new HashMap<>();
+
+    private ConstantPoolDictionary(byte[][] strings) {
+        this.strings = strings;
+    }
+
+    /**
+     * Creates the dictionary of the UTF8 constants that appear in more than one of the class files.
+     * Contents that are not class files are ignored.
+     */
+    static ConstantPoolDictionary create(Collection<byte[]> contents) {
+        HashMap<String, Integer> counts = new HashMap<>();
+        for(byte[] content : contents) {
+            int[] offsets = utf8Offsets(content);
+            if(offsets == null)
+                continue;
+            for(int i = 0; i < offsets.length - 1; i++)
+                counts.merge(utf8Key(content, offsets[i]), 1, Integer::sum);
+        }
+        ArrayList<Map.Entry<String, Integer>> shared = new ArrayList<>();
+        for(Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if(entry.getValue() > 1)
+                shared.add(entry);
+        }
+        // the most frequent strings first, in a deterministic order
+        shared.sort(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        int size = Math.min(shared.size(), MAX_SIZE);
+        ConstantPoolDictionary dictionary = new ConstantPoolDictionary(new byte[size][]);
+        for(int i = 0; i < size; i++) {
+            String key = shared.get(i).getKey();
+            dictionary.strings[i] = key.getBytes(StandardCharsets.ISO_8859_1);
+            dictionary.indexes.put(key, i);
+        }
+        return dictionary;
+    }
+
+    /**
+     * Reads a dictionary written by {@link #toByteArray}.
+     * @throws NtarReader.NtarException if the data is corrupt
+     */
+    static ConstantPoolDictionary read(byte[] data) {
+        ArrayList<byte[]> strings = new ArrayList<>();
+        int off = 0;
+        while(off < data.length) {
+            if(off + 2 > data.length)
+                throw new NtarReader.NtarException("Corrupt dictionary");
+            int length = readU2(data, off);
+            off += 2;
+            if(off + length > data.length)
+                throw new NtarReader.NtarException("Corrupt dictionary");
+            byte[] string = new byte[length];
+            System.arraycopy(data, off, string, 0, length);
+            strings.add(string);
+            off += length;
+        }
+        return new ConstantPoolDictionary(strings.toArray(new byte[0][]));
+    }
+
+    int size() {
+        return strings.length;
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for(byte[] string : strings) {
+            writeU2(out, string.length);
+            out.write(string, 0, string.length);
+        }
+        return out.toByteArray();
+    }
+
+    byte[] encode(byte[] content) {
+        int[] offsets = utf8Offsets(content);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length + 1);
+        if(offsets == null) {
+            out.write(VERBATIM);
+            out.write(content, 0, content.length);
+            return out.toByteArray();
+        }
+        out.write(CLASS_FILE);
+        int copied = 0;
+        for(int i = 0; i < offsets.length - 1; i++) {
+            Integer index = indexes.get(utf8Key(content, offsets[i]));
+            if(index == null)
+                continue;
+            out.write(content, copied, offsets[i] - copied);
+            out.write(DICTIONARY_REFERENCE);
+            writeU2(out, index);
+            copied = offsets[i] + 3 + readU2(content, offsets[i] + 1);
+        }
+        out.write(content, copied, content.length - copied);
+        return out.toByteArray();
+    }
+
+    /**
+     * Restores the original content of an encoded entry.
+     * @throws NtarReader.NtarException if the content is corrupt
+     */
+    byte[] decode(byte[] encoded) {
+        if(encoded.length == 0)
+            throw new NtarReader.NtarException("Corrupt entry: no kind");
+        if(encoded[0] == VERBATIM) {
+            byte[] content = new byte[encoded.length - 1];
+            System.arraycopy(encoded, 1, content, 0, content.length);
+            return content;
+        }
+        if(encoded[0] != CLASS_FILE)
+            throw new NtarReader.NtarException("Corrupt entry: unknown kind");
+        ByteArrayOutputStream out = new ByteArrayOutputStream(encoded.length * 2);
+        try {
+            int off = 1;
+            int count = readU2(encoded, off + 8);
+            off += 10;
+            int copied = 1;
+            for(int i = 1; i < count; i++) {
+                int tag = encoded[off];
+                if(tag == DICTIONARY_REFERENCE) {
+                    out.write(encoded, copied, off - copied);
+                    byte[] string = strings[readU2(encoded, off + 1)];
+                    out.write(CONSTANT_UTF8);
+                    writeU2(out, string.length);
+                    out.write(string, 0, string.length);
+                    off += 3;
+                    copied = off;
+                } else {
+                    int size = entrySize(encoded, off);
+                    if(size < 0)
+                        throw new NtarReader.NtarException("Corrupt entry: unknown constant " + tag);
+                    off += size;
+                    if(tag == 5 || tag == 6) // long and double take two slots
+                        i++;
+                }
+            }
+            out.write(encoded, copied, encoded.length - copied);
+        } catch(IndexOutOfBoundsException ex) {
+            throw new NtarReader.NtarException("Corrupt entry: " + ex.getMessage());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the offsets of the {@code CONSTANT_Utf8} entries of a class file followed by
+     * the end of its constant pool, or {@code null} if the content is not a class file.
+     */
+    private static int[] utf8Offsets(byte[] content) {
+        if(content.length < 10 || readU2(content, 0) != 0xcafe || readU2(content, 2) != 0xbabe)
+            return null;
+        int count = readU2(content, 8);
+        int[] offsets = new int[count + 1];
+        int size = 0;
+        int off = 10;
+        for(int i = 1; i < count; i++) {
+            if(off >= content.length)
+                return null;
+            int tag = content[off];
+            int entrySize = entrySize(content, off);
+            if(entrySize < 0 || off + entrySize > content.length)
+                return null;
+            if(tag == CONSTANT_UTF8)
+                offsets[size++] = off;
+            else if(tag == 5 || tag == 6)
+                i++;
+            off += entrySize;
+        }
+        offsets[size++] = off;
+        int[] result = new int[size];
+        System.arraycopy(offsets, 0, result, 0, size);
+        return result;
+    }
+
+    /**
+     * Returns the size of the constant pool entry at the offset including its tag, or -1 for an unknown tag.
+     */
+    private static int entrySize(byte[] b, int off) {
+        switch(b[off]) {
+            case CONSTANT_UTF8:
+                return 3 + readU2(b, off + 1);
+            case 7: // Class
+            case 8: // String
+            case 16: // MethodType
+            case 19: // Module
+            case 20: // Package
+                return 3;
+            case 15: // MethodHandle
+                return 4;
+            case 3: // Integer
+            case 4: // Float
+            case 9: // Fieldref
+            case 10: // Methodref
+            case 11: // InterfaceMethodref
+            case 12: // NameAndType
+            case 17: // Dynamic
+            case 18: // InvokeDynamic
+                return 5;
+            case 5: // Long
+            case 6: // Double
+                return 9;
+            default:
+                return -1;
+        }
+    }
+
+    private static String utf8Key(byte[] content, int off) {
+        return new String(content, off + 3, readU2(content, off + 1), StandardCharsets.ISO_8859_1);
+    }
+
+    private static int readU2(byte[] b, int off) {
+        return (b[off] & 0xff) << 8 | b[off + 1] & 0xff;
+    }
+
+    private static void writeU2(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 8);
+        out.write(value);
+    }
+}
@@ -23,10 +23,14 @@ import java.util.NoSuchElementException;
 
 /**
  * Reads a {@link com.oracle.graalvm.codeonline.ntar ntar} archive from an {@link InputStream}.
+ * Both raw and compressed archives are read; compressed entries are decoded
+ * only when their content is requested.
  */
 public final class NtarReader implements Iterable<NtarReader.Entry>, AutoCloseable {
     private final InputStream is;
     private final byte[] sizeBuf = new byte[4];
+    private boolean started, compressed;
+    private ConstantPoolDictionary dictionary;
 
     public NtarReader(InputStream is) {
         this.is = is;
@@ -47,9 +51,52 @@ public final class NtarReader implements Iterable<NtarReader.Entry>, AutoCloseab
         return true;
     }
 
-    private byte[] read() throws IOException {
+    private int size() {
         @SuppressWarnings("PointlessBitwiseExpression")
         int size = (sizeBuf[0] & 0xff) << 0 | (sizeBuf[1] & 0xff) << 8 | (sizeBuf[2] & 0xff) << 16 | (sizeBuf[3] & 0xff) << 24;
+        return size;
+    }
+
+    /**
+     * Reads the size of the next entry name, after the header of a compressed archive
+     * and the dictionary of an archive with shared constants.
+     */
+    private boolean readFirstSize() throws IOException {
+        boolean hasSize = readSize();
+        if(!started) {
+            started = true;
+            if(hasSize && size() == NtarWriter.COMPRESSED_HEADER) {
+                compressed = true;
+                hasSize = readSize();
+            } else if(hasSize && size() == NtarWriter.SHARED_CONSTANTS_HEADER) {
+                compressed = true;
+                if(!readSize())
+                    throw new NtarException("Unexpected EOF");
+                int size = readDecodedSize();
+                byte[] block = read();
+                dictionary = ConstantPoolDictionary.read(BlockCodec.decompress(block, 0, block.length, size));
+                hasSize = readSize();
+            }
+        }
+        return hasSize;
+    }
+
+    /**
+     * Returns the decoded size of a block, which has just been read, and reads the size of the block.
+     */
+    private int readDecodedSize() throws IOException {
+        int size = size();
+        if(size < 0)
+            throw new NtarException("Negative size");
+        if(!readSize())
+            throw new NtarException("Unexpected EOF");
+        return size;
+    }
+
+    private byte[] read() throws IOException {
+        int size = size();
+        if(size < 0)
+            throw new NtarException("Negative size");
         byte[] buf = new byte[size];
         int off = 0;
         while(off < size) {
@@ -71,7 +118,7 @@ public final class NtarReader implements Iterable<NtarReader.Entry>, AutoCloseab
                 if(!askedNext) {
                     askedNext = true;
                     try {
-                        hasNext = readSize();
+                        hasNext = readFirstSize();
                     } catch (IOException ex) {
                         throw new NtarException(ex);
                     }
@@ -86,9 +133,11 @@ public final class NtarReader implements Iterable<NtarReader.Entry>, AutoCloseab
                 askedNext = false;
                 try {
                     String name = new String(read());
-                    readSize();
+                    if(!readSize())
+                        throw new NtarException("Unexpected EOF");
+                    int size = compressed ? readDecodedSize() : -1;
                     byte[] content = read();
-                    return new Entry(name, content);
+                    return new Entry(name, content, size, dictionary);
                 } catch (IOException ex) {
                     throw new NtarException(ex);
                 }
@@ -107,13 +156,34 @@ public final class NtarReader implements Iterable<NtarReader.Entry>, AutoCloseab
 
     public static final class Entry {
         public final String name;
-        public final byte[] content;
+        private byte[] content;
+        /** Size of the decompressed content, -1 if the content is not encoded. */
+        private int size;
+        /** The dictionary the decompressed content refers to, if any. */
+        private ConstantPoolDictionary dictionary;
 
-        private Entry(String name, byte[] content) {
+        private Entry(String name, byte[] content, int size, ConstantPoolDictionary dictionary) {
             this.name = name;
             this.content = content;
+            this.size = size;
+            this.dictionary = dictionary;
             System.out.println(name + ": " + content.length);
         }
+
+        /**
+         * Returns the content, decoding it on the first call.
+         */
+        public synchronized byte[] getContent() {
+            if(size >= 0) {
+                content = BlockCodec.decompress(content, 0, content.length, size);
+                size = -1;
+                if(dictionary != null) {
+                    content = dictionary.decode(content);
+                    dictionary = null;
+                }
+            }
+            return content;
+        }
     }
 
     public static final class NtarException extends RuntimeException {
@@ -19,32 +19,92 @@ package com.oracle.graalvm.codeonline.ntar;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Writes a {@link com.oracle.graalvm.codeonline.ntar ntar} archive to an {@link OutputStream}.
  */
 public final class NtarWriter implements AutoCloseable {
+    /** The name size that starts a compressed archive, it is never valid in a raw one. */
+    static final int COMPRESSED_HEADER = -1;
+    /** The name size that starts a compressed archive with a {@link ConstantPoolDictionary}. */
+    static final int SHARED_CONSTANTS_HEADER = -2;
+
     private final OutputStream os;
+    private final boolean compressed;
+    /** The entries of an archive with shared constants, written on {@link #close()}. */
+    private final LinkedHashMap<String, byte[]> pending;
+
+    public NtarWriter(OutputStream os) throws IOException {
+        this(os, false);
+    }
 
-    public NtarWriter(OutputStream os) {
+    /**
+     * @param compressed whether to write a compressed archive
+     */
+    public NtarWriter(OutputStream os, boolean compressed) throws IOException {
+        this(os, compressed, false);
+    }
+
+    /**
+     * @param compressed whether to write a compressed archive
+     * @param sharedConstants whether the class files of a compressed archive share
+     *        their common constant pool strings; the entries are then kept in memory
+     *        and written when the writer is closed
+     */
+    public NtarWriter(OutputStream os, boolean compressed, boolean sharedConstants) throws IOException {
+        if(sharedConstants && !compressed)
+            throw new IllegalArgumentException("Shared constants require a compressed archive");
         this.os = new BufferedOutputStream(os);
+        this.compressed = compressed;
+        this.pending = sharedConstants ? new LinkedHashMap<>() : null;
+        if(compressed && !sharedConstants)
+            writeSize(COMPRESSED_HEADER);
     }
 
     private void write(byte[] bytes) throws IOException {
-        int size = bytes.length;
+        writeSize(bytes.length);
+        os.write(bytes);
+    }
+
+    private void writeSize(int size) throws IOException {
         os.write(size >> 0);
         os.write(size >> 8);
         os.write(size >> 16);
         os.write(size >> 24);
-        os.write(bytes);
+    }
+
+    private void writeBlock(byte[] contents) throws IOException {
+        writeSize(contents.length);
+        write(BlockCodec.compress(contents));
     }
 
     public void put(String name, byte[] contents) throws IOException {
+        if(pending != null) {
+            pending.put(name, contents);
+            return;
+        }
         write(name.getBytes());
-        write(contents);
+        if(compressed)
+            writeBlock(contents);
+        else
+            write(contents);
     }
 
     public void close() throws IOException {
-        os.close();
+        try {
+            if(pending != null) {
+                ConstantPoolDictionary dictionary = ConstantPoolDictionary.create(pending.values());
+                writeSize(SHARED_CONSTANTS_HEADER);
+                writeBlock(dictionary.toByteArray());
+                for(Map.Entry<String, byte[]> entry : pending.entrySet()) {
+                    write(entry.getKey().getBytes());
+                    writeBlock(dictionary.encode(entry.getValue()));
+                }
+            }
+        } finally {
+            os.close();
+        }
     }
 }
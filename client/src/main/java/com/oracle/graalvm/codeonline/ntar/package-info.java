@@ -33,6 +33,16 @@
  * </ul>
  * Note: none of the fields have to be aligned.
  * <p>
+ * A compressed archive starts with the 32bit little-endian integer -1, which is not a valid N.
+ * Each of its entries has an additional field U (4 bytes, the size of the decoded content)
+ * between name and M, and its content is a block in the LZ4 block format, see {@code BlockCodec}.
+ * The codec is implemented in Java for the same reason as the format.
+ * <p>
+ * A compressed archive with shared constants starts with the integer -2 instead, followed by
+ * a dictionary of the constant pool strings common to its class files, stored as U and M and
+ * a block like an entry without a name. The decoded content of each entry refers to the
+ * dictionary, see {@code ConstantPoolDictionary}, and is expanded back to the original class file.
+ * <p>
  * Each archive file corresponds to a Java package,
  * and each its entry corresponds to a class in that package.
  * Entry name is the binary class name without package name
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.oracle.graalvm.codeonline;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompilationCacheTest {
+    @Test
+    public void testEviction() {
+        CompilationCache cache = new CompilationCache(2, null);
+        AtomicInteger compilations = new AtomicInteger();
+        Assert.assertEquals("a1", cache.get("a", () -> "a" + compilations.incrementAndGet()));
+        Assert.assertEquals("b2", cache.get("b", () -> "b" + compilations.incrementAndGet()));
+        Assert.assertEquals("a1", cache.get("a", () -> "a" + compilations.incrementAndGet()));
+        // b is the least recently used
+        Assert.assertEquals("c3", cache.get("c", () -> "c" + compilations.incrementAndGet()));
+        Assert.assertEquals("a1", cache.get("a", () -> "a" + compilations.incrementAndGet()));
+        Assert.assertEquals("b4", cache.get("b", () -> "b" + compilations.incrementAndGet()));
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(4, cache.getMisses());
+        Assert.assertEquals(2, cache.getEvictions());
+    }
+
+    @Test
+    public void testKey() {
+        Assert.assertNotEquals(
+                CompilationCache.key("class A {}", Arrays.asList("-source", "1.8"), "1"),
+                CompilationCache.key("class A {}", Arrays.asList("-source", "1.7"), "1"));
+        Assert.assertNotEquals(
+                CompilationCache.key("class A {}", Arrays.asList("-source", "1.8"), "1"),
+                CompilationCache.key("class A {}", Arrays.asList("-source", "1.8"), "2"));
+    }
+
+    @Test
+    public void testNotCached() {
+        CompilationCache cache = new CompilationCache(2, null);
+        Assert.assertNull(cache.get("a", () -> null));
+        Assert.assertEquals("a", cache.get("a", () -> "a"));
+        Assert.assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testSingleFlight() throws InterruptedException {
+        CompilationCache cache = new CompilationCache(2, null);
+        AtomicInteger compilations = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        String[] results = new String[4];
+        Thread[] threads = new Thread[results.length];
+        for(int i = 0; i < threads.length; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> results[index] = cache.get("a", () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch(InterruptedException ex) {
+                    throw new AssertionError(ex);
+                }
+                return "a" + compilations.incrementAndGet();
+            }));
+        }
+        threads[0].start();
+        started.await();
+        for(int i = 1; i < threads.length; i++)
+            threads[i].start();
+        while(cache.getJoined() < threads.length - 1)
+            Thread.sleep(1);
+        release.countDown();
+        for(Thread thread : threads)
+            thread.join();
+        Assert.assertEquals(1, compilations.get());
+        for(String result : results)
+            Assert.assertEquals("a1", result);
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testStore() {
+        HashMap<String, String> stored = new HashMap<>();
+        CompilationCache.Store store = new CompilationCache.Store() {
+            @Override
+            public String load(String key) {
+                return stored.get(key);
+            }
+
+            @Override
+            public void save(String key, String result) {
+                stored.put(key, result);
+            }
+        };
+        Assert.assertEquals("a", new CompilationCache(1, store).get("a", () -> "a"));
+        CompilationCache cache = new CompilationCache(1, store);
+        Assert.assertEquals("a", cache.get("a", () -> "compiled again"));
+        Assert.assertEquals(1, cache.getStoreHits());
+        Assert.assertEquals(0, cache.getMisses());
+    }
+}
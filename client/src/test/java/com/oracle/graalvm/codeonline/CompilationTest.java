@@ -0,0 +1,94 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline;
+
+import com.oracle.graalvm.codeonline.files.JavaFileManagerImpl;
+import com.oracle.graalvm.codeonline.nbjava.JavaCompletionItem;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompilationTest {
+    @Test
+    public void testIsAfterDot() {
+        Assert.assertTrue(Compilation.isAfterDot("a.", 2));
+        Assert.assertTrue(Compilation.isAfterDot("a.b", 2));
+        Assert.assertTrue(Compilation.isAfterDot("a . ", 4));
+        Assert.assertTrue(Compilation.isAfterDot("a\n    .", 7));
+        Assert.assertTrue(Compilation.isAfterDot("f().", 4));
+        Assert.assertTrue(Compilation.isAfterDot("a[0].", 5));
+        Assert.assertTrue(Compilation.isAfterDot("_.", 2));
+        Assert.assertFalse(Compilation.isAfterDot("a", 1));
+        Assert.assertFalse(Compilation.isAfterDot(".", 1));
+        Assert.assertFalse(Compilation.isAfterDot("1.", 2));
+        Assert.assertFalse(Compilation.isAfterDot("\"s\".", 4));
+        Assert.assertFalse(Compilation.isAfterDot("a.b", 3));
+        Assert.assertFalse(Compilation.isAfterDot("a..", 3));
+        Assert.assertFalse(Compilation.isAfterDot("", 0));
+    }
+
+    @Test
+    public void testSpeculationIsValidFor() {
+        String text = "class A { void m(String s) { s. } }";
+        int offset = text.indexOf("s. ") + 2;
+        Compilation.RankedCompletion speculation = new Compilation.RankedCompletion(text, offset, null, new ArrayList<>());
+        Assert.assertTrue(speculation.isValidFor(text, offset, null));
+        // the identifier at the offset is being typed
+        Assert.assertTrue(speculation.isValidFor(text.replace("s. ", "s.len "), offset, "len"));
+        Assert.assertTrue(speculation.isValidFor(text.replace("s. ", "s.l "), offset, "l"));
+        Assert.assertFalse(speculation.isValidFor(text, offset + 1, null));
+        Assert.assertFalse(speculation.isValidFor(text.replace("String s", "Object s"), offset, null));
+        Assert.assertFalse(speculation.isValidFor(text.replace("s. }", "s. ;}"), offset, null));
+        Assert.assertFalse(speculation.isValidFor(text.replace("s. ", "s.x( "), offset, "x"));
+    }
+
+    @Test
+    public void testKeptCompletionNeedsLongerPrefix() {
+        String text = "class A { void m(String s) { s.l } }";
+        int offset = text.indexOf("s.l ") + 2;
+        Compilation.RankedCompletion kept = new Compilation.RankedCompletion(text, offset, "l", new ArrayList<>());
+        Assert.assertTrue(kept.isValidFor(text, offset, "l"));
+        Assert.assertTrue(kept.isValidFor(text.replace("s.l ", "s.le "), offset, "le"));
+        // the items of a longer prefix lack those matching only a shorter one
+        Assert.assertFalse(kept.isValidFor(text.replace("s.l ", "s. "), offset, ""));
+        Assert.assertFalse(kept.isValidFor(text.replace("s.l ", "s.i "), offset, "i"));
+    }
+
+    @Test
+    public void testSpeculationIsServed() {
+        String text = "class A { void m(String s) { s. } }";
+        int offset = text.indexOf("s. ") + 2;
+        List<JavaCompletionItem> items = Arrays.asList(
+                JavaCompletionItem.createKeywordItem("length", null, offset, false),
+                JavaCompletionItem.createKeywordItem("isEmpty", null, offset, false),
+                JavaCompletionItem.createKeywordItem("lastIndexOf", null, offset, false));
+        Compilation.State state = new Compilation.State();
+        state.lastCompletion = new Compilation.RankedCompletion(text, offset, null, items);
+
+        // without a class path, only the speculation can answer
+        Compilation c = new Compilation(state);
+        c.setFiles(new JavaFileManagerImpl.Builder(null).addSource("Main", text.replace("s. ", "s.l ")).build());
+        Assert.assertTrue(c.completion(offset, "l", 0, 1));
+        Assert.assertEquals(Arrays.asList(items.get(0)), c.getCompletions());
+        Assert.assertTrue(c.hasMoreCompletions());
+        Assert.assertTrue(c.completion(offset, "l", 1, 10));
+        Assert.assertEquals(Arrays.asList(items.get(2)), c.getCompletions());
+        Assert.assertFalse(c.hasMoreCompletions());
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline;
+
+import com.oracle.graalvm.codeonline.nbjava.TokenIndex;
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.util.Context;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompileResultTest {
+    private static final String SOURCE = "class A {\n    int x = y;\n}\n";
+
+    private final Context context = createContext();
+
+    private static Context createContext() {
+        Context context = new Context();
+        JavacFileManager.preRegister(context);
+        return context;
+    }
+
+    /**
+     * An error on the given text, with the line and column javac would report for a text without tabs.
+     */
+    private static Diagnostic<JavaFileObject> error(String source, String text, String message) {
+        int start = source.indexOf(text);
+        int line = 1, lineStart = 0;
+        for(int i = 0; i < start; i++) {
+            if(source.charAt(i) == '\n') {
+                line++;
+                lineStart = i + 1;
+            }
+        }
+        return new TestDiagnostic(Diagnostic.Kind.ERROR, start, start, start + text.length(), line, start - lineStart + 1, message);
+    }
+
+    private CompileResult shift(String oldSource, String newSource, Diagnostic<?>... diagnostics) {
+        CompileResult result = CompileResult.of(TokenIndex.create(context, oldSource), false, Arrays.asList(diagnostics));
+        TokenIndex newTokens = TokenIndex.create(context, newSource);
+        Assert.assertTrue(result.isReusableFor(newTokens));
+        CompileResult shifted = result.shiftTo(newTokens);
+        Assert.assertSame(newTokens, shifted.getTokens());
+        Assert.assertFalse(shifted.isSuccess());
+        return shifted;
+    }
+
+    private static void assertDiagnostic(Diagnostic<?> expected, Diagnostic<?> actual) {
+        Assert.assertEquals(expected.getKind(), actual.getKind());
+        Assert.assertEquals(expected.getPosition(), actual.getPosition());
+        Assert.assertEquals(expected.getStartPosition(), actual.getStartPosition());
+        Assert.assertEquals(expected.getEndPosition(), actual.getEndPosition());
+        Assert.assertEquals(expected.getLineNumber(), actual.getLineNumber());
+        Assert.assertEquals(expected.getColumnNumber(), actual.getColumnNumber());
+        Assert.assertEquals(expected.getCode(), actual.getCode());
+        Assert.assertEquals(expected.getMessage(Locale.ROOT), actual.getMessage(Locale.ROOT));
+    }
+
+    @Test
+    public void testIsReusableFor() {
+        CompileResult result = CompileResult.of(TokenIndex.create(context, SOURCE), true, Collections.emptyList());
+        Assert.assertTrue(result.isReusableFor(TokenIndex.create(context, SOURCE)));
+        Assert.assertTrue(result.isReusableFor(TokenIndex.create(context, "class A { int x = y; } // y is undefined")));
+        Assert.assertFalse(result.isReusableFor(TokenIndex.create(context, "class A {\n    int x = z;\n}\n")));
+        Assert.assertFalse(result.isReusableFor(TokenIndex.create(context, "class A {\n    int x = y;;\n}\n")));
+    }
+
+    @Test
+    public void testDeprecatedIsNotReused() {
+        String deprecated = "class A {\n    /** @deprecated */\n    int x = y;\n}\n";
+        CompileResult result = CompileResult.of(TokenIndex.create(context, deprecated), true, Collections.emptyList());
+        Assert.assertFalse(result.isReusableFor(TokenIndex.create(context, deprecated)));
+        Assert.assertFalse(result.isReusableFor(TokenIndex.create(context, "class A {\n    /** */\n    int x = y;\n}\n")));
+        result = CompileResult.of(TokenIndex.create(context, SOURCE), true, Collections.emptyList());
+        Assert.assertFalse(result.isReusableFor(TokenIndex.create(context, "class A {\n    /** @deprecated */ int x = y;\n}\n")));
+    }
+
+    @Test
+    public void testCommentInsertedBeforeDiagnostic() {
+        String newSource = "class A {\n    /* a comment\n       on two lines */ int x = y;\n}\n";
+        List<Diagnostic> shifted = shift(SOURCE, newSource, error(SOURCE, "y", "cannot find symbol")).getDiagnostics();
+        Assert.assertEquals(1, shifted.size());
+        assertDiagnostic(error(newSource, "y", "cannot find symbol"), shifted.get(0));
+    }
+
+    @Test
+    public void testTabsChangeColumns() {
+        String newSource = "class A {\n\tint x =\ty;\n}\n";
+        List<Diagnostic> shifted = shift(SOURCE, newSource, error(SOURCE, "y", "cannot find symbol")).getDiagnostics();
+        int y = newSource.indexOf('y');
+        // the tabs expand to columns 9 and 17
+        assertDiagnostic(new TestDiagnostic(Diagnostic.Kind.ERROR, y, y, y + 1, 2, 17, "cannot find symbol"), shifted.get(0));
+    }
+
+    @Test
+    public void testEndStaysAtEndOfToken() {
+        String newSource = "class A {\n    int x = y ;\n}\n";
+        List<Diagnostic> shifted = shift(SOURCE, newSource, error(SOURCE, "y", "cannot find symbol"), error(SOURCE, "x = y", "incompatible types")).getDiagnostics();
+        assertDiagnostic(error(newSource, "y", "cannot find symbol"), shifted.get(0));
+        assertDiagnostic(error(newSource, "x = y", "incompatible types"), shifted.get(1));
+    }
+
+    @Test
+    public void testDiagnosticWithoutPosition() {
+        Diagnostic<JavaFileObject> note = new TestDiagnostic(Diagnostic.Kind.NOTE, Diagnostic.NOPOS, Diagnostic.NOPOS, Diagnostic.NOPOS,
+                Diagnostic.NOPOS, Diagnostic.NOPOS, "uses unchecked operations");
+        List<Diagnostic> shifted = shift(SOURCE, " " + SOURCE, note).getDiagnostics();
+        assertDiagnostic(note, shifted.get(0));
+    }
+
+    private static final class TestDiagnostic implements Diagnostic<JavaFileObject> {
+        private final Kind kind;
+        private final long position;
+        private final long startPosition;
+        private final long endPosition;
+        private final long lineNumber;
+        private final long columnNumber;
+        private final String message;
+
+        TestDiagnostic(Kind kind, long startPosition, long position, long endPosition, long lineNumber, long columnNumber, String message) {
+            this.kind = kind;
+            this.position = position;
+            this.startPosition = startPosition;
+            this.endPosition = endPosition;
+            this.lineNumber = lineNumber;
+            this.columnNumber = columnNumber;
+            this.message = message;
+        }
+
+        @Override
+        public Kind getKind() {
+            return kind;
+        }
+
+        @Override
+        public JavaFileObject getSource() {
+            return null;
+        }
+
+        @Override
+        public long getPosition() {
+            return position;
+        }
+
+        @Override
+        public long getStartPosition() {
+            return startPosition;
+        }
+
+        @Override
+        public long getEndPosition() {
+            return endPosition;
+        }
+
+        @Override
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        @Override
+        public long getColumnNumber() {
+            return columnNumber;
+        }
+
+        @Override
+        public String getCode() {
+            return "compiler.err.test";
+        }
+
+        @Override
+        public String getMessage(Locale locale) {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline;
+
+import com.oracle.graalvm.codeonline.json.Diag;
+import javax.tools.Diagnostic;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DiagRangeTest {
+    private static Diag error(long position, long start, long end, long line, long column) {
+        return new Diag(Diagnostic.Kind.ERROR, position, start, end, line, column, "compiler.err.cant.resolve", "cannot find symbol");
+    }
+
+    private static void assertRange(int start, int end, DiagRange range) {
+        Assert.assertEquals(start, range.start);
+        Assert.assertEquals(end, range.end);
+    }
+
+    @Test
+    public void testTabsDoNotShiftTheRange() {
+        String text = "class A {\n\tint x =\ty;\n}\n";
+        int y = text.indexOf('y');
+        // javac expands the tabs, 'y' is reported at column 17 rather than 9
+        assertRange(y, y + 1, DiagRange.of(error(y, y, y + 1, 2, 17), text));
+        int x = text.indexOf("x =");
+        assertRange(x, y + 1, DiagRange.of(error(x + 2, x, y + 1, 2, 9), text));
+    }
+
+    @Test
+    public void testEmptyRangeIsWidened() {
+        String text = "class A {\n    int x = 1\n}";
+        int end = text.indexOf("1\n") + 1;
+        // "';' expected" at the end of the line marks the last character of the line
+        assertRange(end - 1, end, DiagRange.of(error(end, end, end, 2, 14), text));
+        int x = text.indexOf('x');
+        assertRange(x, x + 1, DiagRange.of(error(x, x, x, 2, 9), text));
+        assertRange(text.length() - 1, text.length(), DiagRange.of(error(text.length(), text.length(), text.length(), 3, 2), text));
+    }
+
+    @Test
+    public void testRangeIsClipped() {
+        String text = "class A {";
+        assertRange(8, 9, DiagRange.of(error(20, 20, 30, 1, 21), text));
+        assertRange(0, 0, DiagRange.of(error(0, 0, 0, 1, 1), ""));
+    }
+
+    @Test
+    public void testNoPosition() {
+        Assert.assertNull(DiagRange.of(error(Diagnostic.NOPOS, Diagnostic.NOPOS, Diagnostic.NOPOS, Diagnostic.NOPOS, Diagnostic.NOPOS), "class A {}"));
+    }
+}
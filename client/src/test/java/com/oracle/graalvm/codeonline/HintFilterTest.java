@@ -0,0 +1,88 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline;
+
+import com.oracle.graalvm.codeonline.nbjava.CompletionSettings;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HintFilterTest {
+    private static final List<String> ITEMS = Arrays.asList("hashCode", "HashMap", "NullPointerException", "notify", "notifyAll", "IllegalArgumentException");
+
+    private static HintFilter<String> create(int[] created) {
+        return create(created, CompletionSettings.getDefault());
+    }
+
+    private static HintFilter<String> create(int[] created, CompletionSettings settings) {
+        return new HintFilter<String>(s -> s, s -> {
+            created[0]++;
+            return new StringBuilder(s);
+        }, settings);
+    }
+
+    private static void assertHints(Object[] hints, String... expected) {
+        Assert.assertEquals(expected.length, hints.length);
+        for(int i = 0; i < expected.length; i++)
+            Assert.assertEquals(expected[i], hints[i].toString());
+    }
+
+    @Test
+    public void testNarrowKeepsRanking() {
+        HintFilter<String> filter = create(new int[1]);
+        filter.reset(ITEMS, "");
+        assertHints(filter.narrow(""), ITEMS.toArray(new String[0]));
+        assertHints(filter.narrow("no"), "notify", "notifyAll");
+        assertHints(filter.narrow("notifyA"), "notifyAll");
+        assertHints(filter.narrow("n"), "notify", "notifyAll");
+    }
+
+    @Test
+    public void testCamelCaseAndSubwords() {
+        HintFilter<String> filter = create(new int[1], new CompletionSettings.Builder().setCaseSensitive(false).setSubwords(true).build());
+        filter.reset(ITEMS, "");
+        assertHints(filter.narrow("NPE"), "NullPointerException");
+        assertHints(filter.narrow("argex"), "IllegalArgumentException");
+        assertHints(filter.narrow("has"), "hashCode", "HashMap");
+    }
+
+    @Test
+    public void testHintsCreatedOnce() {
+        int[] created = new int[1];
+        HintFilter<String> filter = create(created);
+        filter.reset(ITEMS, "");
+        Object[] first = filter.narrow("not");
+        Assert.assertEquals(2, created[0]);
+        Object[] second = filter.narrow("notify");
+        Assert.assertSame(first[0], second[0]);
+        filter.narrow("");
+        Assert.assertEquals(ITEMS.size(), created[0]);
+        filter.narrow("h");
+        Assert.assertEquals(ITEMS.size(), created[0]);
+    }
+
+    @Test
+    public void testAddAll() {
+        HintFilter<String> filter = create(new int[1]);
+        filter.reset(ITEMS.subList(0, 3), "");
+        assertHints(filter.narrow("no"));
+        filter.addAll(ITEMS.subList(3, ITEMS.size()));
+        Assert.assertEquals(ITEMS.size(), filter.size());
+        assertHints(filter.narrow("no"), "notify", "notifyAll");
+    }
+}
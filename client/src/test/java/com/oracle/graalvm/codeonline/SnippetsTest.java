@@ -0,0 +1,50 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline;
+
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SnippetsTest {
+    @Test
+    public void testUnIndent() {
+        Assert.assertEquals("class A {\n    int x;\n}\n", Snippets.unIndent("    class A {\n        int x;\n    }\n    \n"));
+        Assert.assertEquals("class A {}\n", Snippets.unIndent("class A {}\n"));
+    }
+
+    @Test
+    public void testInHtml() {
+        String html = "<html><body>\n"
+                + "<textarea class=\"codeonline\">\n"
+                + "    class A {\n"
+                + "        String s = \"&lt;&amp;&gt;\";\n"
+                + "    }\n"
+                + "</textarea>\n"
+                + "<pre class='other'>not a snippet</pre>\n"
+                + "<div><PRE id=x class=\"big codeonline\">\r\n"
+                + "  class <b>B</b> {}\r\n"
+                + "</PRE></div>\n"
+                + "</body></html>\n";
+        List<Snippets.Snippet> snippets = Snippets.inHtml(html);
+        Assert.assertEquals(2, snippets.size());
+        Assert.assertEquals("class A {\n    String s = \"<&>\";\n}\n", snippets.get(0).source);
+        Assert.assertEquals("class B {}\n", snippets.get(1).source);
+        Assert.assertEquals('>', html.charAt(snippets.get(1).startTagEnd));
+        Assert.assertTrue(html.startsWith("</PRE>", snippets.get(1).endTagStart));
+    }
+}
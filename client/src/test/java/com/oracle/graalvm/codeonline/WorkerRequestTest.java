@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline;
+
+import com.oracle.graalvm.codeonline.json.CompilationResult;
+import com.oracle.graalvm.codeonline.json.CompilationResultModel;
+import com.oracle.graalvm.codeonline.json.CompletionList;
+import com.oracle.graalvm.codeonline.json.CompletionListModel;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class WorkerRequestTest {
+    @Test
+    public void testKinds() {
+        Assert.assertEquals(WorkerRequest.COMPILE, WorkerRequest.kindOf(WorkerRequest.compile("?1/class A {}")));
+        Assert.assertEquals(WorkerRequest.COMPILE, WorkerRequest.kindOf(WorkerRequest.compile("/1/0//class A {}")));
+        Assert.assertEquals(WorkerRequest.COMPILE, WorkerRequest.kindOf(WorkerRequest.compile("")));
+        Assert.assertEquals(WorkerRequest.COMPLETE, WorkerRequest.kindOf(WorkerRequest.complete(1, 0, "", "?")));
+        Assert.assertEquals(WorkerRequest.PREPARE, WorkerRequest.kindOf(WorkerRequest.prepare(1, "!")));
+        Assert.assertEquals(WorkerRequest.SPECULATE, WorkerRequest.kindOf(WorkerRequest.speculate(1, "?")));
+        Assert.assertEquals(0, WorkerRequest.kindOf(""));
+    }
+
+    @Test
+    public void testPrefetchIsNotTakenForCompilation() {
+        // a snippet starting with '!' used to be prefetched, its compilation got an empty response
+        Assert.assertEquals(WorkerRequest.COMPILE, WorkerRequest.kindOf(WorkerRequest.compile("!class A {}")));
+        Assert.assertEquals(WorkerRequest.PREFETCH, WorkerRequest.kindOf(WorkerRequest.prefetch("=class A {}")));
+        CompilationResult result = CompilationResultModel.parseCompilationResult(
+                WorkerRequest.failure(WorkerRequest.compile("!class A {}"), new IllegalStateException("broken")));
+        Assert.assertFalse(result.isSuccess());
+        Assert.assertEquals("", WorkerRequest.failure(WorkerRequest.prefetch("class A {}"), new IllegalStateException("broken")));
+    }
+
+    @Test
+    public void testFields() {
+        Assert.assertArrayEquals(new String[] {"12", "100", "ab", "a/b/c"},
+                WorkerRequest.fieldsOf(WorkerRequest.complete(12, 100, "ab", "a/b/c"), 4));
+        Assert.assertArrayEquals(new String[] {"3", "0", "", "x"}, WorkerRequest.fieldsOf(WorkerRequest.complete(3, 0, "", "x"), 4));
+        Assert.assertArrayEquals(new String[] {"7", "/"}, WorkerRequest.fieldsOf(WorkerRequest.prepare(7, "/"), 2));
+        Assert.assertArrayEquals(new String[] {"7", "a./"}, WorkerRequest.fieldsOf(WorkerRequest.speculate(7, "a./"), 2));
+        try {
+            WorkerRequest.fieldsOf("?class A {}", 2);
+            Assert.fail("Missing field accepted");
+        } catch(IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMalformedRequestsAreAnswered() {
+        Assert.assertEquals("", Main.executeTask("?x/class A {}", null));
+        Assert.assertEquals("", Main.executeTask("?", null));
+        Assert.assertEquals("", Main.executeTask("", null));
+        Assert.assertEquals("", Main.executeTask("class A {}", null));
+        CompletionList completions = CompletionListModel.parseCompletionList(Main.executeTask("/x/0//class A {}", null));
+        Assert.assertFalse(completions.isSuccess());
+        Assert.assertEquals(0, completions.getItems().size());
+        CompilationResult result = CompilationResultModel.parseCompilationResult(WorkerRequest.failure(WorkerRequest.compile("class A {}"), new IllegalStateException("broken")));
+        Assert.assertFalse(result.isSuccess());
+        Assert.assertEquals(1, result.getDiagnostics().size());
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.oracle.graalvm.codeonline.build;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.stream.Stream;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ClassPathStoreTest {
+    @Test
+    public void testStubsOfOtherToolsAreNotReused() throws IOException {
+        byte[] classFile = InputStreams.readAllBytes(ClassPathStoreTest.class.getResourceAsStream("SampleClass.class"));
+        String classDigest = ClassPathStore.digest(classFile);
+        byte[] expected = MethodBodyEraser.createApiStub(classFile);
+        File directory = Files.createTempDirectory("store").toFile();
+
+        Assert.assertArrayEquals(expected, new ClassPathStore(directory, "old").getApiStub(classDigest, classFile));
+        // what an older eraser would have stored
+        byte[] stale = {1, 2, 3};
+        try(Stream<Path> files = Files.walk(directory.toPath())) {
+            for(Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator)
+                Files.write(file, stale);
+        }
+        Assert.assertArrayEquals(stale, new ClassPathStore(directory, "old").getApiStub(classDigest, classFile));
+        Assert.assertArrayEquals(expected, new ClassPathStore(directory, "new").getApiStub(classDigest, classFile));
+        Assert.assertArrayEquals(expected, new ClassPathStore(directory, "new").getApiStub(classDigest, classFile));
+    }
+
+    @Test
+    public void testJarsOfOtherToolsAreNotReused() throws IOException {
+        File directory = Files.createTempDirectory("store").toFile();
+        File jar = File.createTempFile("input", ".jar", directory);
+        ClassPathStore store = new ClassPathStore(directory, "old");
+        store.saveArchive("digest", new byte[] {1});
+        store.saveJar(jar, true, Collections.singletonList(
+                new ClassPathStore.StoredPackage("p", "digest", Collections.singletonList("C"))));
+        Assert.assertEquals(1, new ClassPathStore(directory, "old").loadJar(jar, true).size());
+        Assert.assertNull(new ClassPathStore(directory, "old").loadJar(jar, false));
+        Assert.assertNull(new ClassPathStore(directory, "new").loadJar(jar, true));
+    }
+}
@@ -16,12 +16,30 @@
 
 package com.oracle.graalvm.codeonline.build;
 
+import com.sun.source.util.JavacTask;
+import com.sun.tools.javac.api.JavacTool;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
 
 public class MethodBodyEraserTest {
     static final String SIMPLE_CLASS_NAME = "SampleClass";
@@ -53,4 +71,67 @@ public class MethodBodyEraserTest {
         Method method = loader.loadClass(CLASS_NAME).getMethod("sampleMethod", int.class);
         Assert.assertThrows(InvocationTargetException.class, () -> method.invoke(null, 42));
     }
+
+    @Test
+    public void testCreateApiStub() {
+        byte[] bytecode = MethodBodyEraser.createApiStub(origBytecode);
+        Assert.assertTrue(bytecode.length < origBytecode.length);
+        List<String> members = new ArrayList<>();
+        Object[] constant = new Object[1];
+        new ClassReader(bytecode).accept(new ClassVisitor(Opcodes.ASM6) {
+            @Override
+            public void visitSource(String source, String debug) {
+                members.add("source " + source);
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+                members.add(name);
+                if(name.equals("CONSTANT"))
+                    constant[0] = value;
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                members.add(name);
+                return new MethodVisitor(Opcodes.ASM6) {
+                    @Override
+                    public void visitCode() {
+                        members.add("code of " + name);
+                    }
+                };
+            }
+        }, 0);
+        Assert.assertEquals("[CONSTANT, hidden, <init>, sampleMethod, hiddenMethod]", members.toString());
+        Assert.assertEquals("constant", constant[0]);
+    }
+
+    @Test
+    public void testPrivateMembersStayInaccessible() throws IOException {
+        Path classPath = Files.createTempDirectory("stubs");
+        Path stub = classPath.resolve(CLASS_NAME.replace('.', '/') + ".class");
+        Files.createDirectories(stub.getParent());
+        Files.write(stub, MethodBodyEraser.createApiStub(origBytecode));
+        JavaFileObject source = new SimpleJavaFileObject(URI.create("string:///Main.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return "class Main {\n"
+                        + "    " + CLASS_NAME + " sample = new " + CLASS_NAME + "();\n"
+                        + "    int field = sample.hidden;\n"
+                        + "    int method = sample.hiddenMethod();\n"
+                        + "}\n";
+            }
+        };
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        JavacTask task = JavacTool.create().getTask(null, null, diagnostics,
+                Arrays.asList("-classpath", classPath.toString(), "-proc:none"), null, Collections.singletonList(source));
+        task.analyze();
+        List<String> codes = new ArrayList<>();
+        for(Diagnostic<? extends JavaFileObject> diag : diagnostics.getDiagnostics()) {
+            codes.add(diag.getLineNumber() + ": " + diag.getCode());
+        }
+        // as against the original class, not "cannot find symbol"
+        Assert.assertEquals("[2: compiler.err.report.access, 3: compiler.err.report.access, 4: compiler.err.report.access]", codes.toString());
+    }
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.build;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PrepareClassPathTest {
+    @Test
+    public void testDigestsOfBundledArchivesAreNotTrusted() throws IOException {
+        File available = new File(Files.createTempDirectory("extres").toFile(), "available.txt");
+        Assert.assertEquals(Collections.emptyMap(), PrepareClassPath.readDigests(available));
+        Files.write(available.toPath(), Arrays.asList(
+                "PLATFORM_CLASS_PATH-java.lang.zip aaa",
+                // a file of the same name may be left over from a build without --bundle
+                "PLATFORM_CLASS_PATH-java.util.zip classpath.bundle 0 100 bbb"), StandardCharsets.UTF_8);
+        Map<String, String> digests = PrepareClassPath.readDigests(available);
+        Assert.assertEquals(Collections.singletonMap("PLATFORM_CLASS_PATH-java.lang.zip", "aaa"), digests);
+    }
+}
@@ -17,7 +17,18 @@
 package com.oracle.graalvm.codeonline.build;
 
 public class SampleClass {
+    public static final String CONSTANT = "constant";
+
+    private int hidden;
+
+    private SampleClass() {
+    }
+
     public static int sampleMethod(int foo) {
         return foo;
     }
+
+    private int hiddenMethod() {
+        return hidden;
+    }
 }
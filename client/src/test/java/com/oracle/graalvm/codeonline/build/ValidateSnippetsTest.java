@@ -0,0 +1,89 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.build;
+
+import com.oracle.graalvm.codeonline.json.CompilationResultModel;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ValidateSnippetsTest {
+    @Test
+    public void testFindSources() throws IOException {
+        Path directory = Files.createTempDirectory("pages");
+        Files.createDirectory(directory.resolve("b"));
+        Files.write(directory.resolve("a.html"), ("<html><body>\n"
+                + "<textarea class=\"codeonline\">class A {}</textarea>\n"
+                + "<p>text</p>\n"
+                + "<pre class=\"codeonline\">\n"
+                + "class B {}\n"
+                + "</pre>\n"
+                + "</body></html>\n").getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("b/C.java"), "class C {\r\n}\r\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("b/notes.txt"), "class D {}\n".getBytes(StandardCharsets.UTF_8));
+
+        List<ValidateSnippets.Source> sources = new ArrayList<>();
+        ValidateSnippets.findSources(directory, sources);
+        Assert.assertEquals(3, sources.size());
+        assertSource(directory.resolve("a.html"), 0, 2, "class A {}", sources.get(0));
+        assertSource(directory.resolve("a.html"), 1, 4, "class B {}\n", sources.get(1));
+        assertSource(directory.resolve("b/C.java"), 0, 1, "class C {\n}\n", sources.get(2));
+    }
+
+    private static void assertSource(Path file, int index, int line, String source, ValidateSnippets.Source actual) {
+        Assert.assertEquals(file, actual.file);
+        Assert.assertEquals(index, actual.index);
+        Assert.assertEquals(line, actual.line);
+        Assert.assertEquals(source, actual.source);
+    }
+
+    @Test
+    public void testToJson() {
+        List<ValidateSnippets.Source> sources = Arrays.asList(
+                new ValidateSnippets.Source(Paths.get("dir", "a \"quoted\".html"), 0, 2, "class A {}"),
+                new ValidateSnippets.Source(Paths.get("dir", "B.java"), 0, 1, "class B {"));
+        List<String> results = Arrays.asList("{\"success\":true}", "{\"success\":false}");
+        String json = ValidateSnippets.toJson(sources, results, 1, 4, 0.5, 1.0);
+        Assert.assertEquals("{\"snippets\":["
+                + "{\"file\":" + quoted(Paths.get("dir", "a \"quoted\".html")) + ",\"index\":0,\"line\":2,\"result\":{\"success\":true}},"
+                + "{\"file\":" + quoted(Paths.get("dir", "B.java")) + ",\"index\":0,\"line\":1,\"result\":{\"success\":false}}"
+                + "],\"count\":2,\"failed\":1,\"threads\":4,\"seconds\":0.5,\"snippetsPerSecondPerCore\":1.0}", json);
+        Assert.assertEquals("{\"snippets\":[],\"count\":0,\"failed\":0,\"threads\":1,\"seconds\":0.0,\"snippetsPerSecondPerCore\":0.0}",
+                ValidateSnippets.toJson(Collections.emptyList(), Collections.emptyList(), 0, 1, 0, 0));
+    }
+
+    private static String quoted(Path file) {
+        return '"' + file.toString().replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    @Test
+    public void testFailureIsReported() {
+        String failure = CompilationResultModel.createCompilationFailure(new IllegalStateException("broken archive")).toString();
+        Assert.assertFalse(CompilationResultModel.parseCompilationResult(failure).isSuccess());
+        Assert.assertTrue(failure, failure.contains("broken archive"));
+        Assert.assertEquals(1, ValidateSnippets.countFailed(Arrays.asList(
+                CompilationResultModel.createCompilationResult(true, Collections.emptyList()).toString(), failure)));
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.oracle.graalvm.codeonline.files;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import javax.tools.StandardLocation;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ClassFilterTest {
+    @Test
+    public void testMembership() throws IOException {
+        ClassFilter.Builder builder = new ClassFilter.Builder();
+        for(int i = 0; i < 10000; i++)
+            builder.add(StandardLocation.PLATFORM_CLASS_PATH, "java.util.C" + i);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        builder.build().write(out);
+        ClassFilter filter = ClassFilter.read(new ByteArrayInputStream(out.toByteArray()));
+        for(int i = 0; i < 10000; i++)
+            Assert.assertTrue(filter.mightContain(StandardLocation.PLATFORM_CLASS_PATH, "java.util.C" + i));
+        int falsePositives = 0;
+        for(int i = 0; i < 10000; i++) {
+            if(filter.mightContain(StandardLocation.PLATFORM_CLASS_PATH, "java.util.D" + i))
+                falsePositives++;
+            if(filter.mightContain(StandardLocation.CLASS_PATH, "java.util.C" + i))
+                falsePositives++;
+        }
+        Assert.assertTrue("false positives: " + falsePositives, falsePositives < 400);
+    }
+
+    @Test
+    public void testEmpty() {
+        ClassFilter filter = new ClassFilter.Builder().build();
+        Assert.assertFalse(filter.mightContain(StandardLocation.CLASS_PATH, "A"));
+    }
+}
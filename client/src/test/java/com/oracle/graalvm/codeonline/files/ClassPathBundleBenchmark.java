@@ -0,0 +1,115 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.files;
+
+import com.oracle.graalvm.codeonline.build.InputStreams;
+import com.oracle.graalvm.codeonline.js.PlatformServices;
+import com.oracle.graalvm.codeonline.ntar.NtarReader;
+import com.oracle.graalvm.codeonline.ntar.NtarWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Compares reading and decoding the package archives of a typical compilation as separate
+ * resources and from a bundle, through a local server with a simulated latency.
+ * Not a unit test; run the main method with the test classpath:
+ * <pre>
+ * java -cp ... com.oracle.graalvm.codeonline.files.ClassPathBundleBenchmark path/to/rt.jar [latency in ms]
+ * </pre>
+ */
+public final class ClassPathBundleBenchmark {
+    /** The platform packages javac reads for a small program using collections and streams. */
+    private static final List<String> TYPICAL_PACKAGES = Arrays.asList(
+            "java.lang", "java.lang.annotation", "java.lang.invoke", "java.lang.reflect", "java.io",
+            "java.util", "java.util.function", "java.util.stream", "java.nio.charset", "java.time");
+
+    private ClassPathBundleBenchmark() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static void main(String... args) throws IOException {
+        int latency = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        TreeMap<String, TreeMap<String, byte[]>> packages = new TreeMap<>();
+        try(ZipInputStream in = new ZipInputStream(new FileInputStream(args[0]))) {
+            for(ZipEntry entry; (entry = in.getNextEntry()) != null;) {
+                String name = entry.getName();
+                if(!name.endsWith(".class"))
+                    continue;
+                int slash = name.lastIndexOf('/');
+                packages.computeIfAbsent("PLATFORM_CLASS_PATH-" + (slash < 0 ? "" : name.substring(0, slash).replace('/', '.')) + ".zip", p -> new TreeMap<>())
+                        .put(name.substring(slash + 1, name.length() - 6), InputStreams.readAllBytes(in));
+            }
+        }
+        try(RangeServer server = new RangeServer(latency)) {
+            StringBuilder separate = new StringBuilder();
+            StringBuilder bundled = new StringBuilder();
+            ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+            for(Map.Entry<String, TreeMap<String, byte[]>> p : packages.entrySet()) {
+                ByteArrayOutputStream archive = new ByteArrayOutputStream();
+                try(NtarWriter writer = new NtarWriter(archive, true, true)) {
+                    for(Map.Entry<String, byte[]> c : p.getValue().entrySet())
+                        writer.put(c.getKey(), c.getValue());
+                }
+                server.put(p.getKey(), archive.toByteArray());
+                separate.append(p.getKey()).append('\n');
+                bundled.append(p.getKey()).append(" classpath.bundle ").append(bundle.size()).append(' ').append(archive.size()).append('\n');
+                archive.writeTo(bundle);
+            }
+            server.put("separate.txt", separate.toString().getBytes());
+            server.put("bundled.txt", bundled.toString().getBytes());
+            server.put("classpath.bundle", bundle.toByteArray());
+            List<String> names = new ArrayList<>();
+            for(String p : TYPICAL_PACKAGES)
+                names.add("PLATFORM_CLASS_PATH-" + p + ".zip");
+            PlatformServices services = server.services();
+            run("separate files", server, services, "separate.txt", names, false);
+            run("bundle, on demand", server, services, "bundled.txt", names, false);
+            run("bundle, prefetched", server, services, "bundled.txt", names, true);
+        }
+    }
+
+    private static void run(String label, RangeServer server, PlatformServices services, String list, List<String> names, boolean prefetch) throws IOException {
+        int requests = server.getRequests();
+        long start = System.nanoTime();
+        ClassPathIndex index;
+        try(InputStream in = services.openExternalResource(list)) {
+            index = ClassPathIndex.read(new ByteArrayInputStream(InputStreams.readAllBytes(in)));
+        }
+        for(int compilation = 1; compilation <= 2; compilation++) {
+            if(prefetch)
+                index.fetch(services, names);
+            for(String name : names) {
+                for(NtarReader.Entry entry : index.read(services, name))
+                    entry.getContent();
+            }
+            long now = System.nanoTime();
+            System.out.printf("%s, compilation %d: %d requests, %.0f ms%n", label, compilation, server.getRequests() - requests, (now - start) / 1e6);
+            requests = server.getRequests();
+            start = now;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.files;
+
+import com.oracle.graalvm.codeonline.js.PlatformServices;
+import com.oracle.graalvm.codeonline.ntar.NtarReader;
+import com.oracle.graalvm.codeonline.ntar.NtarWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ClassPathIndexTest {
+    private static byte[] content(int length, int seed) {
+        byte[] content = new byte[length];
+        for(int i = 0; i < length; i++)
+            content[i] = (byte) (seed * i);
+        return content;
+    }
+
+    /** An archive with one class. */
+    private static byte[] archive(int length, int seed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(NtarWriter writer = new NtarWriter(out)) {
+            writer.put("C" + seed, content(length, seed));
+        }
+        return out.toByteArray();
+    }
+
+    private static void assertContent(int length, int seed, ClassPathIndex index, PlatformServices services, String name) throws IOException {
+        List<NtarReader.Entry> entries = index.read(services, name);
+        Assert.assertEquals(1, entries.size());
+        Assert.assertEquals("C" + seed, entries.get(0).name);
+        Assert.assertArrayEquals(content(length, seed), entries.get(0).getContent());
+    }
+
+    @Test
+    public void testBundledArchives() throws IOException {
+        String[] names = {"A.zip", "B.zip", "Gap.zip", "C.zip"};
+        int[] lengths = {100, 200, 40000, 50};
+        byte[][] contents = new byte[names.length][];
+        for(int i = 0; i < names.length; i++)
+            contents[i] = archive(lengths[i], i);
+        ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+        StringBuilder list = new StringBuilder();
+        for(int i = 0; i < names.length; i++) {
+            list.append(names[i]).append(" classpath.bundle ").append(bundle.size()).append(' ').append(contents[i].length).append('\n');
+            bundle.write(contents[i], 0, contents[i].length);
+        }
+        ClassPathIndex index = ClassPathIndex.read(new ByteArrayInputStream(list.toString().getBytes()));
+        try(RangeServer server = new RangeServer(0)) {
+            server.put("classpath.bundle", bundle.toByteArray());
+            PlatformServices services = server.services();
+            // A and B are adjacent, C lies beyond a large gap
+            index.fetch(services, Arrays.asList("C.zip", "A.zip", "B.zip", "Missing.zip"));
+            Assert.assertEquals(2, server.getRequests());
+            assertContent(lengths[0], 0, index, services, "A.zip");
+            assertContent(lengths[1], 1, index, services, "B.zip");
+            assertContent(lengths[3], 3, index, services, "C.zip");
+            Assert.assertEquals(2, server.getRequests());
+            assertContent(lengths[2], 2, index, services, "Gap.zip");
+            Assert.assertEquals(3, server.getRequests());
+            index.fetch(services, Arrays.asList(names));
+            Assert.assertEquals(3, server.getRequests());
+        }
+        Assert.assertFalse(index.contains("Missing.zip"));
+    }
+
+    @Test
+    public void testContainsParts() {
+        ClassPathIndex index = ClassPathIndex.read(new ByteArrayInputStream("L-a.b.zip digest\nL-.zip\n".getBytes()));
+        Assert.assertTrue(index.contains("L-", "a.b", 3, ".zip"));
+        Assert.assertTrue(index.contains("L-", "a.b.C", 3, ".zip"));
+        Assert.assertTrue(index.contains("L-", "C", 0, ".zip"));
+        Assert.assertFalse(index.contains("L-", "a.bC", 4, ".zip"));
+        Assert.assertFalse(index.contains("L-", "a", 1, ".zip"));
+        Assert.assertFalse(index.contains("M-", "a.b", 3, ".zip"));
+    }
+
+    @Test
+    public void testSeparateArchives() throws IOException {
+        ClassPathIndex index = ClassPathIndex.read(new ByteArrayInputStream("A.zip\nB.zip\n".getBytes()));
+        try(RangeServer server = new RangeServer(0)) {
+            server.put("A.zip", archive(10, 1));
+            server.put("B.zip", archive(20, 2));
+            PlatformServices services = server.services();
+            Assert.assertTrue(index.contains("B.zip"));
+            index.fetch(services, Arrays.asList("A.zip", "B.zip"));
+            Assert.assertEquals(2, server.getRequests());
+            assertContent(10, 1, index, services, "A.zip");
+            assertContent(20, 2, index, services, "B.zip");
+            Assert.assertEquals(2, server.getRequests());
+        }
+    }
+}
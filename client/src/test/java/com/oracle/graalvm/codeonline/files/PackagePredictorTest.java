@@ -0,0 +1,51 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.files;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PackagePredictorTest {
+    private static final Set<String> PACKAGES = new HashSet<>(Arrays.asList(
+            "java.lang", "java.util", "java.util.function", "java.util.stream", "java.io", "java.time", "java.net"));
+
+    @Test
+    public void testImportsAndQualifiedNames() {
+        String source = "import java.util.*;\n"
+                + "import java.util.function.Function;\n"
+                + "import static java.util.stream.Collectors . toList;\n"
+                + "public class Main {\n"
+                + "    // java.time.Instant in a comment\n"
+                + "    /* java.net.URL in a block comment */\n"
+                + "    String s = \"java.io.File in a \\\"string\\\"\";\n"
+                + "    char c = '.';\n"
+                + "    java.io.Reader r;\n"
+                + "    void run() { System.out.println(java.lang.Math.max(1, 2)); }\n"
+                + "}\n";
+        Assert.assertEquals(Arrays.asList("java.util", "java.util.function", "java.util.stream", "java.io", "java.lang"),
+                Arrays.asList(PackagePredictor.predict(source, PACKAGES::contains).toArray()));
+    }
+
+    @Test
+    public void testUnknownNames() {
+        Assert.assertTrue(PackagePredictor.predict("import org.example.Foo; class A { Foo f = x.y; }", PACKAGES::contains).isEmpty());
+        Assert.assertTrue(PackagePredictor.predict("class A { String s = \"unterminated", PACKAGES::contains).isEmpty());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.files;
+
+import com.oracle.graalvm.codeonline.js.PlatformServices;
+import com.oracle.graalvm.codeonline.js.TaskQueue;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local HTTP server standing in for the web server of the external resources.
+ * It supports single range requests, counts the requests and can delay each
+ * response to simulate the latency of a real network.
+ */
+final class RangeServer implements AutoCloseable {
+    private final HttpServer server;
+    private final Map<String, byte[]> resources = new HashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final int latencyMillis;
+
+    RangeServer(int latencyMillis) throws IOException {
+        this.latencyMillis = latencyMillis;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/extres/", this::handle);
+        server.start();
+    }
+
+    void put(String name, byte[] content) {
+        resources.put(name, content);
+    }
+
+    int getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Services reading the external resources from this server.
+     */
+    PlatformServices services() {
+        String base = "http://127.0.0.1:" + server.getAddress().getPort() + "/extres/";
+        return new PlatformServices() {
+            @Override
+            public InputStream openExternalResource(String name) throws IOException {
+                return new URL(base + name).openStream();
+            }
+
+            @Override
+            public byte[] readExternalResource(String name, long offset, int length) throws IOException {
+                HttpURLConnection connection = (HttpURLConnection) new URL(base + name).openConnection();
+                connection.setRequestProperty("Range", "bytes=" + offset + "-" + (offset + length - 1));
+                if(connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL)
+                    throw new IOException("Unexpected response " + connection.getResponseCode());
+                try(InputStream in = connection.getInputStream()) {
+                    byte[] result = new byte[length];
+                    for(int off = 0; off < length;) {
+                        int n = in.read(result, off, length - off);
+                        if(n == -1)
+                            throw new IOException("Short response");
+                        off += n;
+                    }
+                    return result;
+                }
+            }
+
+            @Override
+            public TaskQueue<String, String> getWorkerQueue() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            Thread.sleep(latencyMillis);
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        byte[] content = resources.get(exchange.getRequestURI().getPath().substring("/extres/".length()));
+        int status = 200;
+        if(content == null) {
+            status = 404;
+            content = new byte[0];
+        } else {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if(range != null && range.startsWith("bytes=")) {
+                String[] bounds = range.substring("bytes=".length()).split("-");
+                int start = Integer.parseInt(bounds[0]);
+                int end = Math.min(Integer.parseInt(bounds[1]) + 1, content.length);
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + (end - 1) + "/" + content.length);
+                content = Arrays.copyOfRange(content, start, end);
+                status = 206;
+            }
+        }
+        exchange.sendResponseHeaders(status, content.length == 0 ? -1 : content.length);
+        try(OutputStream out = exchange.getResponseBody()) {
+            out.write(content);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.nbjava;
+
+import com.sun.tools.javac.api.JavacTool;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompilationInfoTest {
+    private static final JavaFileManager FILE_MANAGER = JavacTool.create().getStandardFileManager(null, null, null);
+
+    private static CompilationInfo resolve(String source) throws IOException {
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///Main.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        CompilationInfo info = new CompilationInfo(file, FILE_MANAGER);
+        Assert.assertEquals(CompilationInfo.Phase.RESOLVED, info.toPhase(CompilationInfo.Phase.RESOLVED));
+        return info;
+    }
+
+    private static List<String> codes(CompilationInfo info, Diagnostic.Kind kind) {
+        List<String> codes = new ArrayList<>();
+        for (Diagnostic<?> diag : info.getDiagnostics()) {
+            if (diag.getKind() == kind)
+                codes.add(diag.getCode());
+        }
+        return codes;
+    }
+
+    @Test
+    public void testDeferredNotesAreReported() throws IOException {
+        CompilationInfo info = resolve("import java.util.*;\n"
+                + "class Main {\n"
+                + "    void m() {\n"
+                + "        new Date(2020, 1, 1);\n"
+                + "        List l = new ArrayList();\n"
+                + "        l.add(1);\n"
+                + "    }\n"
+                + "}\n");
+        Assert.assertEquals(Arrays.asList("compiler.note.deprecated.filename", "compiler.note.deprecated.recompile",
+                "compiler.note.unchecked.filename", "compiler.note.unchecked.recompile"), codes(info, Diagnostic.Kind.NOTE));
+        // resolving again reports nothing twice
+        info.toPhase(CompilationInfo.Phase.RESOLVED);
+        Assert.assertEquals(4, codes(info, Diagnostic.Kind.NOTE).size());
+    }
+
+    @Test
+    public void testNoNotesForCleanSource() throws IOException {
+        CompilationInfo info = resolve("import java.util.*;\n"
+                + "class Main {\n"
+                + "    List<Integer> l = new ArrayList<>();\n"
+                + "}\n");
+        Assert.assertEquals(Arrays.asList(), codes(info, Diagnostic.Kind.NOTE));
+    }
+}
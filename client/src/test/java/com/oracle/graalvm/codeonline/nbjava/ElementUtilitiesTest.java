@@ -0,0 +1,265 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.nbjava;
+
+import com.sun.source.tree.ReturnTree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.tools.javac.api.JavacTool;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compares the members collected by {@link ElementUtilities} with the former scan
+ * of all collected members for hiding and overriding elements.
+ */
+public class ElementUtilitiesTest {
+    private static final JavaFileManager FILE_MANAGER = JavacTool.create().getStandardFileManager(null, null, null);
+
+    private static final String SOURCE = "interface I {\n"
+            + "    int F = 1;\n"
+            + "    void m();\n"
+            + "    default void d() {}\n"
+            + "}\n"
+            + "class A implements I {\n"
+            + "    int f;\n"
+            + "    static int s;\n"
+            + "    int F;\n"
+            + "    public void m() {}\n"
+            + "    void n(int x) {}\n"
+            + "    static void t() {}\n"
+            + "    class Inner {}\n"
+            + "}\n"
+            + "class B extends A {\n"
+            + "    String f;\n"
+            + "    static int s;\n"
+            + "    public void m() {}\n"
+            + "    void n(String x) {}\n"
+            + "    public void d() {}\n"
+            + "    class Inner {}\n"
+            + "}\n"
+            + "class C extends B {\n"
+            + "    long f;\n"
+            + "    void n(int x) {}\n"
+            + "    static void t() {}\n"
+            + "    void local(int f, int s) {\n"
+            + "        int n = 0;\n"
+            + "        return;\n"
+            + "    }\n"
+            + "}\n";
+
+    private static CompilationInfo resolve(String source) throws IOException {
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///Main.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        CompilationInfo info = new CompilationInfo(file, FILE_MANAGER);
+        Assert.assertEquals(CompilationInfo.Phase.RESOLVED, info.toPhase(CompilationInfo.Phase.RESOLVED));
+        return info;
+    }
+
+    private static List<Element> toList(Iterable<? extends Element> it) {
+        List<Element> result = new ArrayList<>();
+        for (Element e : it)
+            result.add(e);
+        return result;
+    }
+
+    private static List<String> describe(List<? extends Element> elements) {
+        List<String> result = new ArrayList<>();
+        for (Element e : elements) {
+            Element owner = e.getEnclosingElement();
+            result.add((owner != null ? owner.getSimpleName() + "." : "") + e.getSimpleName() + (e.getKind() == ElementKind.METHOD ? e.asType().toString() : ""));
+        }
+        return result;
+    }
+
+    @Test
+    public void testMembersOfHierarchy() throws IOException {
+        CompilationInfo info = resolve(SOURCE);
+        Elements elements = info.getElements();
+        TypeElement c = elements.getTypeElement("C");
+        List<Element> indexed = toList(info.getElementUtilities().getMembers(c.asType(), null));
+        LinearMembers linear = new LinearMembers(elements, info.getTypes());
+        for (Element member : elements.getAllMembers(c)) {
+            if (!linear.isHidden(member))
+                linear.members.add(member);
+        }
+        Assert.assertEquals(describe(linear.members), describe(indexed.subList(0, linear.members.size())));
+        // then the pseudo members
+        Assert.assertEquals("[C.this, C.super, C.class]", describe(indexed.subList(linear.members.size(), indexed.size())).toString());
+
+        List<String> names = describe(linear.members);
+        Assert.assertTrue(names.contains("C.f"));
+        Assert.assertFalse(names.contains("B.f"));
+        Assert.assertFalse(names.contains("A.f"));
+        Assert.assertTrue(names.contains("A.F"));
+        Assert.assertFalse(names.contains("I.F"));
+        Assert.assertTrue(names.contains("B.s"));
+        Assert.assertFalse(names.contains("A.s"));
+        Assert.assertTrue(names.contains("C.n(int)void"));
+        Assert.assertTrue(names.contains("B.n(java.lang.String)void"));
+        Assert.assertFalse(names.contains("A.n(int)void"));
+        Assert.assertTrue(names.contains("B.m()void"));
+        Assert.assertFalse(names.contains("A.m()void"));
+        Assert.assertFalse(names.contains("I.m()void"));
+        Assert.assertTrue(names.contains("B.d()void"));
+        Assert.assertFalse(names.contains("I.d()void"));
+        Assert.assertTrue(names.contains("C.t()void"));
+        Assert.assertFalse(names.contains("A.t()void"));
+        Assert.assertTrue(names.contains("B.Inner"));
+        Assert.assertFalse(names.contains("A.Inner"));
+    }
+
+    @Test
+    public void testMembersWithAcceptor() throws IOException {
+        CompilationInfo info = resolve(SOURCE);
+        Elements elements = info.getElements();
+        TypeElement c = elements.getTypeElement("C");
+        ElementUtilities.ElementAcceptor fields = (e, t) -> e.getKind() == ElementKind.FIELD;
+        List<Element> indexed = toList(info.getElementUtilities().getMembers(c.asType(), fields));
+        LinearMembers linear = new LinearMembers(elements, info.getTypes());
+        for (Element member : elements.getAllMembers(c)) {
+            if (fields.accept(member, c.asType()) && !linear.isHidden(member))
+                linear.members.add(member);
+        }
+        Assert.assertEquals(describe(linear.members), describe(indexed.subList(0, linear.members.size())));
+        Assert.assertEquals("[C.this, C.super, C.class]", describe(indexed.subList(linear.members.size(), indexed.size())).toString());
+    }
+
+    @Test
+    public void testLocalMembersAndVars() throws IOException {
+        CompilationInfo info = resolve(SOURCE);
+        TreePath[] found = new TreePath[1];
+        new TreePathScanner<Void, Void>() {
+            @Override
+            public Void visitReturn(ReturnTree node, Void p) {
+                found[0] = getCurrentPath();
+                return null;
+            }
+        }.scan(info.getCompilationUnit(), null);
+        com.sun.source.tree.Scope scope = info.getTrees().getScope(found[0]);
+        List<Element> indexed = toList(info.getElementUtilities().getLocalMembersAndVars(scope, null));
+
+        Elements elements = info.getElements();
+        LinearMembers linear = new LinearMembers(elements, info.getTypes());
+        for (com.sun.source.tree.Scope s = scope; s != null; s = s.getEnclosingScope()) {
+            TypeElement cls = s.getEnclosingClass();
+            for (Element local : s.getLocalElements()) {
+                if (cls == null && (local.getKind().isClass() || local.getKind().isInterface() || local.getEnclosingElement() == null))
+                    continue;
+                if (!linear.isHidden(local))
+                    linear.members.add(local);
+            }
+            if (cls != null) {
+                for (Element member : elements.getAllMembers(cls)) {
+                    if (!linear.isHidden(member))
+                        linear.members.add(member);
+                }
+            }
+        }
+        Assert.assertEquals(describe(linear.members), describe(indexed));
+        // the local variable and the parameters come first, then the members of the enclosing class
+        Assert.assertEquals("[local.n, local.s, local.f, C.super, C.this]", describe(indexed.subList(0, 5)).toString());
+    }
+
+    @Test
+    public void testMemberTableOfPlatformType() throws IOException {
+        CompilationInfo info = resolve("class Main {}");
+        Elements elements = info.getElements();
+        TypeElement list = elements.getTypeElement("java.util.ArrayList");
+        TypeElement main = elements.getTypeElement("Main");
+        MemberTable table = MemberTable.get(info, info.getTypes().erasure(list.asType()), main);
+        Assert.assertNull(table); // generic
+        TypeElement string = elements.getTypeElement("java.lang.String");
+        table = MemberTable.get(info, string.asType(), main);
+        Assert.assertNotNull(table);
+
+        LinearMembers linear = new LinearMembers(elements, info.getTypes());
+        for (Element member : elements.getAllMembers(string)) {
+            if (!linear.isHidden(member))
+                linear.members.add(member);
+        }
+        List<String> expected = new ArrayList<>();
+        for (Element e : linear.members) {
+            boolean field = e.getKind() == ElementKind.FIELD && !e.getSimpleName().contentEquals("class") || e.getKind() == ElementKind.ENUM_CONSTANT;
+            if ((field || e.getKind() == ElementKind.METHOD) && e.getModifiers().contains(Modifier.PUBLIC))
+                expected.add(e.getKind() + " " + e.getSimpleName());
+        }
+        List<String> actual = new ArrayList<>();
+        for (MemberTable.Member m : table.getMembers())
+            actual.add(m.getKind() + " " + m.getName());
+        Assert.assertEquals(expected, actual);
+    }
+
+    /**
+     * The members as collected before {@link ElementUtilities} indexed them by name:
+     * each new element is checked against all collected ones.
+     */
+    private static final class LinearMembers {
+        private final Elements elements;
+        private final Types types;
+        final List<Element> members = new ArrayList<>();
+
+        LinearMembers(Elements elements, Types types) {
+            this.elements = elements;
+            this.types = types;
+        }
+
+        boolean isHidden(Element member) {
+            for (Iterator<Element> it = members.iterator(); it.hasNext();) {
+                Element hider = it.next();
+                if (hider == member)
+                    return true;
+                if (hider.getSimpleName() == member.getSimpleName()) {
+                    if (elements.hides(member, hider)) {
+                        it.remove();
+                    } else {
+                        TypeMirror memberType = member.asType();
+                        TypeMirror hiderType = hider.asType();
+                        if (memberType.getKind() == TypeKind.EXECUTABLE && hiderType.getKind() == TypeKind.EXECUTABLE) {
+                            if (types.isSubsignature((ExecutableType)hiderType, (ExecutableType)memberType))
+                                return true;
+                        } else {
+                            return false;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.nbjava;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JavaCompletionQueryTest {
+    /** Compares only the first character, so that items with the same one are ties. */
+    private static final Comparator<String> BY_FIRST = Comparator.comparing(s -> s.charAt(0));
+
+    @Test
+    public void testTiesKeepOrder() {
+        List<String> items = Arrays.asList("b1", "a1", "c1", "a2", "b2", "a3", "b3");
+        Assert.assertEquals(Arrays.asList("a1", "a2"), JavaCompletionQuery.selectTop(items, BY_FIRST, 2));
+        Assert.assertEquals(Arrays.asList("a1", "a2", "a3", "b1"), JavaCompletionQuery.selectTop(items, BY_FIRST, 4));
+        Assert.assertEquals(Arrays.asList("a1", "a2", "a3", "b1", "b2", "b3"), JavaCompletionQuery.selectTop(items, BY_FIRST, 6));
+    }
+
+    @Test
+    public void testLimits() {
+        List<String> items = Arrays.asList("b1", "a1", "a2");
+        Assert.assertEquals(Collections.emptyList(), JavaCompletionQuery.selectTop(items, BY_FIRST, 0));
+        Assert.assertEquals(Collections.emptyList(), JavaCompletionQuery.selectTop(items, BY_FIRST, -1));
+        Assert.assertEquals(Arrays.asList("a1", "a2", "b1"), JavaCompletionQuery.selectTop(items, BY_FIRST, 3));
+        Assert.assertEquals(Arrays.asList("a1", "a2", "b1"), JavaCompletionQuery.selectTop(items, BY_FIRST, 100));
+        Assert.assertEquals(Collections.emptyList(), JavaCompletionQuery.selectTop(Collections.<String>emptyList(), BY_FIRST, 5));
+        Assert.assertEquals(Arrays.asList("b1", "a1", "a2"), items);
+    }
+
+    @Test
+    public void testAgreesWithStableSort() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<String> items = new ArrayList<>();
+            int size = random.nextInt(50);
+            for (int i = 0; i < size; i++)
+                items.add((char) ('a' + random.nextInt(5)) + Integer.toString(i));
+            List<String> sorted = new ArrayList<>(items);
+            Collections.sort(sorted, BY_FIRST);
+            for (int limit = 0; limit <= size + 1; limit++)
+                Assert.assertEquals(sorted.subList(0, Math.min(limit, size)), JavaCompletionQuery.selectTop(items, BY_FIRST, limit));
+        }
+    }
+}
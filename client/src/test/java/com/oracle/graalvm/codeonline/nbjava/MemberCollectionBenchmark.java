@@ -0,0 +1,139 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.nbjava;
+
+import com.sun.tools.javac.api.JavacTool;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+
+/**
+ * Measures {@link ElementUtilities#getMembers} on wide platform types
+ * and compares it with the former linear scan of the collected members.
+ * Not a unit test; run the main method with the test classpath:
+ * <pre>
+ * java -cp ... com.oracle.graalvm.codeonline.nbjava.MemberCollectionBenchmark [iterations] [type...]
+ * </pre>
+ */
+public final class MemberCollectionBenchmark {
+    private static final String[] DEFAULT_TYPES = {
+        "javax.swing.JComponent", "javax.swing.JTable", "java.lang.String", "java.util.ArrayList",
+    };
+
+    private MemberCollectionBenchmark() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static void main(String... args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        String[] typeNames = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : DEFAULT_TYPES;
+
+        JavaFileManager jfm = JavacTool.create().getStandardFileManager(null, null, null);
+        JavaFileObject source = new SimpleJavaFileObject(URI.create("string:///Main.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return "public class Main {}";
+            }
+        };
+        CompilationInfo info = new CompilationInfo(source, jfm);
+        info.toPhase(CompilationInfo.Phase.RESOLVED);
+        Elements elements = info.getElements();
+        Types types = info.getTypes();
+        ElementUtilities eu = info.getElementUtilities();
+
+        for (String typeName : typeNames) {
+            TypeElement te = elements.getTypeElement(typeName);
+            if (te == null) {
+                System.out.println(typeName + ": not found");
+                continue;
+            }
+            TypeMirror type = te.asType();
+            List<Element> indexed = toList(eu.getMembers(type, null));
+            List<Element> linear = linearMembers(te, elements, types);
+            if (!indexed.subList(0, linear.size()).equals(linear))
+                throw new AssertionError(typeName + ": results differ");
+
+            long indexedNanos = time(iterations, () -> eu.getMembers(type, null));
+            long linearNanos = time(iterations, () -> linearMembers(te, elements, types));
+            System.out.printf("%s: %d members, indexed %.3f ms, linear %.3f ms%n", typeName, linear.size(),
+                    indexedNanos / 1e6 / iterations, linearNanos / 1e6 / iterations);
+        }
+    }
+
+    private static long time(int iterations, Runnable r) {
+        for (int i = 0; i < iterations / 10 + 1; i++)
+            r.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            r.run();
+        return System.nanoTime() - start;
+    }
+
+    private static List<Element> toList(Iterable<? extends Element> it) {
+        List<Element> result = new ArrayList<>();
+        for (Element e : it)
+            result.add(e);
+        return result;
+    }
+
+    /**
+     * The members of the type as collected before the name index, without the pseudo members.
+     */
+    private static List<Element> linearMembers(TypeElement te, Elements elements, Types types) {
+        List<Element> members = new ArrayList<>();
+        for (Element member : elements.getAllMembers(te)) {
+            if (!isHidden(member, members, elements, types))
+                members.add(member);
+        }
+        return members;
+    }
+
+    private static boolean isHidden(Element member, List<Element> members, Elements elements, Types types) {
+        for (Iterator<Element> it = members.iterator(); it.hasNext();) {
+            Element hider = it.next();
+            if (hider == member)
+                return true;
+            if (hider.getSimpleName() == member.getSimpleName()) {
+                if (elements.hides(member, hider)) {
+                    it.remove();
+                } else {
+                    TypeMirror memberType = member.asType();
+                    TypeMirror hiderType = hider.asType();
+                    if (memberType.getKind() == TypeKind.EXECUTABLE && hiderType.getKind() == TypeKind.EXECUTABLE) {
+                        if (types.isSubsignature((ExecutableType)hiderType, (ExecutableType)memberType))
+                            return true;
+                    } else {
+                        return false;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
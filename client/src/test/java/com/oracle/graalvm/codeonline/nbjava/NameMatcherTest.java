@@ -0,0 +1,59 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.nbjava;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NameMatcherTest {
+    @Test
+    public void testPrefix() {
+        NameMatcher matcher = new NameMatcher("has", true, false);
+        Assert.assertEquals(NameMatcher.PREFIX, matcher.match("hashCode"));
+        Assert.assertEquals(NameMatcher.NO_MATCH, matcher.match("HashMap"));
+        Assert.assertEquals(NameMatcher.NO_MATCH, matcher.match("<error>"));
+        Assert.assertEquals(NameMatcher.PREFIX, new NameMatcher("", true, false).match("anything"));
+    }
+
+    @Test
+    public void testCaseInsensitivePrefix() {
+        NameMatcher matcher = new NameMatcher("has", false, false);
+        Assert.assertEquals(NameMatcher.CASE_INSENSITIVE_PREFIX, matcher.match("HashMap"));
+        Assert.assertEquals(NameMatcher.PREFIX, matcher.match("hashCode"));
+    }
+
+    @Test
+    public void testCamelCase() {
+        NameMatcher matcher = new NameMatcher("NPE", true, false);
+        Assert.assertTrue(matcher.isCamelCase());
+        Assert.assertEquals(NameMatcher.CAMEL_CASE, matcher.match("NullPointerException"));
+        Assert.assertEquals(NameMatcher.CAMEL_CASE, new NameMatcher("NuPoE", true, false).match("NullPointerException"));
+        Assert.assertEquals(NameMatcher.CAMEL_CASE, new NameMatcher("HM", true, false).match("Hash2Map"));
+        Assert.assertEquals(NameMatcher.NO_MATCH, new NameMatcher("HM", true, false).match("HashXMap"));
+        Assert.assertEquals(NameMatcher.NO_MATCH, new NameMatcher("NPE", true, false).match("NullException"));
+    }
+
+    @Test
+    public void testSubwords() {
+        Assert.assertEquals(NameMatcher.SUBWORDS, new NameMatcher("argex", true, true).match("IllegalArgumentException"));
+        Assert.assertEquals(NameMatcher.SUBWORDS, new NameMatcher("acoh", true, true).match("actionsForPath"));
+        Assert.assertEquals(NameMatcher.SUBWORDS, new NameMatcher("que", true, true).match("asLifoQueue"));
+        Assert.assertEquals(NameMatcher.CAMEL_CASE, new NameMatcher("sIn", false, true).match("setIn"));
+        Assert.assertEquals(NameMatcher.NO_MATCH, new NameMatcher("sIn", false, true).match("getSecurityManager"));
+        Assert.assertEquals(NameMatcher.NO_MATCH, new NameMatcher("argex", true, false).match("IllegalArgumentException"));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.nbjava;
+
+import com.sun.tools.javac.api.JavacTool;
+import java.io.IOException;
+import java.net.URI;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PresentationCacheTest {
+    private static final JavaFileManager FILE_MANAGER = JavacTool.create().getStandardFileManager(null, null, null);
+
+    private static CompilationInfo resolve(String source) throws IOException {
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///Main.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        CompilationInfo info = new CompilationInfo(file, FILE_MANAGER);
+        Assert.assertEquals(CompilationInfo.Phase.RESOLVED, info.toPhase(CompilationInfo.Phase.RESOLVED));
+        return info;
+    }
+
+    private static Element member(CompilationInfo info, String className, String name) {
+        TypeElement type = info.getElements().getTypeElement(className);
+        for (Element e : type.getEnclosedElements()) {
+            if (e.getSimpleName().contentEquals(name))
+                return e;
+        }
+        throw new AssertionError(className + "." + name);
+    }
+
+    @Test
+    public void testHitAndMiss() throws IOException {
+        CompilationInfo info = resolve("class Main {}");
+        Element length = member(info, "java.lang.String", "length");
+        Element isEmpty = member(info, "java.lang.String", "isEmpty");
+        PresentationCache.Presentation p = JavaCompletionItem.createPresentation(info, length, length.asType());
+        Assert.assertEquals("length()", p.leftText);
+        Assert.assertSame(p, JavaCompletionItem.createPresentation(info, length, length.asType()));
+        Assert.assertSame(p, PresentationCache.of(info).get(length, length.asType()));
+        Assert.assertNull(PresentationCache.of(info).get(isEmpty, isEmpty.asType()));
+        Assert.assertNotSame(p, JavaCompletionItem.createPresentation(info, isEmpty, isEmpty.asType()));
+    }
+
+    @Test
+    public void testInstantiatedTypeIsPartOfTheKey() throws IOException {
+        CompilationInfo info = resolve("import java.util.List; class Main { List<String> l; }");
+        Element get = member(info, "java.util.List", "get");
+        DeclaredType listOfStrings = (DeclaredType)member(info, "Main", "l").asType();
+        TypeMirror instantiated = info.getTypes().asMemberOf(listOfStrings, get);
+        PresentationCache.Presentation declared = JavaCompletionItem.createPresentation(info, get, get.asType());
+        PresentationCache.Presentation ofStrings = JavaCompletionItem.createPresentation(info, get, instantiated);
+        Assert.assertEquals("E", declared.typeName);
+        Assert.assertEquals("String", ofStrings.typeName);
+        Assert.assertSame(ofStrings, PresentationCache.of(info).get(get, instantiated));
+    }
+
+    @Test
+    public void testNewCompilationIsNotServed() throws IOException {
+        CompilationInfo info = resolve("class Main {}");
+        Element length = member(info, "java.lang.String", "length");
+        PresentationCache.Presentation p = JavaCompletionItem.createPresentation(info, length, length.asType());
+
+        CompilationInfo next = resolve("class Main { }");
+        Assert.assertNotSame(PresentationCache.of(info), PresentationCache.of(next));
+        Element nextLength = member(next, "java.lang.String", "length");
+        Assert.assertNotSame(length, nextLength);
+        Assert.assertNull(PresentationCache.of(next).get(nextLength, nextLength.asType()));
+        PresentationCache.Presentation nextP = JavaCompletionItem.createPresentation(next, nextLength, nextLength.asType());
+        Assert.assertNotSame(p, nextP);
+        Assert.assertEquals(p.leftText, nextP.leftText);
+        // the former compilation keeps its own entries
+        Assert.assertSame(p, PresentationCache.of(info).get(length, length.asType()));
+    }
+}
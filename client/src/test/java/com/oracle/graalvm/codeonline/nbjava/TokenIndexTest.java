@@ -0,0 +1,198 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.nbjava;
+
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.util.Context;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TokenIndexTest {
+    private static final String SOURCE = "package p;\n"
+            + "\n"
+            + "/** Docs. */\n"
+            + "public class A<T extends Comparable<T>> {\n"
+            + "    private String s = \"a \\\"quoted\\\" string\"; // comment\n"
+            + "    char c = '\\u0041';\n"
+            + "    double d = 1.e5 + .5 + 0x1F;\n"
+            + "    void m(int... xs) {\n"
+            + "        java.util.List<java.util.List<T>> l = null;\n"
+            + "        Runnable r = () -> { s += s >>> 2; };\n"
+            + "    }\n"
+            + "}\n";
+
+    private static Context createContext() {
+        Context context = new Context();
+        JavacFileManager.preRegister(context);
+        return context;
+    }
+
+    private static void assertSameTokens(TokenIndex expected, TokenIndex actual) {
+        Assert.assertEquals(expected.getText(), actual.getText());
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            String message = "token " + i + " of " + expected.getText();
+            Assert.assertEquals(message, expected.getKind(i), actual.getKind(i));
+            Assert.assertEquals(message, expected.getStart(i), actual.getStart(i));
+            Assert.assertEquals(message, expected.getEnd(i), actual.getEnd(i));
+        }
+    }
+
+    private static void assertUpdate(Context context, String oldText, String newText) {
+        TokenIndex updated = TokenIndex.create(context, oldText).update(context, newText);
+        assertSameTokens(TokenIndex.create(context, newText), updated);
+    }
+
+    @Test
+    public void testUnchanged() {
+        Context context = createContext();
+        TokenIndex index = TokenIndex.create(context, SOURCE);
+        Assert.assertSame(index, index.update(context, SOURCE));
+    }
+
+    @Test
+    public void testEditsAtTokenBoundaries() {
+        Context context = createContext();
+        assertUpdate(context, "int a=b+c;", "int ab=b+c;");
+        assertUpdate(context, "int a=b+c;", "int a =b+c;");
+        assertUpdate(context, "int a=b+c;", "inta=b+c;");
+        assertUpdate(context, "int a=b+c;", "int a=b++c;");
+        assertUpdate(context, "int a=b+c;", "int a==b+c;");
+        assertUpdate(context, "a = b > c;", "a = b >> c;");
+        assertUpdate(context, "a = b >> c;", "a = b >>> c;");
+        assertUpdate(context, "m(a.. b);", "m(a... b);");
+        assertUpdate(context, "d = 1 + 2;", "d = 1. + 2;");
+        assertUpdate(context, "d = 1.;", "d = 1.e5;");
+        assertUpdate(context, "c = 'A';", "c = '\\u0041';");
+        assertUpdate(context, "x = y - z;", "x = y -> z;");
+    }
+
+    @Test
+    public void testUnicodeEscapes() {
+        Context context = createContext();
+        // javac positions a token starting with an escape at its last digit, within the end of the preceding token
+        assertUpdate(context, "l =\\u0041 null;\n    r;", "l =\\u0041 null;  r;");
+        assertUpdate(context, "l =\\u0041 null;", "l =\\u0041 nul;");
+        assertUpdate(context, "l = \\u0041;", "l = \\u0041 ;");
+        assertUpdate(context, "l = a\\u0041;", "l = a\\u0042;");
+        assertUpdate(context, "l = a;", "l = \\u0061;");
+    }
+
+    @Test
+    public void testBlockComments() {
+        Context context = createContext();
+        String text = "int a; int b; int c;";
+        assertUpdate(context, text, "int a; /* int b; int c;");
+        assertUpdate(context, "int a; /* int b; int c;", "int a; /* int b; */ int c;");
+        assertUpdate(context, "int a; /* int b; */ int c;", "int a; /* int b; * int c;");
+        assertUpdate(context, "int a; /* int b; */ int c;", "int a;  int b; */ int c;");
+        assertUpdate(context, "int a; /* int b; */ int c;", text);
+        assertUpdate(context, text, "int a; // int b;\nint c;");
+        assertUpdate(context, "int a; // int b;\nint c;", "int a; // int b; int c;");
+        assertUpdate(context, SOURCE, SOURCE.replace("/** Docs. */", "/** Docs. "));
+        assertUpdate(context, SOURCE, SOURCE.replace("public class", "/* public class"));
+    }
+
+    @Test
+    public void testStringLiterals() {
+        Context context = createContext();
+        String text = "a = \"b\"; c = d;\ne = f;";
+        assertUpdate(context, text, "a = \"b\"; c = \"d;\ne = f;");
+        assertUpdate(context, "a = \"b\"; c = \"d;\ne = f;", "a = \"b\"; c = \"d\";\ne = f;");
+        assertUpdate(context, text, "a = \"b; c = d;\ne = f;");
+        assertUpdate(context, text, "a = \"b\\\"; c = d;\ne = f;");
+        assertUpdate(context, text, "a = b\"; c = d;\ne = f;");
+        assertUpdate(context, "c = 'x';", "c = 'x;");
+        assertUpdate(context, SOURCE, SOURCE.replace("\"a \\\"", "\"a \\\\\""));
+    }
+
+    @Test
+    public void testWholeText() {
+        Context context = createContext();
+        assertUpdate(context, SOURCE, "");
+        assertUpdate(context, "", SOURCE);
+        assertUpdate(context, SOURCE, "x");
+        assertUpdate(context, SOURCE, "import q.B;\n" + SOURCE);
+        assertUpdate(context, SOURCE, "/*" + SOURCE);
+        assertUpdate(context, SOURCE, "\"" + SOURCE);
+        assertUpdate(context, SOURCE, SOURCE.substring(1));
+        assertUpdate(context, SOURCE, SOURCE + "class B {}\n");
+        assertUpdate(context, SOURCE, SOURCE + "/*");
+        assertUpdate(context, SOURCE, SOURCE.substring(0, SOURCE.length() - 2));
+    }
+
+    @Test
+    public void testHasSameTokens() {
+        Context context = createContext();
+        TokenIndex index = TokenIndex.create(context, "int a = b + c; // sum");
+        Assert.assertTrue(index.hasSameTokens(index));
+        Assert.assertTrue(index.hasSameTokens(TokenIndex.create(context, "int a=b+c;")));
+        Assert.assertTrue(index.hasSameTokens(TokenIndex.create(context, "/* c */ int\ta =\n b + c;")));
+        Assert.assertFalse(index.hasSameTokens(TokenIndex.create(context, "int a = b + d;")));
+        Assert.assertFalse(index.hasSameTokens(TokenIndex.create(context, "int ab = b + c;")));
+        Assert.assertFalse(index.hasSameTokens(TokenIndex.create(context, "int a = b ++ c;")));
+        Assert.assertFalse(index.hasSameTokens(TokenIndex.create(context, "int a = b + c;;")));
+    }
+
+    @Test
+    public void testMapOffset() {
+        Context context = createContext();
+        TokenIndex index = TokenIndex.create(context, "a+bc  ;");
+        TokenIndex other = TokenIndex.create(context, "/**/ a + bc ;  ");
+        // within tokens and at their starts
+        Assert.assertEquals(5, index.mapOffset(other, 0));
+        Assert.assertEquals(7, index.mapOffset(other, 1));
+        Assert.assertEquals(9, index.mapOffset(other, 2));
+        Assert.assertEquals(10, index.mapOffset(other, 3));
+        // between tokens, as far as the new gap allows
+        Assert.assertEquals(11, index.mapOffset(other, 4));
+        Assert.assertEquals(12, index.mapOffset(other, 5));
+        Assert.assertEquals(12, index.mapOffset(other, 6));
+        Assert.assertEquals(13, index.mapOffset(other, 7));
+        // ends stay at the end of the preceding token
+        Assert.assertEquals(6, index.mapEndOffset(other, 1));
+        Assert.assertEquals(8, index.mapEndOffset(other, 2));
+        Assert.assertEquals(10, index.mapEndOffset(other, 3));
+        Assert.assertEquals(11, index.mapEndOffset(other, 4));
+        Assert.assertEquals(12, index.mapEndOffset(other, 6));
+        Assert.assertEquals(13, index.mapEndOffset(other, 7));
+        Assert.assertEquals(0, index.mapEndOffset(other, 0));
+    }
+
+    @Test
+    public void testRandomEdits() {
+        Context context = createContext();
+        String[] insertions = {"/*", "*/", "\"", "'", "//", "\n", " ", ".", "..", "x", "1.", "e5", ">", ">>", "->", "{", "}", "\\u0041"};
+        Random random = new Random(1);
+        String text = SOURCE;
+        TokenIndex index = TokenIndex.create(context, text);
+        for (int i = 0; i < 2000; i++) {
+            int offset = random.nextInt(text.length() + 1);
+            String newText;
+            if (random.nextBoolean() && !text.isEmpty())
+                newText = text.substring(0, offset) + text.substring(Math.min(text.length(), offset + random.nextInt(5)));
+            else
+                newText = text.substring(0, offset) + insertions[random.nextInt(insertions.length)] + text.substring(offset);
+            if (i % 100 == 0)
+                newText = SOURCE;
+            index = index.update(context, newText);
+            assertSameTokens(TokenIndex.create(context, newText), index);
+            text = newText;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.nbjava;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.tools.javac.api.JavacTool;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TreePositionIndexTest {
+    private static final JavaFileManager FILE_MANAGER = JavacTool.create().getStandardFileManager(null, null, null);
+
+    /**
+     * The path lookup TreeUtilities used before the index: scans the tree and throws the path
+     * of the deepest tree containing the offset.
+     */
+    private static TreePath scanPathFor(TreePath path, int pos, SourcePositions sourcePositions) {
+        class Result extends Error {
+            private final TreePath path;
+
+            Result(TreePath path) {
+                this.path = path;
+            }
+
+            @Override
+            public synchronized Throwable fillInStackTrace() {
+                return this;
+            }
+        }
+
+        class PathFinder extends TreePathScanner<Void, Void> {
+            @Override
+            public Void scan(Tree tree, Void p) {
+                if (tree != null) {
+                    CompilationUnitTree cu = getCurrentPath().getCompilationUnit();
+                    if (sourcePositions.getStartPosition(cu, tree) < pos && sourcePositions.getEndPosition(cu, tree) >= pos) {
+                        if (tree.getKind() == Tree.Kind.ERRONEOUS) {
+                            tree.accept(this, p);
+                            throw new Result(getCurrentPath());
+                        }
+                        super.scan(tree, p);
+                        throw new Result(new TreePath(getCurrentPath(), tree));
+                    }
+                }
+                return null;
+            }
+        }
+
+        try {
+            new PathFinder().scan(path, null);
+        } catch (Result result) {
+            return result.path;
+        }
+        return path;
+    }
+
+    private static List<Tree> leaves(TreePath path) {
+        List<Tree> leaves = new ArrayList<>();
+        for (; path != null; path = path.getParentPath())
+            leaves.add(path.getLeaf());
+        return leaves;
+    }
+
+    private static void assertSamePaths(String source) throws IOException {
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///Main.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        CompilationInfo info = new CompilationInfo(file, FILE_MANAGER);
+        for (CompilationInfo.Phase phase : new CompilationInfo.Phase[] {CompilationInfo.Phase.PARSED, CompilationInfo.Phase.RESOLVED}) {
+            info.toPhase(phase);
+            TreePath root = new TreePath(info.getCompilationUnit());
+            SourcePositions sourcePositions = info.getTrees().getSourcePositions();
+            TreePositionIndex index = info.getTreePositionIndex();
+            for (int pos = 0; pos <= source.length(); pos++) {
+                List<Tree> expected = leaves(scanPathFor(root, pos, sourcePositions));
+                String message = phase + " at " + pos + ": " + source.substring(0, pos) + "|";
+                Assert.assertEquals(message, expected, leaves(index.pathFor(pos)));
+                Assert.assertEquals(message, expected, leaves(TreePositionIndex.pathFor(root, pos, sourcePositions)));
+            }
+        }
+    }
+
+    @Test
+    public void testDeclarations() throws IOException {
+        assertSamePaths("package p;\n"
+                + "import java.util.*;\n"
+                + "public class Main<T extends Comparable<? super T>> implements Runnable {\n"
+                + "    private int a = 1, b[] = {a, 2}, c;\n"
+                + "    static { System.out.println(\"static\"); }\n"
+                + "    public void run() {\n"
+                + "        for (int i = 0, j = a; i < j; i++) { c += i >>> 1; }\n"
+                + "        Object o = new Object() { @Override public String toString() { return \"anonymous\"; } };\n"
+                + "        String s = b.length > 0 ? (String) o.toString() : null;\n"
+                + "    }\n"
+                + "    enum E { A, B { void m() {} }, C(1); E() {} E(int x) {} void m() {} }\n"
+                + "    class Inner { Inner(int x) { super(); } }\n"
+                + "}\n");
+    }
+
+    @Test
+    public void testLambdasAndAnnotations() throws IOException {
+        assertSamePaths("import java.util.*;\n"
+                + "import java.util.function.*;\n"
+                + "@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n"
+                + "class Main {\n"
+                + "    @Deprecated @SuppressWarnings(value = \"x\") int x;\n"
+                + "    @interface A { String value() default \"a\"; int[] n() default {1, 2}; }\n"
+                + "    void m(@A(\"p\") List<@A String> l) {\n"
+                + "        Runnable r = () -> { System.out.println(x); };\n"
+                + "        Function<String, Integer> f = s -> s.length();\n"
+                + "        BiFunction<Integer, Integer, Integer> g = (Integer a, Integer b) -> a + b;\n"
+                + "        l.stream().map(String::length).filter(i -> i > 0).forEach(System.out::println);\n"
+                + "        Supplier<List<String>> s = ArrayList::new;\n"
+                + "    }\n"
+                + "}\n");
+    }
+
+    @Test
+    public void testErroneousTrees() throws IOException {
+        assertSamePaths("import java.util.*;\n"
+                + "public class Main {\n"
+                + "    int x = ;\n"
+                + "    void m(List<String> l) {\n"
+                + "        for (String s : l) { s. }\n"
+                + "        if (x > 0) foo(1, ) else { int y = x >>> 2; }\n"
+                + "        l.stream().map(String::length).filter(i -> i > ).count();\n"
+                + "        int[] a = new int[] {1, ;\n"
+                + "    }\n"
+                + "    class Inner { @Deprecated public <T extends Comparable<T>> T max(T a, T b) { return a.compareTo(b) > 0 ? a : b; } }\n");
+    }
+
+    @Test
+    public void testSyntheticConstructors() throws IOException {
+        // the default constructors and the enum constants are positioned on the trees they are created for
+        assertSamePaths("class Main {\n"
+                + "    class A {}\n"
+                + "    static class B extends A { B(Main m) { m.super(); } }\n"
+                + "    enum E { X, Y }\n"
+                + "    Object o = new A() {};\n"
+                + "}\n");
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.ntar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Compares raw, compressed and shared-constant ntar archives of the classes in a JAR file:
+ * total size and the time to read all entries of all archives.
+ * Not a unit test; run the main method with the test classpath:
+ * <pre>
+ * java -cp ... com.oracle.graalvm.codeonline.ntar.NtarBenchmark path/to/classes.jar [iterations]
+ * </pre>
+ */
+public final class NtarBenchmark {
+    private NtarBenchmark() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static void main(String... args) throws IOException {
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        HashMap<String, HashMap<String, byte[]>> packages = new HashMap<>();
+        long classBytes = 0;
+        try(ZipInputStream in = new ZipInputStream(new FileInputStream(args[0]))) {
+            for(ZipEntry entry; (entry = in.getNextEntry()) != null;) {
+                String name = entry.getName();
+                if(!name.endsWith(".class"))
+                    continue;
+                int slash = name.lastIndexOf('/');
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buf = new byte[8192];
+                for(int n; (n = in.read(buf)) > 0;)
+                    content.write(buf, 0, n);
+                classBytes += content.size();
+                packages.computeIfAbsent(slash < 0 ? "" : name.substring(0, slash), p -> new HashMap<>())
+                        .put(name.substring(slash + 1, name.length() - 6), content.toByteArray());
+            }
+        }
+        System.out.printf("%d packages, %d bytes of classes%n", packages.size(), classBytes);
+        String[] formats = {"raw", "compressed", "shared constants"};
+        for(int format = 0; format < formats.length; format++) {
+            long start = System.nanoTime();
+            Map<String, byte[]> archives = new HashMap<>();
+            long size = 0;
+            for(Map.Entry<String, HashMap<String, byte[]>> p : packages.entrySet()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try(NtarWriter writer = new NtarWriter(out, format > 0, format > 1)) {
+                    for(Map.Entry<String, byte[]> c : p.getValue().entrySet())
+                        writer.put(c.getKey(), c.getValue());
+                }
+                archives.put(p.getKey(), out.toByteArray());
+                size += out.size();
+            }
+            long written = System.nanoTime();
+            long readNanos = Long.MAX_VALUE;
+            for(int i = 0; i < iterations; i++) {
+                long readStart = System.nanoTime();
+                long total = 0;
+                for(byte[] archive : archives.values()) {
+                    try(NtarReader reader = new NtarReader(new ByteArrayInputStream(archive))) {
+                        for(NtarReader.Entry entry : reader)
+                            total += entry.getContent().length;
+                    }
+                }
+                if(total != classBytes)
+                    throw new AssertionError("Contents differ");
+                readNanos = Math.min(readNanos, System.nanoTime() - readStart);
+            }
+            System.out.printf("%s: %d bytes (%.1f %%), written in %.0f ms, read in %.0f ms (%.0f MB/s)%n",
+                    formats[format], size, 100.0 * size / classBytes, (written - start) / 1e6,
+                    readNanos / 1e6, classBytes / (readNanos / 1e9) / 1e6);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2021 Oracle and/or its affiliates
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.oracle.graalvm.codeonline.ntar;
+
+import com.oracle.graalvm.codeonline.build.InputStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NtarTest {
+    private static byte[] classLike(int size, long seed) {
+        Random random = new Random(seed);
+        String[] words = {"java/lang/Object", "Ljava/lang/String;", "(I)V", "<init>", "Code", "toString", "()Ljava/lang/String;"};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        while(out.size() < size) {
+            if(random.nextBoolean()) {
+                byte[] word = words[random.nextInt(words.length)].getBytes();
+                out.write(word, 0, word.length);
+            } else {
+                out.write(random.nextInt(256));
+            }
+        }
+        return Arrays.copyOf(out.toByteArray(), size);
+    }
+
+    private static void assertRoundTrip(byte[] data) {
+        byte[] block = BlockCodec.compress(data);
+        Assert.assertArrayEquals(data, BlockCodec.decompress(block, 0, block.length, data.length));
+    }
+
+    @Test
+    public void testBlockCodec() {
+        for(int size : new int[] {0, 1, 5, 12, 13, 20, 300, 5000, 100000})
+            assertRoundTrip(classLike(size, size));
+        byte[] run = new byte[70000];
+        Arrays.fill(run, (byte) 'x');
+        assertRoundTrip(run);
+        Assert.assertTrue(BlockCodec.compress(run).length < 1000);
+        byte[] random = new byte[10000];
+        new Random(42).nextBytes(random);
+        assertRoundTrip(random);
+    }
+
+    @Test
+    public void testCorruptBlock() {
+        byte[] data = classLike(1000, 1);
+        byte[] block = BlockCodec.compress(data);
+        try {
+            BlockCodec.decompress(block, 0, block.length - 1, data.length);
+            Assert.fail("Corrupt block decoded");
+        } catch(NtarReader.NtarException ex) {
+            // expected
+        }
+    }
+
+    private static byte[] write(boolean compressed, boolean sharedConstants, String[] names, byte[][] contents) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(NtarWriter writer = new NtarWriter(out, compressed, sharedConstants)) {
+            for(int i = 0; i < names.length; i++)
+                writer.put(names[i], contents[i]);
+        }
+        return out.toByteArray();
+    }
+
+    private static List<NtarReader.Entry> roundTrip(boolean compressed, String[] names, byte[][] contents) throws IOException {
+        return read(write(compressed, false, names, contents));
+    }
+
+    private static List<NtarReader.Entry> read(byte[] archive) {
+        List<NtarReader.Entry> entries = new ArrayList<>();
+        try(NtarReader reader = new NtarReader(new ByteArrayInputStream(archive))) {
+            for(NtarReader.Entry entry : reader)
+                entries.add(entry);
+        }
+        return entries;
+    }
+
+    @Test
+    public void testArchives() throws IOException {
+        String[] names = {"ArrayList", "Map$Entry", "Empty"};
+        byte[][] contents = {classLike(3000, 1), classLike(500, 2), new byte[0]};
+        for(boolean compressed : new boolean[] {false, true}) {
+            List<NtarReader.Entry> entries = roundTrip(compressed, names, contents);
+            Assert.assertEquals(names.length, entries.size());
+            for(int i = 0; i < names.length; i++) {
+                Assert.assertEquals(names[i], entries.get(i).name);
+                Assert.assertArrayEquals(contents[i], entries.get(i).getContent());
+            }
+        }
+        Assert.assertTrue(roundTrip(true, new String[0], new byte[0][]).isEmpty());
+    }
+
+    private static byte[] classFile(Class<?> clazz) throws IOException {
+        String name = clazz.getName();
+        try(InputStream in = clazz.getResourceAsStream(name.substring(name.lastIndexOf('.') + 1) + ".class")) {
+            return InputStreams.readAllBytes(in);
+        }
+    }
+
+    @Test
+    public void testSharedConstants() throws IOException {
+        String[] names = {"NtarReader", "NtarReader$Entry", "NtarWriter", "BlockCodec", "NtarTest", "NotAClass", "Empty"};
+        byte[][] contents = {
+            classFile(NtarReader.class), classFile(NtarReader.Entry.class), classFile(NtarWriter.class),
+            classFile(BlockCodec.class), classFile(NtarTest.class), classLike(500, 3), new byte[0]
+        };
+        byte[] archive = write(true, true, names, contents);
+        List<NtarReader.Entry> entries = read(archive);
+        Assert.assertEquals(names.length, entries.size());
+        for(int i = 0; i < names.length; i++) {
+            Assert.assertEquals(names[i], entries.get(i).name);
+            Assert.assertArrayEquals(contents[i], entries.get(i).getContent());
+        }
+        Assert.assertTrue(archive.length < write(true, false, names, contents).length);
+        Assert.assertTrue(read(write(true, true, new String[0], new byte[0][])).isEmpty());
+    }
+
+    @Test
+    public void testConstantPoolDictionary() throws IOException {
+        List<byte[]> classes = Arrays.asList(classFile(NtarReader.class), classFile(NtarWriter.class));
+        ConstantPoolDictionary dictionary = ConstantPoolDictionary.create(classes);
+        Assert.assertTrue(dictionary.size() > 0);
+        ConstantPoolDictionary read = ConstantPoolDictionary.read(dictionary.toByteArray());
+        Assert.assertEquals(dictionary.size(), read.size());
+        for(byte[] content : classes) {
+            byte[] encoded = dictionary.encode(content);
+            Assert.assertTrue(encoded.length < content.length);
+            Assert.assertArrayEquals(content, read.decode(encoded));
+        }
+        byte[] encoded = dictionary.encode(classes.get(0));
+        encoded[0] = 7;
+        try {
+            read.decode(encoded);
+            Assert.fail("Unknown kind decoded");
+        } catch(NtarReader.NtarException ex) {
+            // expected
+        }
+    }
+}
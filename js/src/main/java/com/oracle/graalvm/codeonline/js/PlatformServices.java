@@ -16,6 +16,7 @@
 
 package com.oracle.graalvm.codeonline.js;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import net.java.html.lib.Modules;
@@ -35,5 +36,31 @@ public abstract class PlatformServices {
 
     public abstract InputStream openExternalResource(String name) throws IOException;
 
+    /**
+     * Reads a part of an external resource, e.g. with an HTTP range request.
+     * This implementation reads the resource from the start and skips the bytes before the part.
+     */
+    public byte[] readExternalResource(String name, long offset, int length) throws IOException {
+        try(InputStream in = openExternalResource(name)) {
+            for(long skipped = 0; skipped < offset;) {
+                long n = in.skip(offset - skipped);
+                if(n <= 0) {
+                    if(in.read() == -1)
+                        throw new EOFException(name);
+                    n = 1;
+                }
+                skipped += n;
+            }
+            byte[] result = new byte[length];
+            for(int off = 0; off < length;) {
+                int n = in.read(result, off, length - off);
+                if(n == -1)
+                    throw new EOFException(name);
+                off += n;
+            }
+            return result;
+        }
+    }
+
     public abstract TaskQueue<String, String> getWorkerQueue();
 }
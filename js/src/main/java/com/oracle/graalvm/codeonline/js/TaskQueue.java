@@ -23,11 +23,13 @@ import java.util.function.Consumer;
 public abstract class TaskQueue<Q, R> {
     private final Queue<Task> queue = new ArrayDeque<>();
     private Consumer<R> currentCallback = null;
+    private Task<Q, R> idleTask = null;
 
     public final Task enqueue(Q request, Consumer<R> callback) {
         if(callback == null) {
             throw new NullPointerException("Callback must not be null");
         }
+        cancelIdleTask();
         if(currentCallback == null) {
             currentCallback = callback;
             sendTask(request);
@@ -39,9 +41,43 @@ public abstract class TaskQueue<Q, R> {
         }
     }
 
+    /**
+     * Enqueues speculative work that is only sent once no other task is waiting.
+     * A pending idle task is replaced by the next one and cancelled by any
+     * {@link #enqueue enqueued} task, as the latter carries a newer request.
+     * A task already sent runs to completion.
+     */
+    public final Task enqueueWhenIdle(Q request, Consumer<R> callback) {
+        if(callback == null) {
+            throw new NullPointerException("Callback must not be null");
+        }
+        cancelIdleTask();
+        if(currentCallback == null) {
+            currentCallback = callback;
+            sendTask(request);
+            return new Task<Q, R>(null, null);
+        } else {
+            idleTask = new Task<>(request, callback);
+            return idleTask;
+        }
+    }
+
+    private void cancelIdleTask() {
+        if(idleTask != null) {
+            idleTask.markSent();
+            idleTask = null;
+        }
+    }
+
     protected final void onResponse(R response) {
         Consumer<R> callback = currentCallback;
-        if(queue.isEmpty()) {
+        if(queue.isEmpty() && idleTask != null) {
+            Task<Q, R> task = idleTask;
+            idleTask = null;
+            currentCallback = task.callback;
+            sendTask(task.request);
+            task.markSent();
+        } else if(queue.isEmpty()) {
             currentCallback = null;
         } else {
             Task<Q, R> task = queue.remove();